@@ -26,6 +26,9 @@ public class AnalyticsConfig {
             OrderStatus.DELIVERED
     );
 
+    // Сколько живёт посчитанный дашборд за период
+    private long cacheTtlMs = 60_000;
+
     public boolean isIncludedInRevenue(OrderStatus status) {
         return revenueStatuses.contains(status);
     }
@@ -0,0 +1,52 @@
+package com.example.clothingstore.config;
+
+import com.example.clothingstore.model.Role;
+import com.example.clothingstore.service.CartService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+// Число товаров для значка корзины в шапке - из закэшированного итога корзины, без запросов к БД
+@ControllerAdvice
+public class CartBadgeAdvice {
+
+    private final CartService cartService;
+
+    public CartBadgeAdvice(CartService cartService) {
+        this.cartService = cartService;
+    }
+
+    @ModelAttribute
+    public void addCartBadgeToModel(HttpServletRequest request, Model model) {
+        if (!rendersView(request)) {
+            return;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken
+                || authentication.getAuthorities().stream().noneMatch(a -> Role.ROLE_CUSTOMER.name().equals(a.getAuthority()))) {
+            return;
+        }
+        try {
+            model.addAttribute("cartBadgeCount", cartService.getCartSummary(authentication.getName()).itemCount());
+        } catch (Exception e) {
+            model.addAttribute("cartBadgeCount", 0);
+        }
+    }
+
+    // @RestController и @ResponseBody-методы модель не показывают - итог корзины им не нужен
+    private static boolean rendersView(HttpServletRequest request) {
+        if (!(request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler)) {
+            return true;
+        }
+        return !AnnotatedElementUtils.hasAnnotation(handler.getBeanType(), ResponseBody.class)
+                && !handler.hasMethodAnnotation(ResponseBody.class);
+    }
+}
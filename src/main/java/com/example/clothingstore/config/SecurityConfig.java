@@ -2,6 +2,7 @@ package com.example.clothingstore.config;
 
 import com.example.clothingstore.security.JwtAuthenticationFilter;
 import com.example.clothingstore.service.CustomUserDetailsService;
+import com.example.clothingstore.service.GuestCartService;
 import com.example.clothingstore.service.MetricsService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -17,6 +18,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.session.HttpSessionEventPublisher;
 
 @Configuration
 @EnableWebSecurity
@@ -30,13 +32,16 @@ public class SecurityConfig {
     private final CustomUserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final MetricsService metricsService;
+    private final GuestCartService guestCartService;
 
     public SecurityConfig(CustomUserDetailsService userDetailsService,
                           JwtAuthenticationFilter jwtAuthenticationFilter,
-                          MetricsService metricsService) {
+                          MetricsService metricsService,
+                          GuestCartService guestCartService) {
         this.userDetailsService = userDetailsService;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
         this.metricsService = metricsService;
+        this.guestCartService = guestCartService;
     }
 
     @Bean
@@ -59,6 +64,8 @@ public class SecurityConfig {
                                 "/subscribe", "/toggle-theme",
                                 "/access-denied"
                         ).permitAll()
+                        // Гостевая корзина живёт в cookie (GuestCartService)
+                        .requestMatchers("/cart", "/cart/add", "/cart/update", "/cart/remove", "/cart/clear").permitAll()
                         .requestMatchers(
                                 "/swagger-ui/**", "/v3/api-docs/**",
                                 "/api-docs/**", "/swagger-ui.html"
@@ -67,6 +74,7 @@ public class SecurityConfig {
                                 "/api/auth/**",
                                 "/api/health",
                                 "/api/products/public/**",
+                                "/api/products/suggest",
                                 "/api/brands/public/**",
                                 "/api/categories/public/**",
                                 "/api/public/**",
@@ -109,12 +117,13 @@ public class SecurityConfig {
                         .loginProcessingUrl("/login")
                         .successHandler((request, response, authentication) -> {
                             metricsService.userLoggedIn();
+                            int merged = guestCartService.mergeOnLogin(authentication.getName(), request, response);
                             if (authentication.getAuthorities().stream()
                                     .anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN") ||
                                             a.getAuthority().equals("ROLE_MANAGER"))) {
                                 response.sendRedirect("/index");
                             } else {
-                                response.sendRedirect("/home");
+                                response.sendRedirect(merged > 0 ? "/cart" : "/home");
                             }
                         })
                         .failureUrl("/login?error=true")
@@ -156,4 +165,10 @@ public class SecurityConfig {
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authConfig) throws Exception {
         return authConfig.getAuthenticationManager();
     }
+
+    // Публикует HttpSessionDestroyedEvent - по нему сохраняются недавно просмотренные товары
+    @Bean
+    public HttpSessionEventPublisher httpSessionEventPublisher() {
+        return new HttpSessionEventPublisher();
+    }
 }
\ No newline at end of file
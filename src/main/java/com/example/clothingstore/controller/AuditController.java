@@ -29,12 +29,16 @@ public class AuditController {
             @RequestParam(required = false) String entityType,
             @RequestParam(required = false) String action,
             @RequestParam(required = false) String username,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean exactCount,
             Model model) {
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
         Page<AuditLog> auditLogs;
 
-        if ((entityType != null && !entityType.isEmpty()) ||
+        if (after != null) {
+            auditLogs = auditService.scrollLogs(entityType, action, username, size, after, exactCount);
+        } else if ((entityType != null && !entityType.isEmpty()) ||
                 (action != null && !action.isEmpty()) ||
                 (username != null && !username.isEmpty())) {
 
@@ -50,6 +54,8 @@ public class AuditController {
         model.addAttribute("entityType", entityType);
         model.addAttribute("action", action);
         model.addAttribute("username", username);
+        model.addAttribute("cursorMode", after != null);
+        model.addAttribute("size", size);
 
         return "audit/list";
     }
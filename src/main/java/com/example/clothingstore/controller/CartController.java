@@ -2,17 +2,21 @@ package com.example.clothingstore.controller;
 
 import com.example.clothingstore.model.CartItem;
 import com.example.clothingstore.model.Product;
-import com.example.clothingstore.model.User;
-import com.example.clothingstore.repository.CartItemRepository;
 import com.example.clothingstore.repository.ProductRepository;
-import com.example.clothingstore.repository.UserRepository;
+import com.example.clothingstore.service.CartPricingService;
+import com.example.clothingstore.service.CartService;
+import com.example.clothingstore.service.GuestCartService;
 import com.example.clothingstore.service.MetricsService;
+import com.example.clothingstore.service.ProductService;
+import com.example.clothingstore.service.RecentlyViewedService;
 import com.example.clothingstore.service.ThemeService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -22,27 +26,34 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 
 @Controller
 public class CartController {
 
     private static final Logger logger = LoggerFactory.getLogger(CartController.class);
 
-    @Autowired
-    private CartItemRepository cartItemRepository;
-
     @Autowired
     private ProductRepository productRepository;
 
-    @Autowired
-    private UserRepository userRepository;
-
     private final ThemeService themeService;
     private final MetricsService metricsService;
-
-    public CartController(ThemeService themeService, MetricsService metricsService) {
+    private final ProductService productService;
+    private final RecentlyViewedService recentlyViewedService;
+    private final CartService cartService;
+    private final GuestCartService guestCartService;
+    private final CartPricingService cartPricingService;
+
+    public CartController(ThemeService themeService, MetricsService metricsService, ProductService productService,
+                          RecentlyViewedService recentlyViewedService, CartService cartService,
+                          GuestCartService guestCartService, CartPricingService cartPricingService) {
         this.themeService = themeService;
         this.metricsService = metricsService;
+        this.productService = productService;
+        this.recentlyViewedService = recentlyViewedService;
+        this.cartService = cartService;
+        this.guestCartService = guestCartService;
+        this.cartPricingService = cartPricingService;
     }
 
     @PostMapping("/cart/add")
@@ -51,19 +62,17 @@ public class CartController {
                             @RequestParam(required = false) String size,
                             @RequestParam(required = false) String color,
                             @AuthenticationPrincipal UserDetails userDetails,
+                            HttpServletRequest request,
+                            HttpServletResponse response,
                             RedirectAttributes redirectAttributes) {
 
         try {
             if (userDetails == null) {
-                redirectAttributes.addFlashAttribute("error", "Для добавления в корзину необходимо авторизоваться");
-                return "redirect:/login";
+                return addToGuestCart(productId, quantity, size, color, request, response);
             }
 
             logger.info("Adding product {} to cart for user {}", productId, userDetails.getUsername());
 
-            User user = userRepository.findByEmail(userDetails.getUsername())
-                    .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
-
             Optional<Product> productOpt = productRepository.findById(productId);
             if (productOpt.isEmpty()) {
                 redirectAttributes.addFlashAttribute("error", "Товар не найден");
@@ -78,37 +87,19 @@ public class CartController {
                 return "redirect:/products/" + productId;
             }
 
-            String finalSize = (size != null && !size.trim().isEmpty()) ? size : "M";
-            String finalColor = (color != null && !color.trim().isEmpty()) ? color : "Черный";
-
-            Optional<CartItem> existingCartItem = cartItemRepository.findByUserAndProductAndSizeAndColor(
-                    user, product, finalSize, finalColor
-            );
-
-            if (existingCartItem.isPresent()) {
-                CartItem cartItem = existingCartItem.get();
-                int newQuantity = cartItem.getQuantity() + quantity;
-
-                if (newQuantity > product.getStockQuantity()) {
-                    redirectAttributes.addFlashAttribute("error",
-                            "Недостаточно товара в наличии. Доступно: " + product.getStockQuantity() + " шт.");
-                    return "redirect:/products/" + productId;
-                }
-
-                cartItem.setQuantity(newQuantity);
-                cartItemRepository.save(cartItem);
-                redirectAttributes.addFlashAttribute("success", "Количество товара обновлено в корзине");
-            } else {
-                CartItem cartItem = new CartItem();
-                cartItem.setUser(user);
-                cartItem.setProduct(product);
-                cartItem.setQuantity(quantity);
-                cartItem.setSize(finalSize);
-                cartItem.setColor(finalColor);
-                cartItemRepository.save(cartItem);
-                redirectAttributes.addFlashAttribute("success", "Товар добавлен в корзину");
+            OptionalInt newQuantity = cartService.addItem(userDetails.getUsername(), productId, quantity,
+                    sizeOrDefault(size), colorOrDefault(color), product.getStockQuantity());
+            if (newQuantity.isEmpty()) {
+                redirectAttributes.addFlashAttribute("error",
+                        "Недостаточно товара в наличии. Доступно: " + product.getStockQuantity() + " шт.");
+                return "redirect:/products/" + productId;
             }
 
+            productService.recordCartAdd(productId, quantity);
+            redirectAttributes.addFlashAttribute("success", newQuantity.getAsInt() > quantity
+                    ? "Количество товара обновлено в корзине"
+                    : "Товар добавлен в корзину");
+
             return "redirect:/products/" + productId;
 
         } catch (Exception e) {
@@ -118,6 +109,32 @@ public class CartController {
         }
     }
 
+    // Гость остаётся без сессии: flash-сообщения создали бы её, поэтому ошибка уходит параметром cartError
+    private String addToGuestCart(Long productId, int quantity, String size, String color,
+                                  HttpServletRequest request, HttpServletResponse response) {
+        Optional<Product> productOpt = productRepository.findById(productId);
+        if (productOpt.isEmpty() || productOpt.get().isDeleted()) {
+            return "redirect:/products/" + productId + "?cartError=notfound";
+        }
+
+        Optional<List<GuestCartService.Line>> lines = guestCartService.add(guestCartService.read(request), productId,
+                quantity, sizeOrDefault(size), colorOrDefault(color), productOpt.get().getStockQuantity());
+        if (lines.isEmpty()) {
+            return "redirect:/products/" + productId + "?cartError=stock";
+        }
+        guestCartService.write(request, response, lines.get());
+        productService.recordCartAdd(productId, quantity);
+        return "redirect:/cart";
+    }
+
+    private static String sizeOrDefault(String size) {
+        return (size != null && !size.trim().isEmpty()) ? size : "M";
+    }
+
+    private static String colorOrDefault(String color) {
+        return (color != null && !color.trim().isEmpty()) ? color : "Черный";
+    }
+
     @GetMapping("/cart")
     public String cartPage(@AuthenticationPrincipal UserDetails userDetails,
                            HttpServletRequest request,
@@ -127,49 +144,30 @@ public class CartController {
             model.addAttribute("currentTheme", currentTheme != null ? currentTheme : "light");
             model.addAttribute("currentPage", "/cart");
 
+            List<CartItem> cartItems;
+            CartPricingService.Summary summary;
             if (userDetails == null) {
-                return "redirect:/login";
-            }
-
-            User user = userRepository.findByEmail(userDetails.getUsername())
-                    .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
-
-            List<CartItem> cartItems = cartItemRepository.findByUser(user);
-
-            double subtotal = 0.0;
-            double totalDiscount = 0.0;
-            double finalTotal = 0.0;
-
-            for (CartItem item : cartItems) {
-                if (item != null && item.getProduct() != null && item.getProduct().getPrice() != null) {
-                    double itemPrice = item.getProduct().getPrice().doubleValue();
-                    double itemTotal = itemPrice * item.getQuantity();
-                    subtotal += itemTotal;
-                    finalTotal += itemTotal;
-                }
-            }
-
-            double additionalDiscount = 0.0;
-            if (finalTotal >= 200000) {
-                additionalDiscount = 500.0;
-                finalTotal -= additionalDiscount;
-                totalDiscount += additionalDiscount;
-            }
-
-            double deliveryCost = 0.0;
-            if (!cartItems.isEmpty()) {
-                deliveryCost = finalTotal >= 200000 ? 0.0 : 300.0;
+                cartItems = guestCartService.toItems(guestCartService.read(request));
+                summary = cartPricingService.priceItems(cartItems);
+            } else {
+                cartItems = cartService.getCartItems(userDetails.getUsername());
+                summary = cartService.getCartSummary(userDetails.getUsername());
             }
-            finalTotal += deliveryCost;
 
             model.addAttribute("cartItems", cartItems);
-            model.addAttribute("subtotal", subtotal);
-            model.addAttribute("totalDiscount", totalDiscount);
-            model.addAttribute("additionalDiscount", additionalDiscount);
-            model.addAttribute("deliveryCost", deliveryCost);
-            model.addAttribute("finalTotal", finalTotal);
-            model.addAttribute("freeDeliveryThreshold", 200000.0);
-            model.addAttribute("hasAdditionalDiscount", additionalDiscount > 0);
+            model.addAttribute("recommendedProducts", productService.getBoughtTogether(
+                    cartItems.stream().filter(item -> item != null && item.getProduct() != null)
+                            .map(item -> item.getProduct().getId()).distinct().toList(), 4));
+            model.addAttribute("recentlyViewedProducts", recentlyViewedService.getRecentProducts(
+                    recentlyViewedService.keyOf(SecurityContextHolder.getContext().getAuthentication(), request),
+                    null, 6));
+            model.addAttribute("subtotal", summary.subtotalAmount());
+            model.addAttribute("totalDiscount", summary.discountAmount());
+            model.addAttribute("additionalDiscount", summary.discountAmount());
+            model.addAttribute("deliveryCost", summary.deliveryAmount());
+            model.addAttribute("finalTotal", summary.totalAmount());
+            model.addAttribute("freeDeliveryThreshold", cartPricingService.freeDeliveryThreshold());
+            model.addAttribute("hasAdditionalDiscount", summary.discount() > 0);
 
             return "cart";
 
@@ -187,7 +185,7 @@ public class CartController {
             model.addAttribute("additionalDiscount", 0.0);
             model.addAttribute("deliveryCost", 0.0);
             model.addAttribute("finalTotal", 0.0);
-            model.addAttribute("freeDeliveryThreshold", 200000.0);
+            model.addAttribute("freeDeliveryThreshold", cartPricingService.freeDeliveryThreshold());
             model.addAttribute("hasAdditionalDiscount", false);
             return "cart";
         }
@@ -197,38 +195,49 @@ public class CartController {
     public String updateCartItem(@RequestParam Long itemId,
                                  @RequestParam int quantity,
                                  @AuthenticationPrincipal UserDetails userDetails,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response,
                                  RedirectAttributes redirectAttributes) {
         try {
             if (userDetails == null) {
-                return "redirect:/login";
+                List<GuestCartService.Line> lines = guestCartService.read(request);
+                Optional<GuestCartService.Line> line = guestCartService.line(lines, itemId);
+                int stock = 0;
+                if (line.isPresent() && quantity > 0) {
+                    Optional<Product> product = productRepository.findById(line.get().productId());
+                    if (product.isEmpty()) {
+                        return "redirect:/cart?cartError=stock";
+                    }
+                    stock = product.get().getStockQuantity();
+                }
+                Optional<List<GuestCartService.Line>> updated = guestCartService.update(lines, itemId, quantity, stock);
+                if (updated.isEmpty()) {
+                    return "redirect:/cart?cartError=stock";
+                }
+                guestCartService.write(request, response, updated.get());
+                return "redirect:/cart";
             }
 
-            Optional<CartItem> cartItemOpt = cartItemRepository.findById(itemId);
+            // Ищется только в корзине текущего пользователя - чужую строку не найти
+            Optional<CartItem> cartItemOpt = cartService.findItem(userDetails.getUsername(), itemId);
             if (cartItemOpt.isPresent()) {
                 CartItem cartItem = cartItemOpt.get();
 
-                if (!cartItem.getUser().getEmail().equals(userDetails.getUsername())) {
-                    redirectAttributes.addFlashAttribute("error", "Ошибка доступа");
-                    return "redirect:/cart";
-                }
-
-                Optional<Product> productOpt = productRepository.findById(cartItem.getProduct().getId());
-                if (productOpt.isEmpty()) {
+                if (cartItem.getProduct() == null) {
                     redirectAttributes.addFlashAttribute("error", "Товар не найден");
                     return "redirect:/cart";
                 }
 
-                Product product = productOpt.get();
+                Product product = cartItem.getProduct();
 
                 if (quantity <= 0) {
-                    cartItemRepository.delete(cartItem);
+                    cartService.removeItem(userDetails.getUsername(), itemId);
                     redirectAttributes.addFlashAttribute("success", "Товар удален из корзины");
                 } else if (quantity > product.getStockQuantity()) {
                     redirectAttributes.addFlashAttribute("error",
                             "Недостаточно товара в наличии. Максимум: " + product.getStockQuantity());
                 } else {
-                    cartItem.setQuantity(quantity);
-                    cartItemRepository.save(cartItem);
+                    cartService.updateQuantity(userDetails.getUsername(), itemId, quantity);
                     redirectAttributes.addFlashAttribute("success", "Количество обновлено");
                 }
             } else {
@@ -245,23 +254,22 @@ public class CartController {
     @PostMapping("/cart/remove")
     public String removeFromCart(@RequestParam Long itemId,
                                  @AuthenticationPrincipal UserDetails userDetails,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response,
                                  RedirectAttributes redirectAttributes) {
         try {
             if (userDetails == null) {
-                return "redirect:/login";
+                guestCartService.write(request, response,
+                        guestCartService.remove(guestCartService.read(request), itemId));
+                return "redirect:/cart";
             }
 
-            Optional<CartItem> cartItemOpt = cartItemRepository.findById(itemId);
+            Optional<CartItem> cartItemOpt = cartService.findItem(userDetails.getUsername(), itemId);
             if (cartItemOpt.isPresent()) {
                 CartItem cartItem = cartItemOpt.get();
 
-                if (!cartItem.getUser().getEmail().equals(userDetails.getUsername())) {
-                    redirectAttributes.addFlashAttribute("error", "Ошибка доступа");
-                    return "redirect:/cart";
-                }
-
                 String productName = cartItem.getProduct() != null ? cartItem.getProduct().getName() : "Товар";
-                cartItemRepository.delete(cartItem);
+                cartService.removeItem(userDetails.getUsername(), itemId);
                 redirectAttributes.addFlashAttribute("success", "Товар \"" + productName + "\" удален из корзины");
             } else {
                 redirectAttributes.addFlashAttribute("error", "Товар в корзине не найден");
@@ -276,17 +284,16 @@ public class CartController {
 
     @PostMapping("/cart/clear")
     public String clearCart(@AuthenticationPrincipal UserDetails userDetails,
+                            HttpServletRequest request,
+                            HttpServletResponse response,
                             RedirectAttributes redirectAttributes) {
         try {
             if (userDetails == null) {
-                return "redirect:/login";
+                guestCartService.clear(request, response);
+                return "redirect:/cart";
             }
 
-            User user = userRepository.findByEmail(userDetails.getUsername())
-                    .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
-
-            List<CartItem> cartItems = cartItemRepository.findByUser(user);
-            cartItemRepository.deleteAll(cartItems);
+            cartService.clearCart(userDetails.getUsername());
 
             redirectAttributes.addFlashAttribute("success", "Корзина полностью очищена");
             return "redirect:/cart";
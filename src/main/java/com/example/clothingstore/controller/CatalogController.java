@@ -1,5 +1,8 @@
 package com.example.clothingstore.controller;
 
+import com.example.clothingstore.dto.CatalogFacets;
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.dto.ProductFilter;
 import com.example.clothingstore.model.*;
 import com.example.clothingstore.service.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,6 +22,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Controller
 @RequestMapping("/catalog")
@@ -30,19 +34,25 @@ public class CatalogController {
     private final UserService userService;
     private final ObjectMapper objectMapper;
     private final MetricsService metricsService;
+    private final CatalogFacetService catalogFacetService;
+    private final FavoriteService favoriteService;
 
     public CatalogController(ProductService productService,
                              CategoryService categoryService,
                              BrandService brandService,
                              UserService userService,
                              ObjectMapper objectMapper,
-                             MetricsService metricsService) {
+                             MetricsService metricsService,
+                             CatalogFacetService catalogFacetService,
+                             FavoriteService favoriteService) {
         this.productService = productService;
         this.categoryService = categoryService;
         this.brandService = brandService;
         this.userService = userService;
         this.objectMapper = objectMapper;
         this.metricsService = metricsService;
+        this.catalogFacetService = catalogFacetService;
+        this.favoriteService = favoriteService;
     }
 
     @GetMapping
@@ -61,6 +71,8 @@ public class CatalogController {
                           @RequestParam(required = false) TargetAudience audience,
                           @RequestParam(required = false) ProductTag tag,
                           @RequestParam(required = false) String search,
+                          @RequestParam(required = false) String after,
+                          @RequestParam(defaultValue = "false") boolean exactCount,
                           Authentication authentication) {
         if (authentication != null && authentication.isAuthenticated()) {
             metricsService.userLoggedIn();
@@ -85,9 +97,12 @@ public class CatalogController {
                 Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, pageSize, sort);
 
-        Page<Product> productPage;
+        Page<ProductCard> productPage;
 
-        if (hasFilters(categoryId, brandId, minPrice, maxPrice, color, sizeFilter, country, audience, tag, search)) {
+        if (after != null) {
+            productPage = productService.scrollProducts(new ProductFilter(search, categoryId, brandId,
+                    minPrice, maxPrice, color, sizeFilter, country, audience, tag), sort, pageSize, after, exactCount);
+        } else if (hasFilters(categoryId, brandId, minPrice, maxPrice, color, sizeFilter, country, audience, tag, search)) {
             productPage = productService.filterProducts(
                     search, categoryId, brandId, minPrice, maxPrice,
                     color, sizeFilter, country, audience, tag, pageable
@@ -98,9 +113,8 @@ public class CatalogController {
 
         List<Category> categories = categoryService.getAllActiveCategories();
         List<Brand> brands = brandService.getAllActiveBrands();
-        List<String> availableColors = productService.getAvailableColors();
-        List<String> availableSizes = productService.getAvailableSizes();
-        List<String> availableCountries = productService.getAvailableCountries();
+        CatalogFacets facets = catalogFacetService.getFacets(new ProductFilter(search, categoryId, brandId,
+                minPrice, maxPrice, color, sizeFilter, country, audience, tag));
 
         Category selectedCategory = null;
         Brand selectedBrand = null;
@@ -124,9 +138,9 @@ public class CatalogController {
 
         model.addAttribute("categories", categories);
         model.addAttribute("brands", brands);
-        model.addAttribute("availableColors", availableColors);
-        model.addAttribute("availableSizes", availableSizes);
-        model.addAttribute("availableCountries", availableCountries);
+        model.addAttribute("availableColors", facets.colors());
+        model.addAttribute("availableSizes", facets.sizes());
+        model.addAttribute("availableCountries", facets.countries());
         model.addAttribute("targetAudiences", TargetAudience.values());
         model.addAttribute("productTags", ProductTag.values());
 
@@ -134,6 +148,7 @@ public class CatalogController {
         model.addAttribute("totalPages", productPage.getTotalPages());
         model.addAttribute("sortBy", sortBy);
         model.addAttribute("sortDir", sortDir);
+        model.addAttribute("cursorMode", after != null);
 
         model.addAttribute("categoryId", categoryId);
         model.addAttribute("brandId", brandId);
@@ -148,6 +163,7 @@ public class CatalogController {
 
         model.addAttribute("selectedCategory", selectedCategory);
         model.addAttribute("selectedBrand", selectedBrand);
+        model.addAttribute("favoriteIds", favoriteIds(authentication));
 
         return "catalog/index";
     }
@@ -159,9 +175,9 @@ public class CatalogController {
                               Authentication authentication) {
         int pageSize = determinePageSize(size, authentication);
         Pageable pageable = PageRequest.of(page, pageSize);
-        Page<Product> productPage = productService.getProductsByTag(ProductTag.NEW_ARRIVAL, pageable);
+        Page<ProductCard> productPage = productService.getProductsByTag(ProductTag.NEW_ARRIVAL, pageable);
 
-        setupCatalogModel(model, productPage, page);
+        setupCatalogModel(model, productPage, page, filterBy(null, null, ProductTag.NEW_ARRIVAL));
         model.addAttribute("title", "Новинки");
         model.addAttribute("tag", ProductTag.NEW_ARRIVAL);
 
@@ -175,9 +191,9 @@ public class CatalogController {
                                Authentication authentication) {
         int pageSize = determinePageSize(size, authentication);
         Pageable pageable = PageRequest.of(page, pageSize);
-        Page<Product> productPage = productService.getProductsByTag(ProductTag.SALE, pageable);
+        Page<ProductCard> productPage = productService.getSaleProducts(pageable);
 
-        setupCatalogModel(model, productPage, page);
+        setupCatalogModel(model, productPage, page, filterBy(null, null, ProductTag.SALE));
         model.addAttribute("title", "Распродажа");
         model.addAttribute("tag", ProductTag.SALE);
 
@@ -191,15 +207,30 @@ public class CatalogController {
                               Authentication authentication) {
         int pageSize = determinePageSize(size, authentication);
         Pageable pageable = PageRequest.of(page, pageSize);
-        Page<Product> productPage = productService.getProductsByTag(ProductTag.BESTSELLER, pageable);
+        Page<ProductCard> productPage = productService.getProductsByTag(ProductTag.BESTSELLER, pageable);
 
-        setupCatalogModel(model, productPage, page);
+        setupCatalogModel(model, productPage, page, filterBy(null, null, ProductTag.BESTSELLER));
         model.addAttribute("title", "Хиты продаж");
         model.addAttribute("tag", ProductTag.BESTSELLER);
 
         return "catalog/index";
     }
 
+    @GetMapping("/trending")
+    public String trending(Model model,
+                           @RequestParam(defaultValue = "0") int page,
+                           @RequestParam(defaultValue = "12") int size,
+                           Authentication authentication) {
+        int pageSize = determinePageSize(size, authentication);
+        Pageable pageable = PageRequest.of(page, pageSize);
+        Page<ProductCard> productPage = productService.getTrendingProducts(pageable);
+
+        setupCatalogModel(model, productPage, page, ProductFilter.empty());
+        model.addAttribute("title", "Сейчас в тренде");
+
+        return "catalog/index";
+    }
+
     @GetMapping("/men")
     public String menProducts(Model model,
                               @RequestParam(defaultValue = "0") int page,
@@ -234,9 +265,9 @@ public class CatalogController {
                                  @RequestParam(defaultValue = "0") int page,
                                  @RequestParam(defaultValue = "12") int size) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> productPage = productService.searchProducts(q, pageable);
+        Page<ProductCard> productPage = productService.searchProducts(q, pageable);
 
-        setupCatalogModel(model, productPage, page);
+        setupCatalogModel(model, productPage, page, filterBy(q, null, null));
         model.addAttribute("title", "Результаты поиска: " + q);
         model.addAttribute("search", q);
 
@@ -251,19 +282,21 @@ public class CatalogController {
                 tag != null || (search != null && !search.trim().isEmpty());
     }
 
-    private void setupCatalogModel(Model model, Page<Product> productPage, int page) {
+    private ProductFilter filterBy(String search, TargetAudience audience, ProductTag tag) {
+        return new ProductFilter(search, null, null, null, null, null, null, null, audience, tag);
+    }
+
+    private void setupCatalogModel(Model model, Page<ProductCard> productPage, int page, ProductFilter filter) {
         List<Category> categories = categoryService.getAllActiveCategories();
         List<Brand> brands = brandService.getAllActiveBrands();
-        List<String> availableColors = productService.getAvailableColors();
-        List<String> availableSizes = productService.getAvailableSizes();
-        List<String> availableCountries = productService.getAvailableCountries();
+        CatalogFacets facets = catalogFacetService.getFacets(filter);
 
         model.addAttribute("products", productPage);
         model.addAttribute("categories", categories);
         model.addAttribute("brands", brands);
-        model.addAttribute("availableColors", availableColors);
-        model.addAttribute("availableSizes", availableSizes);
-        model.addAttribute("availableCountries", availableCountries);
+        model.addAttribute("availableColors", facets.colors());
+        model.addAttribute("availableSizes", facets.sizes());
+        model.addAttribute("availableCountries", facets.countries());
         model.addAttribute("targetAudiences", TargetAudience.values());
         model.addAttribute("productTags", ProductTag.values());
         model.addAttribute("currentPage", page);
@@ -271,14 +304,26 @@ public class CatalogController {
 
         model.addAttribute("selectedCategory", null);
         model.addAttribute("selectedBrand", null);
+        model.addAttribute("cursorMode", false);
+        model.addAttribute("favoriteIds", Set.of());
+    }
+
+    // Карточки не знают о пользователе - отметки избранного одним запросом на страницу
+    private Set<Long> favoriteIds(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return Set.of();
+        }
+        return userService.findByEmail(authentication.getName())
+                .map(favoriteService::getFavoriteProductIds)
+                .orElse(Set.of());
     }
 
     private String productsByAudience(Model model, TargetAudience audience, String title,
                                       int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> productPage = productService.getProductsByAudience(audience, pageable);
+        Page<ProductCard> productPage = productService.getProductsByAudience(audience, pageable);
 
-        setupCatalogModel(model, productPage, page);
+        setupCatalogModel(model, productPage, page, filterBy(null, audience, null));
         model.addAttribute("title", title);
         model.addAttribute("audience", audience);
 
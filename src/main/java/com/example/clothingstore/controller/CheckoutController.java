@@ -2,7 +2,9 @@ package com.example.clothingstore.controller;
 
 import com.example.clothingstore.dto.OrderRequest;
 import com.example.clothingstore.model.CartItem;
+import com.example.clothingstore.model.Order;
 import com.example.clothingstore.model.User;
+import com.example.clothingstore.service.CartPricingService;
 import com.example.clothingstore.service.CartService;
 import com.example.clothingstore.service.MetricsService;
 import com.example.clothingstore.service.TransactionalOrderService;
@@ -37,9 +39,7 @@ public class CheckoutController {
             return "redirect:/cart?error=Корзина пуста";
         }
 
-        double subtotal = calculateSubtotal(cartItems);
-        double deliveryCost = subtotal >= 200000 ? 0 : 300;
-        double finalTotal = subtotal + deliveryCost;
+        CartPricingService.Summary summary = cartService.getCartSummary(user.getEmail());
 
         OrderRequest orderRequest = new OrderRequest();
         orderRequest.setUseProfileEmail(true);
@@ -47,9 +47,10 @@ public class CheckoutController {
         model.addAttribute("orderRequest", orderRequest);
         model.addAttribute("cartItems", cartItems);
         model.addAttribute("user", user);
-        model.addAttribute("subtotal", subtotal);
-        model.addAttribute("deliveryCost", deliveryCost);
-        model.addAttribute("finalTotal", finalTotal);
+        model.addAttribute("subtotal", summary.subtotalAmount());
+        model.addAttribute("totalDiscount", summary.discountAmount());
+        model.addAttribute("deliveryCost", summary.deliveryAmount());
+        model.addAttribute("finalTotal", summary.totalAmount());
         model.addAttribute("title", "Оформление заказа");
         return "checkout";
     }
@@ -66,11 +67,8 @@ public class CheckoutController {
                     ? user.getEmail()
                     : orderRequest.getReceiptEmail();
 
-            orderService.createOrderFromCart(user, orderRequest, receiptEmail);
-
-            List<CartItem> cartItems = cartService.getCartItems(user);
-            double subtotal = calculateSubtotal(cartItems);
-            metricsService.addRevenue(subtotal);
+            Order order = orderService.createOrderFromCart(user, orderRequest, receiptEmail);
+            metricsService.addRevenue(order.getTotalAmount().doubleValue());
 
             redirectAttributes.addFlashAttribute("success",
                     "Заказ успешно создан! Чек отправлен на " + receiptEmail);
@@ -82,20 +80,4 @@ public class CheckoutController {
             return "redirect:/checkout";
         }
     }
-    private double calculateFinalTotal(User user) {
-        List<CartItem> cartItems = cartService.getCartItems(user);
-        double subtotal = calculateSubtotal(cartItems);
-        double deliveryCost = subtotal >= 200000 ? 0 : 300;
-        return subtotal + deliveryCost;
-    }
-    private double calculateSubtotal(List<CartItem> cartItems) {
-        return cartItems.stream()
-                .mapToDouble(item -> {
-                    if (item != null && item.getProduct() != null && item.getProduct().getPrice() != null) {
-                        return item.getProduct().getPrice().doubleValue() * item.getQuantity();
-                    }
-                    return 0.0;
-                })
-                .sum();
-    }
-}
\ No newline at end of file
+}
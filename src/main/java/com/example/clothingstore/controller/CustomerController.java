@@ -38,13 +38,17 @@ public class CustomerController {
                                 @RequestParam(defaultValue = "id") String sortBy,
                                 @RequestParam(defaultValue = "asc") String sortDir,
                                 @RequestParam(required = false) String search,
-                                @RequestParam(required = false) String status) {
+                                @RequestParam(required = false) String status,
+                                @RequestParam(required = false) String after,
+                                @RequestParam(defaultValue = "false") boolean exactCount) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
         Page<User> customerPage;
-        if (search != null && !search.isBlank()) {
+        if (after != null) {
+            customerPage = userService.scrollCustomers(search, status, sort, size, after, exactCount);
+        } else if (search != null && !search.isBlank()) {
             customerPage = userService.searchCustomers(search, pageable);
         } else if ("active".equals(status)) {
             customerPage = userService.getRecentlyActiveCustomers(pageable);
@@ -65,6 +69,8 @@ public class CustomerController {
         model.addAttribute("status", status);
         model.addAttribute("sortBy", sortBy);
         model.addAttribute("sortDir", sortDir);
+        model.addAttribute("cursorMode", after != null);
+        model.addAttribute("size", size);
         return "customers/list";
     }
     @PostMapping("/change-role/{id}")
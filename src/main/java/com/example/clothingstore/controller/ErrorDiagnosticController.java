@@ -3,9 +3,9 @@ package com.example.clothingstore.controller;
 import com.example.clothingstore.model.CartItem;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.User;
-import com.example.clothingstore.repository.CartItemRepository;
 import com.example.clothingstore.repository.ProductRepository;
 import com.example.clothingstore.repository.UserRepository;
+import com.example.clothingstore.service.CartService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,7 +35,7 @@ public class ErrorDiagnosticController {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private CartItemRepository cartItemRepository;
+    private CartService cartService;
 
     @Autowired
     private UserRepository userRepository;
@@ -168,7 +168,7 @@ public class ErrorDiagnosticController {
                 info.put("Пользователь ID", user.getId());
                 info.put("Email", user.getEmail());
 
-                List<CartItem> cartItems = cartItemRepository.findByUser(user);
+                List<CartItem> cartItems = cartService.getCartItems(user);
                 info.put("Всего товаров в корзине", cartItems.size());
 
                 List<Map<String, Object>> itemsDetails = new ArrayList<>();
@@ -258,7 +258,7 @@ public class ErrorDiagnosticController {
                 if (userOpt.isPresent()) {
                     User user = userOpt.get();
 
-                    List<CartItem> cartItems = cartItemRepository.findByUser(user);
+                    List<CartItem> cartItems = cartService.getCartItems(user);
                     info.put("Тест получения корзины", "✅ Успешно - " + cartItems.size() + " элементов");
 
                     int validItems = 0;
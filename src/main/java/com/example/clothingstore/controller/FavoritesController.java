@@ -303,8 +303,7 @@ public class FavoritesController {
             User user = userService.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("Пользователь не найден"));
 
-            List<Favorite> favorites = favoriteService.getUserFavorites(user);
-            model.addAttribute("favorites", favorites != null ? favorites : Collections.emptyList());
+            model.addAttribute("favorites", favoriteService.getUserFavoriteCards(user));
             model.addAttribute("title", "Мои избранные товары");
             model.addAttribute("currentPage", "/api/favorites/page");
 
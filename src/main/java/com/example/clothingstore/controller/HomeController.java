@@ -1,10 +1,12 @@
 package com.example.clothingstore.controller;
 
-import com.example.clothingstore.model.Product;
+import com.example.clothingstore.dto.HomePageSnapshot;
 import com.example.clothingstore.model.TargetAudience;
-import com.example.clothingstore.service.ProductService;
+import com.example.clothingstore.service.HomePageService;
+import com.example.clothingstore.service.RecentlyViewedService;
 import com.example.clothingstore.service.ThemeService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
@@ -13,20 +15,23 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Objects;
 
 @Controller
 public class HomeController {
     private static final Logger logger = LoggerFactory.getLogger(HomeController.class);
 
-    private final ProductService productService;
+    private final HomePageService homePageService;
     private final ThemeService themeService;
+    private final RecentlyViewedService recentlyViewedService;
 
-    public HomeController(ProductService productService, ThemeService themeService) {
-        this.productService = productService;
+    public HomeController(HomePageService homePageService, ThemeService themeService,
+                          RecentlyViewedService recentlyViewedService) {
+        this.homePageService = homePageService;
         this.themeService = themeService;
+        this.recentlyViewedService = recentlyViewedService;
     }
 
     @GetMapping({"/", "/index"})
@@ -69,137 +74,46 @@ public class HomeController {
                                @RequestParam(value = "registered", required = false) String registered,
                                @RequestParam(value = "subscribed", required = false) String subscribed,
                                HttpServletRequest request,
+                               HttpServletResponse response,
+                               WebRequest webRequest,
                                Model model) {
 
-        logger.info("=== Loading home page for user: {} ===",
-                authentication != null ? authentication.getName() : "anonymous");
-
         String currentTheme = themeService.getCurrentTheme(request);
+        HomePageSnapshot snapshot = homePageService.getSnapshot();
+        String user = authentication != null && authentication.isAuthenticated() ? authentication.getName() : "anonymous";
+        String recentKey = recentlyViewedService.keyOf(authentication, request);
+
+        // Страница зависит только от снимка, темы, пользователя (имя в шапке), значка корзины
+        // (CartBadgeAdvice уже положил его в модель) и недавних просмотров
+        String etag = "W/\"home-" + snapshot.version() + "-" + Integer.toHexString(Objects.hash(currentTheme, user,
+                model.getAttribute("cartBadgeCount"), recentKey, recentlyViewedService.version(recentKey),
+                registered, subscribed)) + "\"";
+        response.setHeader("Cache-Control", "private, no-cache");
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
         model.addAttribute("currentTheme", currentTheme != null ? currentTheme : "light");
         model.addAttribute("currentPage", "/home");
 
-        try {
-            if (registered != null) {
-                model.addAttribute("success", "Регистрация прошла успешно! Добро пожаловать в наш магазин!");
-            }
-            if (subscribed != null) {
-                model.addAttribute("success", "Вы успешно подписались на рассылку!");
-            }
-
-            model.addAttribute("title", "TARENO - Премиальная одежда");
-            model.addAttribute("success", model.containsAttribute("success") ? model.getAttribute("success") : null);
-            model.addAttribute("error", null);
-
-            List<SafeProduct> safeNewArrivals = getSafeProducts("newArrivals", 8);
-            List<SafeProduct> safeBestSellers = getSafeProducts("bestSellers", 8);
-            List<SafeProduct> safeSaleProducts = getSafeProducts("saleProducts", 8);
-
-            logger.info("Loaded products - New: {}, Best: {}, Sale: {}",
-                    safeNewArrivals.size(), safeBestSellers.size(), safeSaleProducts.size());
-
-            model.addAttribute("newArrivals", safeNewArrivals);
-            model.addAttribute("bestSellers", safeBestSellers);
-            model.addAttribute("saleProducts", safeSaleProducts);
-            model.addAttribute("targetAudiences", TargetAudience.values());
-
-        } catch (Exception e) {
-            logger.error("CRITICAL ERROR loading home page: ", e);
-
-            model.addAttribute("title", "TARENO - Премиальная одежда");
-            model.addAttribute("newArrivals", new ArrayList<SafeProduct>());
-            model.addAttribute("bestSellers", new ArrayList<SafeProduct>());
-            model.addAttribute("saleProducts", new ArrayList<SafeProduct>());
-            model.addAttribute("targetAudiences", TargetAudience.values());
-            model.addAttribute("error", "Временные технические неполадки");
+        if (registered != null) {
+            model.addAttribute("success", "Регистрация прошла успешно! Добро пожаловать в наш магазин!");
         }
-
-        return "home";
-    }
-
-    private List<SafeProduct> getSafeProducts(String type, int limit) {
-        List<SafeProduct> safeProducts = new ArrayList<>();
-
-        try {
-            List<Product> products;
-
-            switch (type) {
-                case "newArrivals":
-                    products = productService.getNewArrivals(limit);
-                    break;
-                case "bestSellers":
-                    products = productService.getBestSellers(limit);
-                    break;
-                case "saleProducts":
-                    products = productService.getSaleProducts(limit);
-                    break;
-                default:
-                    products = new ArrayList<>();
-            }
-
-            for (Product product : products) {
-                try {
-                    SafeProduct safeProduct = new SafeProduct(product);
-                    safeProducts.add(safeProduct);
-                } catch (Exception e) {
-                    logger.warn("Skipping problematic product {}: {}", product.getId(), e.getMessage());
-                }
-            }
-
-        } catch (Exception e) {
-            logger.error("Error loading {}: {}", type, e.getMessage());
+        if (subscribed != null) {
+            model.addAttribute("success", "Вы успешно подписались на рассылку!");
         }
 
-        return safeProducts;
-    }
+        model.addAttribute("title", "TARENO - Премиальная одежда");
+        model.addAttribute("success", model.containsAttribute("success") ? model.getAttribute("success") : null);
+        model.addAttribute("error", null);
 
-    public static class SafeProduct {
-        private Long id;
-        private String name;
-        private String brandName;
-        private String price;
-        private String imageUrl;
-        private boolean hasImage;
-        private boolean onSale;
-        private String originalPrice;
-        private String discountPercent;
-
-        public SafeProduct(Product product) {
-            this.id = product.getId();
-            this.name = safeString(product.getName(), "Товар");
-            this.brandName = safeString(product.getBrand() != null ? product.getBrand().getName() : null, "Бренд");
-
-            if (product.getPrice() != null) {
-                this.price = "₽" + String.format("%,.0f", product.getPrice().doubleValue());
-            } else {
-                this.price = "₽0";
-            }
+        model.addAttribute("newArrivals", snapshot.newArrivals());
+        model.addAttribute("bestSellers", snapshot.bestSellers());
+        model.addAttribute("saleProducts", snapshot.saleProducts());
+        model.addAttribute("recentlyViewedProducts", recentlyViewedService.getRecentProducts(recentKey, null, 6));
+        model.addAttribute("targetAudiences", TargetAudience.values());
 
-            this.onSale = product.isOnSale();
-            if (this.onSale && product.getOriginalPrice() != null) {
-                this.originalPrice = "₽" + String.format("%,.0f", product.getOriginalPrice().doubleValue());
-                this.discountPercent = "-" + product.getDiscountPercent().intValue() + "%";
-            } else {
-                this.originalPrice = "";
-                this.discountPercent = "";
-            }
-            String mainImage = product.getMainImage();
-            this.hasImage = mainImage != null && !mainImage.trim().isEmpty();
-            this.imageUrl = this.hasImage ? mainImage : "";
-        }
-
-        private String safeString(String value, String defaultValue) {
-            return value != null && !value.trim().isEmpty() ? value : defaultValue;
-        }
-
-        public Long getId() { return id; }
-        public String getName() { return name; }
-        public String getBrandName() { return brandName; }
-        public String getPrice() { return price; }
-        public String getImageUrl() { return imageUrl; }
-        public boolean isHasImage() { return hasImage; }
-        public boolean isOnSale() { return onSale; }
-        public String getOriginalPrice() { return originalPrice; }
-        public String getDiscountPercent() { return discountPercent; }
+        return "home";
     }
 
     @GetMapping("/subscribe")
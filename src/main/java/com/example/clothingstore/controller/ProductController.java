@@ -1,4 +1,6 @@
 package com.example.clothingstore.controller;
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.dto.ProductDetailView;
 import com.example.clothingstore.service.*;
 import com.example.clothingstore.model.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -17,7 +19,6 @@ import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 
 @Controller
@@ -30,19 +31,25 @@ public class ProductController {
     private final UserService userService;
     private final FavoriteService favoriteService;
     private final MetricsService metricsService;
+    private final RecentlyViewedService recentlyViewedService;
+    private final ProductDetailService productDetailService;
 
     public ProductController(ProductService productService,
                              CategoryService categoryService,
                              BrandService brandService,
                              UserService userService,
                              FavoriteService favoriteService,
-                             MetricsService metricsService) {
+                             MetricsService metricsService,
+                             RecentlyViewedService recentlyViewedService,
+                             ProductDetailService productDetailService) {
         this.productService = productService;
         this.categoryService = categoryService;
         this.brandService = brandService;
         this.userService = userService;
         this.favoriteService = favoriteService;
         this.metricsService = metricsService;
+        this.recentlyViewedService = recentlyViewedService;
+        this.productDetailService = productDetailService;
     }
     @GetMapping("/{id}")
     public String getProductDetails(@PathVariable Long id,
@@ -50,25 +57,21 @@ public class ProductController {
                                     @RequestParam(required = false) Integer quantity,
                                     @RequestParam(required = false) Boolean favorite,
                                     HttpServletRequest request,
+                                    HttpServletResponse response,
                                     Model model) {
         try {
-            Product product = productService.getProductByIdIgnoreDeleted(id);
-
-        product.incrementViews();
-        productService.save(product);
-        List<Product> related = productService.getRelatedProducts(product);
-
-        List<String> additionalImages = new ArrayList<>();
-        List<ProductImage> productImages = product.getImages();
-        if (productImages != null && !productImages.isEmpty()) {
-            for (ProductImage image : productImages) {
-                if (image.getImageUrl() != null && !image.getImageUrl().trim().isEmpty()) {
-                    additionalImages.add(image.getImageUrl());
-                }
-            }
-        }
+            // Карточка, картинки и похожие товары общие для всех - из кэша; на запрос остаётся избранное
+            ProductDetailView detail = productDetailService.getDetail(id);
+
+        model.addAttribute("viewCount", productService.recordView(id, productDetailService.storedViews(detail)));
 
-        String currentImage = product.getMainImage();
+        String recentKey = recentlyViewedService.keyOf(SecurityContextHolder.getContext().getAuthentication(), request);
+        model.addAttribute("recentlyViewedProducts", recentlyViewedService.getRecentProducts(recentKey, id, 6));
+        recentlyViewedService.record(recentKey, id, request, response);
+
+        List<String> additionalImages = detail.additionalImages();
+
+        String currentImage = detail.product().mainImage();
         int currentIndex = -1;
 
         if (imageIndex != null && imageIndex >= 0 && imageIndex < additionalImages.size()) {
@@ -84,7 +87,7 @@ public class ProductController {
                 String email = authentication.getName();
                 User user = userService.findByEmail(email).orElse(null);
                 if (user != null) {
-                    isInFavorites = favoriteService.isProductInFavorites(user, product.getId());
+                    isInFavorites = favoriteService.isProductInFavorites(user, id);
                 }
             } catch (Exception e) {
             }
@@ -93,8 +96,8 @@ public class ProductController {
             isInFavorites = favorite;
         }
 
-        model.addAttribute("product", product);
-        model.addAttribute("relatedProducts", related);
+        model.addAttribute("product", detail.product());
+        model.addAttribute("relatedProducts", detail.relatedProducts());
         model.addAttribute("additionalImages", additionalImages);
         model.addAttribute("currentImage", currentImage);
         model.addAttribute("currentImageIndex", currentIndex);
@@ -131,7 +134,7 @@ public class ProductController {
         sort = sortDir.equals("asc") ? sort.ascending() : sort.descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        Page<Product> productPage;
+        Page<ProductCard> productPage;
 
         if (processedSearch != null || processedCategoryId != null || processedBrandId != null ||
                 processedMinPrice != null || processedMaxPrice != null) {
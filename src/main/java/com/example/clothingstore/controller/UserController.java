@@ -30,13 +30,17 @@ public class UserController {
                             @RequestParam(defaultValue = "10") int size,
                             @RequestParam(defaultValue = "id") String sortBy,
                             @RequestParam(defaultValue = "asc") String sortDir,
-                            @RequestParam(required = false) String search) {
+                            @RequestParam(required = false) String search,
+                            @RequestParam(required = false) String after,
+                            @RequestParam(defaultValue = "false") boolean exactCount) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
         Page<User> userPage;
-        if (search != null && !search.isBlank()) {
+        if (after != null) {
+            userPage = userService.scrollUsers(search, sort, size, after, exactCount);
+        } else if (search != null && !search.isBlank()) {
             userPage = userService.searchUsers(search, pageable);
         } else {
             userPage = userService.getAllUsers(pageable);
@@ -46,6 +50,8 @@ public class UserController {
         model.addAttribute("search", search);
         model.addAttribute("sortBy", sortBy);
         model.addAttribute("sortDir", sortDir);
+        model.addAttribute("cursorMode", after != null);
+        model.addAttribute("size", size);
         return "admin/users/list";
     }
 
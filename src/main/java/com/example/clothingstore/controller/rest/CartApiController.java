@@ -3,9 +3,9 @@ package com.example.clothingstore.controller.rest;
 import com.example.clothingstore.model.CartItem;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.User;
-import com.example.clothingstore.repository.CartItemRepository;
 import com.example.clothingstore.repository.ProductRepository;
 import com.example.clothingstore.service.CartService;
+import com.example.clothingstore.service.ProductService;
 import com.example.clothingstore.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,7 +19,6 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/cart")
@@ -29,8 +28,8 @@ public class CartApiController {
 
     private final CartService cartService;
     private final UserService userService;
-    private final CartItemRepository cartItemRepository;
     private final ProductRepository productRepository;
+    private final ProductService productService;
 
     @Operation(summary = "Получить корзину пользователя")
     @GetMapping
@@ -50,9 +49,6 @@ public class CartApiController {
             @Parameter(description = "Размер") @RequestParam(required = false) String size,
             @Parameter(description = "Цвет") @RequestParam(required = false) String color) {
 
-        User user = userService.findByEmail(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
 
@@ -63,22 +59,8 @@ public class CartApiController {
         String finalSize = (size != null && !size.trim().isEmpty()) ? size : "M";
         String finalColor = (color != null && !color.trim().isEmpty()) ? color : "Black";
 
-        Optional<CartItem> existingCartItem = cartItemRepository.findByUserAndProductAndSizeAndColor(
-                user, product, finalSize, finalColor);
-
-        if (existingCartItem.isPresent()) {
-            CartItem cartItem = existingCartItem.get();
-            cartItem.setQuantity(cartItem.getQuantity() + quantity);
-            cartItemRepository.save(cartItem);
-        } else {
-            CartItem cartItem = new CartItem();
-            cartItem.setUser(user);
-            cartItem.setProduct(product);
-            cartItem.setQuantity(quantity);
-            cartItem.setSize(finalSize);
-            cartItem.setColor(finalColor);
-            cartItemRepository.save(cartItem);
-        }
+        cartService.addItem(userDetails.getUsername(), productId, quantity, finalSize, finalColor, Integer.MAX_VALUE);
+        productService.recordCartAdd(productId, quantity);
 
         Map<String, String> response = new HashMap<>();
         response.put("message", "Product added to cart successfully");
@@ -91,18 +73,10 @@ public class CartApiController {
             @Parameter(description = "ID элемента корзины") @PathVariable Long itemId,
             @AuthenticationPrincipal UserDetails userDetails) {
 
-        User user = userService.findByEmail(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        CartItem cartItem = cartItemRepository.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
-
-        if (!cartItem.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Access denied");
+        if (!cartService.removeItem(userDetails.getUsername(), itemId)) {
+            throw new RuntimeException("Cart item not found");
         }
 
-        cartItemRepository.delete(cartItem);
-
         Map<String, String> response = new HashMap<>();
         response.put("message", "Item removed from cart successfully");
         return ResponseEntity.ok(response);
@@ -111,11 +85,7 @@ public class CartApiController {
     @Operation(summary = "Очистить корзину")
     @DeleteMapping("/clear")
     public ResponseEntity<Map<String, String>> clearCart(@AuthenticationPrincipal UserDetails userDetails) {
-        User user = userService.findByEmail(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        List<CartItem> cartItems = cartItemRepository.findByUser(user);
-        cartItemRepository.deleteAll(cartItems);
+        cartService.clearCart(userDetails.getUsername());
 
         Map<String, String> response = new HashMap<>();
         response.put("message", "Cart cleared successfully");
@@ -29,9 +29,14 @@ public class OrderApiController {
             @RequestParam(defaultValue = "orderDate") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDir,
             @RequestParam(required = false) String search,
-            @RequestParam(required = false) OrderStatus status) {
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean exactCount) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+        if (after != null) {
+            return ResponseEntity.ok(orderService.scrollOrders(search, status, sort, size, after, exactCount));
+        }
         Pageable pageable = PageRequest.of(page, size, sort);
 
         Page<Order> orderPage;
@@ -1,5 +1,9 @@
 package com.example.clothingstore.controller.rest;
 
+import com.example.clothingstore.dto.CursorPage;
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.dto.ProductSuggestion;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.ProductTag;
 import com.example.clothingstore.model.TargetAudience;
@@ -36,15 +40,29 @@ public class ProductApiController {
             @Parameter(description = "Номер страницы (0-based)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Размер страницы") @RequestParam(defaultValue = "10") int size,
             @Parameter(description = "Поле для сортировки") @RequestParam(defaultValue = "name") String sort,
-            @Parameter(description = "Направление сортировки") @RequestParam(defaultValue = "asc") String direction) {
+            @Parameter(description = "Направление сортировки") @RequestParam(defaultValue = "asc") String direction,
+            @Parameter(description = "Курсор следующей страницы (пустое значение - первая страница в режиме курсоров)")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Считать точное количество в режиме курсоров") @RequestParam(defaultValue = "false") boolean exactCount) {
 
         Sort.Direction sortDirection = direction.equalsIgnoreCase("desc") ?
                 Sort.Direction.DESC : Sort.Direction.ASC;
-        Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
-
-        Page<Product> products = productService.getAllProducts(pageable);
 
         Map<String, Object> response = new HashMap<>();
+        if (after != null) {
+            CursorPage<ProductCard> window = productService.scrollProducts(ProductFilter.empty(),
+                    Sort.by(sortDirection, sort), size, after, exactCount);
+            response.put("products", window.getContent());
+            response.put("nextCursor", window.getNextCursor());
+            response.put("hasNext", window.hasNext());
+            response.put("totalItems", window.getTotalElements());
+            response.put("totalExact", window.isTotalExact());
+            return ResponseEntity.ok(response);
+        }
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
+        Page<ProductCard> products = productService.getAllProducts(pageable);
+
         response.put("products", products.getContent());
         response.put("currentPage", products.getNumber());
         response.put("totalItems", products.getTotalElements());
@@ -98,7 +116,7 @@ public class ProductApiController {
             @RequestParam(defaultValue = "10") int size) {
 
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> products = productService.searchProducts(query, pageable);
+        Page<ProductCard> products = productService.searchProducts(query, pageable);
 
         Map<String, Object> response = new HashMap<>();
         response.put("products", products.getContent());
@@ -109,6 +127,14 @@ public class ProductApiController {
         return ResponseEntity.ok(response);
     }
 
+    @Operation(summary = "Подсказки по названию товара", description = "Автодополнение для строки поиска каталога")
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductSuggestion>> suggestProducts(
+            @Parameter(description = "Начало или часть названия") @RequestParam String q,
+            @Parameter(description = "Количество подсказок") @RequestParam(defaultValue = "8") int limit) {
+        return ResponseEntity.ok(productService.suggestProducts(q, Math.min(Math.max(limit, 1), 20)));
+    }
+
     @Operation(summary = "Фильтрация товаров")
     @GetMapping("/filter")
     public ResponseEntity<Map<String, Object>> filterProducts(
@@ -131,7 +157,7 @@ public class ProductApiController {
                 Sort.Direction.DESC : Sort.Direction.ASC;
         Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
 
-        Page<Product> products = productService.filterProducts(name, categoryId, brandId,
+        Page<ProductCard> products = productService.filterProducts(name, categoryId, brandId,
                 minPrice, maxPrice, color, sizeFilter, country, audience, tag, pageable);
 
         Map<String, Object> response = new HashMap<>();
@@ -145,17 +171,17 @@ public class ProductApiController {
 
     @Operation(summary = "Получить новинки")
     @GetMapping("/new-arrivals")
-    public ResponseEntity<List<Product>> getNewArrivals(
+    public ResponseEntity<List<ProductCard>> getNewArrivals(
             @Parameter(description = "Лимит товаров") @RequestParam(defaultValue = "8") int limit) {
-        List<Product> newArrivals = productService.getNewArrivals(limit);
+        List<ProductCard> newArrivals = productService.getNewArrivals(limit);
         return ResponseEntity.ok(newArrivals);
     }
 
     @Operation(summary = "Получить товары со скидкой")
     @GetMapping("/sale")
-    public ResponseEntity<List<Product>> getSaleProducts(
+    public ResponseEntity<List<ProductCard>> getSaleProducts(
             @Parameter(description = "Лимит товаров") @RequestParam(defaultValue = "8") int limit) {
-        List<Product> saleProducts = productService.getSaleProducts(limit);
+        List<ProductCard> saleProducts = productService.getSaleProducts(limit);
         return ResponseEntity.ok(saleProducts);
     }
 
@@ -166,7 +192,7 @@ public class ProductApiController {
             @RequestParam(defaultValue = "8") int pageSize) {
 
         Pageable pageable = PageRequest.of(page, pageSize);
-        Page<Product> products = productService.getPopularProducts(pageable);
+        Page<ProductCard> products = productService.getTrendingProducts(pageable);
 
         Map<String, Object> response = new HashMap<>();
         response.put("products", products.getContent());
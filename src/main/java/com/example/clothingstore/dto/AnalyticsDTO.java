@@ -4,6 +4,7 @@ import lombok.Data;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Data
@@ -32,4 +33,30 @@ public class AnalyticsDTO {
     public Long getProductIdByName(String productName) {
         return productIds.getOrDefault(productName, 1L);
     }
+
+    // Копия для вызывающего: закэшированный экземпляр общий, менять его нельзя
+    public AnalyticsDTO copy() {
+        AnalyticsDTO copy = new AnalyticsDTO();
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.totalUsers = totalUsers;
+        copy.totalOrders = totalOrders;
+        copy.totalRevenue = totalRevenue;
+        copy.averageOrderValue = averageOrderValue;
+        copy.conversionRate = conversionRate;
+        copy.userGrowthRate = userGrowthRate;
+        copy.orderGrowthRate = orderGrowthRate;
+        copy.revenueGrowthRate = revenueGrowthRate;
+        copy.ordersByCategory = copyOf(ordersByCategory);
+        copy.revenueByCategory = copyOf(revenueByCategory);
+        copy.topSellingProducts = copyOf(topSellingProducts);
+        copy.dailyOrders = copyOf(dailyOrders);
+        copy.dailyRevenue = copyOf(dailyRevenue);
+        copy.productIds = copyOf(productIds);
+        return copy;
+    }
+
+    private static <V> Map<String, V> copyOf(Map<String, V> map) {
+        return map != null ? new LinkedHashMap<>(map) : null;
+    }
 }
\ No newline at end of file
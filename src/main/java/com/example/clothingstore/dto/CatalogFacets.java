@@ -0,0 +1,22 @@
+package com.example.clothingstore.dto;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Значение фасета -> количество товаров; количество null, если индекс ещё не прогрет
+public record CatalogFacets(
+        Map<String, Integer> colors,
+        Map<String, Integer> sizes,
+        Map<String, Integer> countries
+) {
+    public static CatalogFacets withoutCounts(List<String> colors, List<String> sizes, List<String> countries) {
+        return new CatalogFacets(withoutCounts(colors), withoutCounts(sizes), withoutCounts(countries));
+    }
+
+    private static Map<String, Integer> withoutCounts(List<String> values) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        values.forEach(value -> result.put(value, null));
+        return result;
+    }
+}
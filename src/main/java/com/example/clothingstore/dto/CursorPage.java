@@ -0,0 +1,50 @@
+package com.example.clothingstore.dto;
+
+import com.example.clothingstore.util.KeysetCursor;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+/**
+ * Страница в режиме курсоров: без OFFSET и без COUNT(*). Итог либо точный
+ * (запрошен exactCount), либо оценка из pg_class.reltuples по всей таблице - только
+ * без фильтров, иначе итог неизвестен (total == null) и не показывается.
+ */
+public class CursorPage<T> extends PageImpl<T> {
+
+    private final String nextCursor;
+    private final boolean totalExact;
+    private final boolean totalKnown;
+
+    public CursorPage(Window<T> window, int size, Sort sort, Long total, boolean totalExact) {
+        super(window.getContent(), PageRequest.of(0, size, sort), Math.max(total != null ? total : 0, window.size()));
+        this.nextCursor = window.hasNext() && !window.isEmpty()
+                ? KeysetCursor.encode(window.positionAt(window.size() - 1))
+                : null;
+        this.totalExact = totalExact && total != null;
+        this.totalKnown = total != null;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    public boolean isTotalKnown() {
+        return totalKnown;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.clothingstore.dto;
+
+import java.time.LocalDateTime;
+
+// Строка страницы избранного: сама запись и карточка товара
+public record FavoriteCard(Long id, LocalDateTime createdAt, ProductCard product) {
+}
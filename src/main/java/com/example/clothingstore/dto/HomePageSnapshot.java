@@ -0,0 +1,27 @@
+package com.example.clothingstore.dto;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Неизменяемый набор блоков главной страницы; version растёт при каждой пересборке
+public record HomePageSnapshot(
+        long version,
+        LocalDateTime builtAt,
+        List<SafeProduct> newArrivals,
+        List<SafeProduct> bestSellers,
+        List<SafeProduct> saleProducts
+) {
+    public static HomePageSnapshot empty() {
+        return new HomePageSnapshot(0, LocalDateTime.now(), List.of(), List.of(), List.of());
+    }
+
+    public Set<Long> productIds() {
+        Set<Long> ids = new HashSet<>();
+        newArrivals.forEach(product -> ids.add(product.getId()));
+        bestSellers.forEach(product -> ids.add(product.getId()));
+        saleProducts.forEach(product -> ids.add(product.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.clothingstore.dto;
+
+import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.ProductTagsConverter;
+import com.example.clothingstore.model.TargetAudience;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Плоская карточка товара для списков: читается одним запросом с конструктором, без
+ * загрузки сущности, её картинок, цветов, тегов и прокси бренда/категории.
+ * Теги - битовая маска из products.tag_mask (см. ProductTagsConverter).
+ */
+public record ProductCard(
+        Long id,
+        String name,
+        BigDecimal price,
+        BigDecimal originalPrice,
+        BigDecimal discountPercent,
+        String mainImage,
+        String brandName,
+        Long categoryId,
+        String categoryName,
+        String countryOfOrigin,
+        TargetAudience targetAudience,
+        Double rating,
+        Integer stockQuantity,
+        String sizes,
+        String defaultColor,
+        int tagMask
+) {
+    public ProductCard {
+        discountPercent = discountPercent != null ? discountPercent : BigDecimal.ZERO;
+    }
+
+    public Set<ProductTag> tags() {
+        return ProductTagsConverter.tagsOf(tagMask);
+    }
+
+    public boolean hasTag(ProductTag tag) {
+        return (tagMask & ProductTagsConverter.maskOf(tag)) != 0;
+    }
+
+    public boolean isOnSale() {
+        return originalPrice != null && price != null
+                && originalPrice.compareTo(BigDecimal.ZERO) > 0 && originalPrice.compareTo(price) > 0;
+    }
+
+    public boolean isInStock() {
+        return stockQuantity != null && stockQuantity > 0;
+    }
+}
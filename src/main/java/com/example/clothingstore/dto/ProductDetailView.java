@@ -0,0 +1,63 @@
+package com.example.clothingstore.dto;
+
+import com.example.clothingstore.model.Brand;
+import com.example.clothingstore.model.Category;
+import com.example.clothingstore.model.Product;
+import com.example.clothingstore.model.ProductImage;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Общая для всех пользователей часть страницы товара, собранная из сущностей один раз.
+ * Имена свойств совпадают с Product, поэтому шаблон products/detail работает без изменений.
+ */
+public record ProductDetailView(
+        Item product,
+        List<String> additionalImages,
+        List<ProductCard> relatedProducts
+) {
+    public static ProductDetailView of(Product product, List<ProductCard> related) {
+        List<String> images = product.getImages() == null ? List.of() : product.getImages().stream()
+                .map(ProductImage::getImageUrl)
+                .filter(url -> url != null && !url.trim().isEmpty())
+                .toList();
+        return new ProductDetailView(Item.of(product), images, List.copyOf(related));
+    }
+
+    // Страница зависит от одного из этих товаров - сам товар или его похожие
+    public boolean mentionsAny(Set<Long> productIds) {
+        return productIds.contains(product.id())
+                || relatedProducts.stream().anyMatch(card -> productIds.contains(card.id()));
+    }
+
+    public record Item(Long id, String name, String description, BigDecimal price, BigDecimal originalPrice,
+                       boolean onSale, Integer stockQuantity, String sizes, Integer views, String mainImage,
+                       Ref brand, Ref category, List<Color> colors) {
+        static Item of(Product product) {
+            List<Color> colors = product.getColors() == null ? List.of() : product.getColors().stream()
+                    .filter(Objects::nonNull)
+                    .map(color -> new Color(color.getName(), color.getHexCode()))
+                    .toList();
+            return new Item(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                    product.getOriginalPrice(), product.isOnSale(), product.getStockQuantity(), product.getSizes(),
+                    product.getViews(), product.getMainImage(), Ref.of(product.getBrand()),
+                    Ref.of(product.getCategory()), colors);
+        }
+    }
+
+    public record Ref(Long id, String name) {
+        static Ref of(Brand brand) {
+            return brand != null ? new Ref(brand.getId(), brand.getName()) : null;
+        }
+
+        static Ref of(Category category) {
+            return category != null ? new Ref(category.getId(), category.getName()) : null;
+        }
+    }
+
+    public record Color(String name, String hexCode) {
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.clothingstore.dto;
+
+import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.TargetAudience;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+public record ProductFilter(
+        String search,
+        Long categoryId,
+        Long brandId,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        String color,
+        String size,
+        String country,
+        TargetAudience audience,
+        ProductTag tag
+) {
+    public static ProductFilter empty() {
+        return new ProductFilter(null, null, null, null, null, null, null, null, null, null);
+    }
+
+    // Приводит фильтр к каноничному виду: пустые строки -> null, строки в нижнем регистре
+    public ProductFilter normalized() {
+        return new ProductFilter(
+                normalize(search),
+                categoryId,
+                brandId,
+                minPrice != null ? minPrice.stripTrailingZeros() : null,
+                maxPrice != null ? maxPrice.stripTrailingZeros() : null,
+                normalize(color),
+                normalize(size),
+                normalize(country),
+                audience,
+                tag
+        );
+    }
+
+    public boolean isEmpty() {
+        return search == null && categoryId == null && brandId == null && minPrice == null &&
+                maxPrice == null && color == null && size == null && country == null &&
+                audience == null && tag == null;
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.clothingstore.dto;
+
+public record ProductSuggestion(Long id, String name) {
+}
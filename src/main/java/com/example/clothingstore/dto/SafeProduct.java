@@ -0,0 +1,53 @@
+package com.example.clothingstore.dto;
+
+
+// Карточка товара для главной страницы: только готовые к выводу строки, без ленивых связей
+public class SafeProduct {
+    private Long id;
+    private String name;
+    private String brandName;
+    private String price;
+    private String imageUrl;
+    private boolean hasImage;
+    private boolean onSale;
+    private String originalPrice;
+    private String discountPercent;
+
+    public SafeProduct(ProductCard product) {
+        this.id = product.id();
+        this.name = safeString(product.name(), "Товар");
+        this.brandName = safeString(product.brandName(), "Бренд");
+
+        if (product.price() != null) {
+            this.price = "₽" + String.format("%,.0f", product.price().doubleValue());
+        } else {
+            this.price = "₽0";
+        }
+
+        this.onSale = product.isOnSale();
+        if (this.onSale && product.originalPrice() != null) {
+            this.originalPrice = "₽" + String.format("%,.0f", product.originalPrice().doubleValue());
+            this.discountPercent = "-" + product.discountPercent().intValue() + "%";
+        } else {
+            this.originalPrice = "";
+            this.discountPercent = "";
+        }
+        String mainImage = product.mainImage();
+        this.hasImage = mainImage != null && !mainImage.trim().isEmpty();
+        this.imageUrl = this.hasImage ? mainImage : "";
+    }
+
+    private String safeString(String value, String defaultValue) {
+        return value != null && !value.trim().isEmpty() ? value : defaultValue;
+    }
+
+    public Long getId() { return id; }
+    public String getName() { return name; }
+    public String getBrandName() { return brandName; }
+    public String getPrice() { return price; }
+    public String getImageUrl() { return imageUrl; }
+    public boolean isHasImage() { return hasImage; }
+    public boolean isOnSale() { return onSale; }
+    public String getOriginalPrice() { return originalPrice; }
+    public String getDiscountPercent() { return discountPercent; }
+}
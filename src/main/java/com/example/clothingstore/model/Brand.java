@@ -4,11 +4,15 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Where;
 import org.hibernate.envers.Audited;
 
 @Entity
 @Table(name = "brands")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "brands")
 @Audited
 public class Brand {
     @Id
@@ -22,7 +22,7 @@ public class Order {
     private Long id;
 
     @NotBlank(message = "Номер заказа обязателен")
-    @Column(unique = true)
+    @Column(unique = true, nullable = false)
     private String orderNumber;
 
     private String shippingAddress;
@@ -44,6 +44,7 @@ public class Order {
     @Enumerated(EnumType.STRING)
     private OrderStatus status = OrderStatus.PENDING;
 
+    @Column(nullable = false)
     private LocalDateTime orderDate = LocalDateTime.now();
     private BigDecimal totalAmount;
     private boolean deleted = false;
@@ -3,15 +3,23 @@ package com.example.clothingstore.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Where;
 import org.hibernate.envers.Audited;
+import org.hibernate.envers.NotAudited;
+import org.hibernate.type.SqlTypes;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 @Entity
@@ -24,6 +32,7 @@ public class Product {
 
     @NotBlank(message = "Название товара обязательно")
     @Size(min = 2, max = 200, message = "Название должно быть от 2 до 200 символов")
+    @Column(nullable = false)
     private String name;
 
     @Size(max = 1000, message = "Описание не должно превышать 1000 символов")
@@ -37,12 +46,23 @@ public class Product {
 
     private String sizes;
 
+    // Нормализованные размеры (trim, верхний регистр, без повторов) для точного фильтра по GIN-индексу
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "size_list", columnDefinition = "text[]")
+    private String[] sizeList;
+
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<ProductImage> images = new ArrayList<>();
 
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product-color-lists")
     private List<ProductColor> colors = new ArrayList<>();
 
+    // Названия цветов в нижнем регистре для фильтра по GIN-индексу, без соединения с product_colors
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "color_names", columnDefinition = "text[]")
+    private String[] colorNames;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id")
     @NotNull(message = "Категория обязательна")
@@ -55,11 +75,15 @@ public class Product {
 
     private boolean deleted = false;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @Enumerated(EnumType.STRING)
-    @CollectionTable(name = "product_tags", joinColumns = @JoinColumn(name = "product_id"))
-    @Column(name = "tag")
-    private Set<ProductTag> tags = new HashSet<>();
+    // Теги битовой маской в строке товара: без таблицы product_tags и лишнего select на каждый товар
+    @Convert(converter = ProductTagsConverter.class)
+    @Column(name = "tag_mask", nullable = false, columnDefinition = "integer not null default 0")
+    private Set<ProductTag> tags = EnumSet.noneOf(ProductTag.class);
+
+    // Та же колонка числом - для побитовых условий в запросах: bitand(p.tagMask, :mask) <> 0
+    @NotAudited
+    @Column(name = "tag_mask", insertable = false, updatable = false, columnDefinition = "integer not null default 0")
+    private int tagMask;
 
     @Enumerated(EnumType.STRING)
     @Column(name = "target_audience")
@@ -71,8 +95,15 @@ public class Product {
     @Column(name = "original_price")
     private BigDecimal originalPrice;
 
+    // Скидка пересчитывается при каждой записи, чтобы распродажа шла по индексу, а не по выражению
+    @Column(name = "discount_amount", precision = 12, scale = 2)
+    private BigDecimal discountAmount = BigDecimal.ZERO;
+
+    @Column(name = "discount_percent", precision = 5, scale = 2)
+    private BigDecimal discountPercent = BigDecimal.ZERO;
+
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false)
+    @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
     private Integer views = 0;
@@ -114,13 +145,21 @@ public class Product {
     public void setDescription(String description) { this.description = description; }
 
     public BigDecimal getPrice() { return price; }
-    public void setPrice(BigDecimal price) { this.price = price; }
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+        syncDiscount();
+    }
 
     public Integer getStockQuantity() { return stockQuantity; }
     public void setStockQuantity(Integer stockQuantity) { this.stockQuantity = stockQuantity; }
 
     public String getSizes() { return sizes; }
-    public void setSizes(String sizes) { this.sizes = sizes; }
+    public void setSizes(String sizes) {
+        this.sizes = sizes;
+        this.sizeList = parseSizes(sizes);
+    }
+
+    public String[] getSizeList() { return sizeList; }
 
     public List<ProductImage> getImages() { return images; }
     public void setImages(List<ProductImage> images) { this.images = images; }
@@ -147,7 +186,10 @@ public class Product {
     public void setCountryOfOrigin(String countryOfOrigin) { this.countryOfOrigin = countryOfOrigin; }
 
     public BigDecimal getOriginalPrice() { return originalPrice; }
-    public void setOriginalPrice(BigDecimal originalPrice) { this.originalPrice = originalPrice; }
+    public void setOriginalPrice(BigDecimal originalPrice) {
+        this.originalPrice = originalPrice;
+        syncDiscount();
+    }
 
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
@@ -168,19 +210,54 @@ public class Product {
     }
 
     public BigDecimal getDiscountPercent() {
-        if (isOnSale()) {
-            BigDecimal discount = originalPrice.subtract(price);
-            return discount.divide(originalPrice, 2, RoundingMode.HALF_UP)
-                    .multiply(BigDecimal.valueOf(100));
-        }
-        return BigDecimal.ZERO;
+        return discountPercent != null ? discountPercent : BigDecimal.ZERO;
     }
 
     public BigDecimal getDiscountAmount() {
+        return discountAmount != null ? discountAmount : BigDecimal.ZERO;
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void syncDerivedColumns() {
+        sizeList = parseSizes(sizes);
+        // Незагруженные цвета не трогаем: значит, они и не менялись
+        if (Hibernate.isInitialized(colors)) {
+            syncColorNames();
+        }
+        syncDiscount();
+    }
+
+    private void syncColorNames() {
+        Set<String> names = new LinkedHashSet<>();
+        if (colors != null) {
+            for (ProductColor color : colors) {
+                String name = color != null ? normalizeColor(color.getName()) : null;
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+        }
+        colorNames = names.toArray(new String[0]);
+    }
+
+    public static String normalizeColor(String color) {
+        if (color == null || color.isBlank()) {
+            return null;
+        }
+        return color.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void syncDiscount() {
         if (isOnSale()) {
-            return originalPrice.subtract(price);
+            BigDecimal discount = originalPrice.subtract(price);
+            discountAmount = discount;
+            discountPercent = discount.divide(originalPrice, 2, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100));
+        } else {
+            discountAmount = BigDecimal.ZERO;
+            discountPercent = BigDecimal.ZERO;
         }
-        return BigDecimal.ZERO;
     }
 
     public boolean isInStock() {
@@ -191,6 +268,7 @@ public class Product {
         return stockQuantity != null && stockQuantity > 0 && stockQuantity <= 5;
     }
 
+    // Размеры как их ввели для показа; нормализованные - только в size_list для фильтра
     public List<String> getAvailableSizes() {
         if (sizes == null || sizes.isEmpty()) {
             return new ArrayList<>();
@@ -203,6 +281,27 @@ public class Product {
         return sizeList;
     }
 
+    private static String[] parseSizes(String sizes) {
+        if (sizes == null || sizes.isBlank()) {
+            return new String[0];
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String size : sizes.split(",")) {
+            String normalized = normalizeSize(size);
+            if (normalized != null) {
+                result.add(normalized);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    public static String normalizeSize(String size) {
+        if (size == null || size.isBlank()) {
+            return null;
+        }
+        return size.trim().replaceAll("\\s+", "").toUpperCase(Locale.ROOT);
+    }
+
     public List<String> getAvailableColorNames() {
         if (colors == null || colors.isEmpty()) {
             return new ArrayList<>();
@@ -220,7 +319,7 @@ public class Product {
 
     public void addTag(ProductTag tag) {
         if (this.tags == null) {
-            this.tags = new HashSet<>();
+            this.tags = EnumSet.noneOf(ProductTag.class);
         }
         this.tags.add(tag);
     }
@@ -256,6 +355,7 @@ public class Product {
         }
         color.setProduct(this);
         this.colors.add(color);
+        syncColorNames();
     }
 
     public void incrementViews() {
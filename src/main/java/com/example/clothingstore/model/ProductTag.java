@@ -1,5 +1,6 @@
 package com.example.clothingstore.model;
 
+// Порядок значений хранится в products.tag_mask (см. ProductTagsConverter): новые теги только в конец
 public enum ProductTag {
     SALE,
     NEW_ARRIVAL,
@@ -0,0 +1,48 @@
+package com.example.clothingstore.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Теги товара одним числом: бит с номером ordinal() ProductTag. Порядок значений
+ * ProductTag поэтому часть формата хранения - новые теги добавляются только в конец.
+ */
+@Converter
+public class ProductTagsConverter implements AttributeConverter<Set<ProductTag>, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<ProductTag> tags) {
+        return tags != null ? maskOf(tags) : 0;
+    }
+
+    @Override
+    public Set<ProductTag> convertToEntityAttribute(Integer mask) {
+        return tagsOf(mask != null ? mask : 0);
+    }
+
+    public static int maskOf(ProductTag tag) {
+        return 1 << tag.ordinal();
+    }
+
+    public static int maskOf(Collection<ProductTag> tags) {
+        int mask = 0;
+        for (ProductTag tag : tags) {
+            mask |= maskOf(tag);
+        }
+        return mask;
+    }
+
+    public static Set<ProductTag> tagsOf(int mask) {
+        Set<ProductTag> tags = EnumSet.noneOf(ProductTag.class);
+        for (ProductTag tag : ProductTag.values()) {
+            if ((mask & maskOf(tag)) != 0) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+}
@@ -5,7 +5,10 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.envers.Audited;
+import org.hibernate.envers.NotAudited;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -57,6 +60,7 @@ public class User {
     private String city;
     private String postalCode;
 
+    @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
     private LocalDateTime lastActivity;
 
@@ -89,6 +93,12 @@ public class User {
     @Column(name = "saved_filters", columnDefinition = "TEXT")
     private String savedFilters;
 
+    // Пишет только RecentlyViewedService пачками через JDBC; JPA колонку не перезаписывает
+    @NotAudited
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "recently_viewed", columnDefinition = "bigint[]", insertable = false, updatable = false)
+    private Long[] recentlyViewed;
+
     public String getTheme() { return theme; }
     public void setTheme(String theme) { this.theme = theme; }
 
@@ -103,6 +113,8 @@ public class User {
 
     public String getSavedFilters() { return savedFilters; }
     public void setSavedFilters(String savedFilters) { this.savedFilters = savedFilters; }
+
+    public Long[] getRecentlyViewed() { return recentlyViewed; }
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
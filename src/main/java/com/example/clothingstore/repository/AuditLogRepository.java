@@ -4,6 +4,7 @@ import com.example.clothingstore.model.AuditLog;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -12,7 +13,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
+public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, JpaSpecificationExecutor<AuditLog> {
 
     Page<AuditLog> findByEntityTypeOrderByCreatedAtDesc(String entityType, Pageable pageable);
 
@@ -42,4 +43,7 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
                                    @Param("username") String username,
                                    Pageable pageable);
 
-}
\ No newline at end of file
+    // Оценка числа строк по статистике планировщика, без COUNT(*)
+    @Query(value = "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'audit_logs'::regclass", nativeQuery = true)
+    long estimateRowCount();
+}
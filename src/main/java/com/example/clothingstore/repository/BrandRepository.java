@@ -3,7 +3,10 @@ package com.example.clothingstore.repository;
 import com.example.clothingstore.model.Brand;
 import org.springframework.data.domain.Page;
 import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Pageable;
 import java.util.List;
@@ -11,6 +14,11 @@ import java.util.Optional;
 
 public interface BrandRepository extends JpaRepository<Brand, Long> {
 
+    // Списки для каталога и форм: кэш запросов, сами сущности берутся из кэша второго уровня
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-data")
+    })
     List<Brand> findByDeletedFalse();
 
     boolean existsByNameAndDeletedFalse(String name);
@@ -3,13 +3,21 @@ package com.example.clothingstore.repository;
 import com.example.clothingstore.model.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Pageable;
 import java.util.List;
 import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+    // Списки для каталога и форм: кэш запросов, сами сущности берутся из кэша второго уровня
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "reference-data")
+    })
     List<Category> findByDeletedFalse();
     Optional<Category> findByNameAndDeletedFalse(String name);
 
@@ -27,6 +27,10 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
     @Query("SELECT f.product.id FROM Favorite f WHERE f.user = :user")
     List<Long> findProductIdsByUser(@Param("user") User user);
 
+    // id, id товара, дата добавления - для страницы избранного без загрузки сущностей
+    @Query("SELECT f.id, f.product.id, f.createdAt FROM Favorite f WHERE f.user = :user ORDER BY f.createdAt DESC")
+    List<Object[]> findRowsByUser(@Param("user") User user);
+
     boolean existsByUserAndProductId(User user, Long productId);
     @Modifying
     @Query("DELETE FROM Favorite f WHERE f.user = :user")
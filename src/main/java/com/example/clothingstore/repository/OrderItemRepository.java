@@ -32,4 +32,15 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
             "ORDER BY SUM(oi.quantity * oi.unitPrice) DESC")
     List<Object[]> getRevenueByCategory(@Param("start") LocalDateTime start,
                                         @Param("end") LocalDateTime end);
-}
\ No newline at end of file
+
+    // Пары (заказ, товар) для матрицы совместных покупок: и позиции заказа, и связь order_products
+    @Query(value = "SELECT x.order_id, x.product_id FROM (" +
+            "SELECT order_id, product_id FROM order_items UNION SELECT order_id, product_id FROM order_products) x " +
+            "JOIN orders o ON o.id = x.order_id WHERE o.deleted = false", nativeQuery = true)
+    List<Object[]> findBasketRows();
+
+    @Query("SELECT oi.product.id, o.orderDate, oi.quantity FROM OrderItem oi " +
+            "JOIN oi.order o " +
+            "WHERE o.orderDate >= :since AND o.deleted = false")
+    List<Object[]> findPurchaseRowsSince(@Param("since") LocalDateTime since);
+}
@@ -5,6 +5,7 @@ import com.example.clothingstore.model.OrderStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -14,7 +15,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
 
     Page<Order> findAllByDeletedFalse(Pageable pageable);
 
@@ -129,4 +130,7 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.user LEFT JOIN FETCH o.products WHERE o.deleted = false AND o.status = :status")
     List<Order> findByStatusWithDetails(@Param("status") OrderStatus status);
 
-}
\ No newline at end of file
+    // Оценка числа строк по статистике планировщика, без COUNT(*)
+    @Query(value = "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'orders'::regclass", nativeQuery = true)
+    long estimateRowCount();
+}
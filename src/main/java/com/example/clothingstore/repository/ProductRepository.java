@@ -1,64 +1,95 @@
 package com.example.clothingstore.repository;
 
+import com.example.clothingstore.dto.ProductCard;
 import com.example.clothingstore.model.Category;
 import com.example.clothingstore.model.Product;
-import com.example.clothingstore.model.ProductTag;
 import com.example.clothingstore.model.TargetAudience;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
+
+    // Карточка для списков: главная картинка (иначе первая) и первый цвет - подзапросами, без загрузки коллекций
+    String CARD_SELECT = "SELECT new com.example.clothingstore.dto.ProductCard(p.id, p.name, p.price, p.originalPrice, " +
+            "p.discountPercent, COALESCE(" +
+            "(SELECT i.imageUrl FROM ProductImage i WHERE i.id = " +
+            "(SELECT MIN(i2.id) FROM ProductImage i2 WHERE i2.product = p AND i2.isMain = true)), " +
+            "(SELECT i.imageUrl FROM ProductImage i WHERE i.id = (SELECT MIN(i2.id) FROM ProductImage i2 WHERE i2.product = p)), " +
+            "''), b.name, c.id, c.name, p.countryOfOrigin, p.targetAudience, p.rating, p.stockQuantity, p.sizes, " +
+            "(SELECT pc.name FROM ProductColor pc WHERE pc.id = (SELECT MIN(pc2.id) FROM ProductColor pc2 WHERE pc2.product = p)), " +
+            "p.tagMask) " +
+            "FROM Product p LEFT JOIN p.brand b LEFT JOIN p.category c ";
+
+    @Query(CARD_SELECT + "WHERE p.id IN :ids AND p.deleted = false")
+    List<ProductCard> findCardsByIds(@Param("ids") Collection<Long> ids);
+
+    // Для избранного: там остаются и снятые с продажи товары
+    @Query(CARD_SELECT + "WHERE p.id IN :ids")
+    List<ProductCard> findCardsByIdsIncludingDeleted(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false")
+    Page<Long> findActiveIds(Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))")
+    Page<Long> findIdsByNameContaining(@Param("name") String name, Pageable pageable);
+
+    // mask - ProductTagsConverter.maskOf(...): товар с любым из тегов маски
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND bitand(p.tagMask, :mask) <> 0")
+    Page<Long> findIdsByTagMask(@Param("mask") int mask, Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.targetAudience = :audience")
+    Page<Long> findIdsByTargetAudience(@Param("audience") TargetAudience audience, Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.discountPercent > 0 ORDER BY p.discountPercent DESC, p.id DESC")
+    Page<Long> findSaleProductIds(Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false ORDER BY p.views DESC, p.rating DESC")
+    Page<Long> findPopularProductIds(Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.category.id = :categoryId AND p.id <> :excludeId")
+    List<Long> findIdsByCategoryIdAndIdNot(@Param("categoryId") Long categoryId, @Param("excludeId") Long excludeId,
+                                           Pageable pageable);
+
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.brand.id = :brandId " +
+            "AND p.category.id = :categoryId AND p.id <> :excludeId")
+    List<Long> findIdsByBrandIdAndCategoryIdAndIdNot(@Param("brandId") Long brandId, @Param("categoryId") Long categoryId,
+                                                     @Param("excludeId") Long excludeId, Pageable pageable);
+
+    @Query("SELECT p.category.id, p.brand.id FROM Product p WHERE p.id = :id")
+    List<Object[]> findCategoryAndBrandIds(@Param("id") Long id);
 
     List<Product> findTop4ByCategoryAndIdNot(Category category, Long id);
     Page<Product> findAllByDeletedFalse(Pageable pageable);
     Page<Product> findByNameContainingIgnoreCaseAndDeletedFalse(String name, Pageable pageable);
-    Page<Product> findByCategoryIdAndDeletedFalse(Long categoryId, Pageable pageable);
-    Page<Product> findByBrandIdAndDeletedFalse(Long brandId, Pageable pageable);
-    List<Product> findByDeletedFalse();
-
-    @Query("SELECT p FROM Product p WHERE p.deleted = false " +
-            "AND (:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))) " +
-            "AND (:categoryId IS NULL OR p.category.id = :categoryId) " +
-            "AND (:brandId IS NULL OR p.brand.id = :brandId) " +
-            "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
-            "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
-            "AND (:size IS NULL OR p.sizes LIKE CONCAT('%', :size, '%')) " +
-            "AND (:country IS NULL OR LOWER(p.countryOfOrigin) LIKE LOWER(CONCAT('%', :country, '%'))) " +
-            "AND (:audience IS NULL OR p.targetAudience = :audience) " +
-            "AND (:tag IS NULL OR :tag MEMBER OF p.tags) " +
-            "AND (:color IS NULL OR EXISTS (SELECT 1 FROM p.colors c WHERE LOWER(c.name) LIKE LOWER(CONCAT('%', :color, '%'))))")
-    Page<Product> findByFiltersAlternative(@Param("name") String name,
-                                           @Param("categoryId") Long categoryId,
-                                           @Param("brandId") Long brandId,
-                                           @Param("minPrice") BigDecimal minPrice,
-                                           @Param("maxPrice") BigDecimal maxPrice,
-                                           @Param("color") String color,
-                                           @Param("size") String size,
-                                           @Param("country") String country,
-                                           @Param("audience") TargetAudience audience,
-                                           @Param("tag") ProductTag tag,
-                                           Pageable pageable);
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.category.id = :categoryId")
+    Page<Long> findIdsByCategoryId(@Param("categoryId") Long categoryId, Pageable pageable);
 
-    Page<Product> findByTagsContainingAndDeletedFalse(ProductTag tag, Pageable pageable);
-    Page<Product> findByTagsContainingAndDeletedFalseOrderByCreatedAtDesc(ProductTag tag, Pageable pageable);
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.brand.id = :brandId")
+    Page<Long> findIdsByBrandId(@Param("brandId") Long brandId, Pageable pageable);
+    List<Product> findByDeletedFalse();
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND :tag MEMBER OF p.tags ORDER BY p.createdAt DESC")
-    List<Product> findByTagOrderByCreatedAtDesc(@Param("tag") ProductTag tag, Pageable pageable);
+    @Query("SELECT p FROM Product p WHERE p.deleted = false AND bitand(p.tagMask, :mask) <> 0 ORDER BY p.createdAt DESC")
+    List<Product> findByTagMaskOrderByCreatedAtDesc(@Param("mask") int mask, Pageable pageable);
 
     Page<Product> findByTargetAudienceAndDeletedFalse(TargetAudience audience, Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.originalPrice IS NOT NULL AND p.originalPrice > p.price")
-    Page<Product> findDiscountedProducts(Pageable pageable);
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.discountPercent > 0")
+    Page<Long> findDiscountedProductIds(Pageable pageable);
+
+    @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.discountPercent > 0 ORDER BY p.discountPercent DESC, p.id DESC")
+    Page<Product> findSaleProducts(Pageable pageable);
 
     @Query("SELECT DISTINCT c.name FROM Product p JOIN p.colors c WHERE p.deleted = false ORDER BY c.name")
     List<String> findDistinctColors();
@@ -67,15 +98,15 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<String> findDistinctCountries();
 
     @Query(value = """
-    SELECT DISTINCT TRIM(UNNEST(STRING_TO_ARRAY(p.sizes, ','))) as size 
-    FROM products p 
-    WHERE p.deleted = false AND p.sizes IS NOT NULL AND p.sizes != '' 
+    SELECT DISTINCT UNNEST(p.size_list) as size
+    FROM products p
+    WHERE p.deleted = false AND p.size_list IS NOT NULL
     ORDER BY size
     """, nativeQuery = true)
     List<String> findDistinctSizes();
 
     @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.originalPrice IS NOT NULL " +
-            "AND ((p.originalPrice - p.price) / p.originalPrice * 100) BETWEEN :minDiscount AND :maxDiscount")
+            "AND p.discountPercent BETWEEN :minDiscount AND :maxDiscount")
     Page<Product> findByDiscountRange(@Param("minDiscount") BigDecimal minDiscount,
                                       @Param("maxDiscount") BigDecimal maxDiscount,
                                       Pageable pageable);
@@ -84,40 +115,39 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     Page<Product> findByStockQuantityGreaterThanAndDeletedFalse(Integer minStock, Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false ORDER BY p.views DESC, p.rating DESC")
-    Page<Product> findPopularProducts(Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND " +
-            "EXISTS (SELECT 1 FROM p.tags t WHERE t IN :tags)")
-    Page<Product> findByMultipleTags(@Param("tags") List<ProductTag> tags, Pageable pageable);
 
     @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.createdAt BETWEEN :startDate AND :endDate")
     Page<Product> findByCreatedAtBetween(@Param("startDate") java.time.LocalDateTime startDate,
                                          @Param("endDate") java.time.LocalDateTime endDate,
                                          Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.originalPrice IS NOT NULL " +
-            "ORDER BY (p.originalPrice - p.price) DESC")
+    @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.discountAmount > 0 " +
+            "ORDER BY p.discountAmount DESC, p.id DESC")
     Page<Product> findTopDiscountedProducts(Pageable pageable);
 
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND p.discountAmount > 0 " +
+            "ORDER BY p.discountAmount DESC, p.id DESC")
+    Page<Long> findTopDiscountedProductIds(Pageable pageable);
+
     @Query("SELECT p FROM Product p WHERE p.deleted = false AND p.rating >= :minRating")
     Page<Product> findByRatingGreaterThanEqual(@Param("minRating") Double minRating, Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND " +
-            "EXISTS (SELECT 1 FROM p.colors c WHERE LOWER(c.name) = LOWER(:colorName))")
-    Page<Product> findByColorName(@Param("colorName") String colorName, Pageable pageable);
+    // color_names @> ARRAY[:colorName], имя в нижнем регистре (Product.normalizeColor)
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND array_contains(p.colorNames, :colorName)")
+    Page<Long> findIdsByColorName(@Param("colorName") String colorName, Pageable pageable);
 
-    @Query("SELECT p FROM Product p WHERE p.deleted = false AND " +
-            "EXISTS (SELECT 1 FROM p.colors c WHERE c.name IN :colorNames)")
-    Page<Product> findByColorNames(@Param("colorNames") List<String> colorNames, Pageable pageable);
+    // color_names && :colorNames - товар хотя бы одного из цветов
+    @Query("SELECT p.id FROM Product p WHERE p.deleted = false AND array_overlaps(p.colorNames, :colorNames)")
+    Page<Long> findIdsByColorNames(@Param("colorNames") String[] colorNames, Pageable pageable);
 
     @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = false")
     Long countActiveProducts();
 
-    @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = false AND p.tags IS NOT EMPTY")
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = false AND p.tagMask <> 0")
     Long countProductsWithTags();
 
-    @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = false AND p.originalPrice IS NOT NULL AND p.originalPrice > p.price")
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = false AND p.discountPercent > 0")
     Long countDiscountedProducts();
 
     @Query("SELECT p FROM Product p WHERE p.deleted = false ORDER BY p.views DESC")
@@ -128,6 +158,46 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     @Query("SELECT p FROM Product p WHERE p.id IN :ids AND p.deleted = false")
     List<Product> findByIdInAndDeletedFalse(@Param("ids") List<Long> ids);
+
+    @Query("SELECT p.id, p.category.id, p.brand.id, p.targetAudience, p.price, p.sizeList, p.name, " +
+            "p.countryOfOrigin, p.createdAt, p.views, p.rating, p.tagMask FROM Product p WHERE p.deleted = false")
+    List<Object[]> findFilterRows();
+
+    @Query("SELECT p.id, p.category.id, p.brand.id, p.targetAudience, p.price, p.sizeList, p.name, " +
+            "p.countryOfOrigin, p.createdAt, p.views, p.rating, p.tagMask FROM Product p " +
+            "WHERE p.deleted = false AND p.id IN :ids")
+    List<Object[]> findFilterRowsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT c.product.id, c.name FROM ProductColor c WHERE c.product.deleted = false")
+    List<Object[]> findColorRows();
+
+    @Query("SELECT c.product.id, c.name FROM ProductColor c WHERE c.product.deleted = false AND c.product.id IN :ids")
+    List<Object[]> findColorRowsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id, p.name, p.views FROM Product p WHERE p.deleted = false ORDER BY p.views DESC NULLS LAST, p.id")
+    List<Object[]> findSuggestRows();
+
+    @Query("SELECT p.id, p.name, p.views FROM Product p WHERE p.deleted = false AND p.id IN :ids")
+    List<Object[]> findSuggestRowsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id, p.name, p.description, b.name, c.name FROM Product p " +
+            "LEFT JOIN p.brand b LEFT JOIN p.category c WHERE p.deleted = false")
+    List<Object[]> findSearchRows();
+
+    @Query("SELECT p.id, p.name, p.description, b.name, c.name FROM Product p " +
+            "LEFT JOIN p.brand b LEFT JOIN p.category c WHERE p.deleted = false AND p.id IN :ids")
+    List<Object[]> findSearchRowsByIds(@Param("ids") Collection<Long> ids);
+
+    // Товары из списка, которые могут попасть в блоки главной: помеченные тегом или со скидкой
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.id IN :ids AND " +
+            "(p.discountPercent > 0 OR bitand(p.tagMask, :tagMask) <> 0)")
+    long countHomeSectionCandidates(@Param("ids") Collection<Long> ids, @Param("tagMask") int tagMask);
+
+    @Query("SELECT p.id FROM Product p WHERE p.brand.id = :brandId")
+    List<Long> findIdsByBrandId(@Param("brandId") Long brandId);
+
+    @Query("SELECT p.id FROM Product p WHERE p.category.id = :categoryId")
+    List<Long> findIdsByCategoryId(@Param("categoryId") Long categoryId);
     @Query("SELECT p FROM Product p WHERE p.id = :id")
     Optional<Product> findByIdIgnoreDeleted(@Param("id") Long id);
     @Modifying
@@ -139,55 +209,10 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     long countByDeletedFalse();
     long countByDeletedTrue();
 
-    @Query("SELECT p FROM Product p WHERE " +
-            "(:search IS NULL OR LOWER(CAST(p.name AS string)) LIKE LOWER(CONCAT('%', CAST(:search AS string), '%'))) AND " +
-            "(:categoryId IS NULL OR p.category.id = :categoryId) AND " +
-            "(:brandId IS NULL OR p.brand.id = :brandId) AND " +
-            "(:minPrice IS NULL OR p.price >= :minPrice) AND " +
-            "(:maxPrice IS NULL OR p.price <= :maxPrice) AND " +
-            "p.deleted = false")
-    Page<Product> findByFiltersForExport(@Param("search") String search,
-                                         @Param("categoryId") Long categoryId,
-                                         @Param("brandId") Long brandId,
-                                         @Param("minPrice") BigDecimal minPrice,
-                                         @Param("maxPrice") BigDecimal maxPrice,
-                                         Pageable pageable);
     Page<Product> findByDeletedFalse(Pageable pageable);
     List<Product> findByNameContainingIgnoreCaseAndDeletedFalse(String name);
-    @Query("SELECT p FROM Product p WHERE " +
-            "(:search IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :search, '%'))) AND " +
-            "(:categoryId IS NULL OR p.category.id = :categoryId) AND " +
-            "(:brandId IS NULL OR p.brand.id = :brandId) AND " +
-            "(:minPrice IS NULL OR p.price >= :minPrice) AND " +
-            "(:maxPrice IS NULL OR p.price <= :maxPrice) AND " +
-            "p.deleted = false")
-    List<Product> findBySimpleFilters(@Param("search") String search,
-                                      @Param("categoryId") Long categoryId,
-                                      @Param("brandId") Long brandId,
-                                      @Param("minPrice") BigDecimal minPrice,
-                                      @Param("maxPrice") BigDecimal maxPrice);
-    @Query("SELECT p FROM Product p WHERE " +
-            "p.deleted = false AND " +
-            "(:search IS NULL OR LOWER(CAST(p.name AS text)) LIKE LOWER(CONCAT('%', CAST(:search AS text), '%'))) AND " +
-            "(:categoryId IS NULL OR p.category.id = :categoryId) AND " +
-            "(:brandId IS NULL OR p.brand.id = :brandId) AND " +
-            "(:minPrice IS NULL OR p.price >= :minPrice) AND " +
-            "(:maxPrice IS NULL OR p.price <= :maxPrice) AND " +
-            "(:color IS NULL OR EXISTS (SELECT 1 FROM p.colors c WHERE LOWER(CAST(c.name AS text)) LIKE LOWER(CONCAT('%', CAST(:color AS text), '%')))) AND " +
-            "(:size IS NULL OR p.sizes LIKE CONCAT('%', CAST(:size AS text), '%')) AND " +
-            "(:country IS NULL OR LOWER(CAST(p.countryOfOrigin AS text)) LIKE LOWER(CONCAT('%', CAST(:country AS text), '%'))) AND " +
-            "(:audience IS NULL OR p.targetAudience = :audience) AND " +
-            "(:tag IS NULL OR :tag MEMBER OF p.tags)")
-    Page<Product> findByFilters(@Param("search") String search,
-                                @Param("categoryId") Long categoryId,
-                                @Param("brandId") Long brandId,
-                                @Param("minPrice") BigDecimal minPrice,
-                                @Param("maxPrice") BigDecimal maxPrice,
-                                @Param("color") String color,
-                                @Param("size") String size,
-                                @Param("country") String country,
-                                @Param("audience") TargetAudience audience,
-                                @Param("tag") ProductTag tag,
-                                Pageable pageable);
-
-}
\ No newline at end of file
+
+    // Оценка числа строк по статистике планировщика, без COUNT(*)
+    @Query(value = "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'products'::regclass", nativeQuery = true)
+    long estimateRowCount();
+}
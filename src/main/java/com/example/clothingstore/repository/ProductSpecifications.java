@@ -0,0 +1,97 @@
+package com.example.clothingstore.repository;
+
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.model.Product;
+import com.example.clothingstore.model.ProductTagsConverter;
+import com.example.clothingstore.util.KeysetCursor;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Построитель условий для фильтра каталога. В SQL попадают только заданные
+ * фильтры, поэтому у типовых запросов стабильная форма и планировщик может
+ * использовать индексы, а не план для "всех необязательных условий сразу".
+ */
+public final class ProductSpecifications {
+
+    public static final Set<String> SORTABLE_FIELDS =
+            Set.of("id", "name", "price", "createdAt", "views", "rating", "stockQuantity");
+
+    // Для курсоров только NOT NULL колонки: условие (a > ? OR a = ? AND id > ?) пропускает строки с NULL
+    public static final Set<String> KEYSET_SORTABLE_FIELDS = Set.of("id", "name", "createdAt");
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> byFilter(ProductFilter filter) {
+        ProductFilter f = filter.normalized();
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.isFalse(root.get("deleted")));
+
+            if (f.search() != null) {
+                predicates.add(cb.like(cb.lower(root.get("name")), contains(f.search())));
+            }
+            if (f.categoryId() != null) {
+                predicates.add(cb.equal(root.get("category").get("id"), f.categoryId()));
+            }
+            if (f.brandId() != null) {
+                predicates.add(cb.equal(root.get("brand").get("id"), f.brandId()));
+            }
+            if (f.minPrice() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("price"), f.minPrice()));
+            }
+            if (f.maxPrice() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("price"), f.maxPrice()));
+            }
+            if (f.color() != null) {
+                // color_names @> array[?] - точное совпадение по GIN-индексу, как у размеров
+                predicates.add(cb.isTrue(cb.function("array_contains", Boolean.class,
+                        root.get("colorNames"), cb.literal(Product.normalizeColor(f.color())))));
+            }
+            if (f.size() != null) {
+                // size_list @> array[?] - точное совпадение по GIN-индексу
+                predicates.add(cb.isTrue(cb.function("array_contains", Boolean.class,
+                        root.get("sizeList"), cb.literal(Product.normalizeSize(f.size())))));
+            }
+            if (f.country() != null) {
+                predicates.add(cb.like(cb.lower(root.get("countryOfOrigin")), contains(f.country())));
+            }
+            if (f.audience() != null) {
+                predicates.add(cb.equal(root.get("targetAudience"), f.audience()));
+            }
+            if (f.tag() != null) {
+                predicates.add(cb.notEqual(cb.function("bitand", Integer.class,
+                        root.get("tagMask"), cb.literal(ProductTagsConverter.maskOf(f.tag()))), 0));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // Оставляет только разрешённые поля сортировки и добавляет id для стабильного порядка
+    public static Sort normalizeSort(Sort sort) {
+        return KeysetCursor.stableSort(sort, SORTABLE_FIELDS, Sort.Order.asc("id"));
+    }
+
+    public static Sort normalizeKeysetSort(Sort sort) {
+        return KeysetCursor.stableSort(sort, KEYSET_SORTABLE_FIELDS, Sort.Order.asc("id"));
+    }
+
+    public static Pageable normalizePageable(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return pageable;
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), normalizeSort(pageable.getSort()));
+    }
+
+    private static String contains(String value) {
+        return "%" + value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
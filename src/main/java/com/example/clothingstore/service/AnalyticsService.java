@@ -6,13 +6,14 @@ import com.example.clothingstore.model.OrderStatus;
 import com.example.clothingstore.repository.OrderItemRepository;
 import com.example.clothingstore.repository.OrderRepository;
 import com.example.clothingstore.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.example.clothingstore.util.SingleFlightCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -21,7 +22,6 @@ import java.util.List;
 import java.util.Map;
 
 @Service
-@RequiredArgsConstructor
 @Transactional(readOnly = true)
 @Slf4j
 public class AnalyticsService {
@@ -30,74 +30,94 @@ public class AnalyticsService {
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
     private final AnalyticsConfig analyticsConfig;
+    // Дашборд за один и тот же период считается одним запросом на всех админов
+    private final SingleFlightCache<Period, AnalyticsDTO> dashboardCache;
+
+    public AnalyticsService(UserRepository userRepository, OrderRepository orderRepository,
+                            OrderItemRepository orderItemRepository, AnalyticsConfig analyticsConfig) {
+        this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.analyticsConfig = analyticsConfig;
+        this.dashboardCache = new SingleFlightCache<>(Duration.ofMillis(analyticsConfig.getCacheTtlMs()), 100);
+    }
 
     public AnalyticsDTO getDashboardAnalytics(LocalDate startDate, LocalDate endDate) {
-        AnalyticsDTO analytics = new AnalyticsDTO();
-
         try {
-            LocalDateTime startDateTime = startDate.atStartOfDay();
-            LocalDateTime endDateTime = endDate.atTime(23, 59, 59);
-
-            LocalDate previousStartDate = startDate.minusMonths(1);
-            LocalDate previousEndDate = endDate.minusMonths(1);
-            LocalDateTime previousStartDateTime = previousStartDate.atStartOfDay();
-            LocalDateTime previousEndDateTime = previousEndDate.atTime(23, 59, 59);
-
-            // 1. ПОЛЬЗОВАТЕЛИ
-            Long currentUsers = userRepository.countByCreatedAtBetween(startDateTime, endDateTime);
-            Long previousUsers = userRepository.countByCreatedAtBetween(previousStartDateTime, previousEndDateTime);
-            analytics.setTotalUsers(currentUsers != null ? currentUsers : 0L);
-            analytics.setUserGrowthRate(calculateGrowthRate(currentUsers, previousUsers));
-
-            // 2. ЗАКАЗЫ
-            Long currentOrders = orderRepository.countByOrderDateBetweenAndStatusIn(
-                    startDateTime, endDateTime, analyticsConfig.getOrderCountStatuses());
-            Long previousOrders = orderRepository.countByOrderDateBetweenAndStatusIn(
-                    previousStartDateTime, previousEndDateTime, analyticsConfig.getOrderCountStatuses());
-            analytics.setTotalOrders(currentOrders != null ? currentOrders : 0L);
-            analytics.setOrderGrowthRate(calculateGrowthRate(currentOrders, previousOrders));
-
-            // 3. ВЫРУЧКА
-            BigDecimal currentRevenue = orderRepository.calculateRevenueByStatusIn(
-                    startDateTime, endDateTime, analyticsConfig.getRevenueStatuses());
-            BigDecimal previousRevenue = orderRepository.calculateRevenueByStatusIn(
-                    previousStartDateTime, previousEndDateTime, analyticsConfig.getRevenueStatuses());
-            analytics.setTotalRevenue(currentRevenue != null ? currentRevenue : BigDecimal.ZERO);
-            analytics.setRevenueGrowthRate(calculateGrowthRate(currentRevenue, previousRevenue));
-
-            // 4. СРЕДНИЙ ЧЕК
-            if (currentOrders != null && currentOrders > 0 && currentRevenue != null) {
-                analytics.setAverageOrderValue(
-                        currentRevenue.divide(BigDecimal.valueOf(currentOrders), 2, RoundingMode.HALF_UP)
-                );
-            } else {
-                analytics.setAverageOrderValue(BigDecimal.ZERO);
-            }
-
-            // 5. КОНВЕРСИЯ
-            if (currentUsers != null && currentUsers > 0 && currentOrders != null) {
-                double conversion = (currentOrders.doubleValue() / currentUsers.doubleValue()) * 100;
-                analytics.setConversionRate(Math.min(conversion, 100.0));
-            } else {
-                analytics.setConversionRate(0.0);
-            }
-
-            // 6. ДАННЫЕ ДЛЯ ГРАФИКОВ
-            analytics.setRevenueByCategory(getRevenueByCategory(startDateTime, endDateTime));
-            analytics.setDailyOrders(getDailyOrders(startDateTime, endDateTime));
-            analytics.setTopSellingProducts(getTopSellingProducts(startDateTime, endDateTime));
-
-            log.info("Analytics calculated: users={}, orders={}, revenue={}",
-                    analytics.getTotalUsers(), analytics.getTotalOrders(), analytics.getTotalRevenue());
-
+            return dashboardCache.get(new Period(startDate, endDate),
+                    () -> calculateDashboardAnalytics(startDate, endDate)).copy();
         } catch (Exception e) {
             log.error("Error calculating analytics", e);
+            AnalyticsDTO analytics = new AnalyticsDTO();
             setDefaultValues(analytics);
+            return analytics;
+        }
+    }
+
+    private AnalyticsDTO calculateDashboardAnalytics(LocalDate startDate, LocalDate endDate) {
+        AnalyticsDTO analytics = new AnalyticsDTO();
+
+        LocalDateTime startDateTime = startDate.atStartOfDay();
+        LocalDateTime endDateTime = endDate.atTime(23, 59, 59);
+
+        LocalDate previousStartDate = startDate.minusMonths(1);
+        LocalDate previousEndDate = endDate.minusMonths(1);
+        LocalDateTime previousStartDateTime = previousStartDate.atStartOfDay();
+        LocalDateTime previousEndDateTime = previousEndDate.atTime(23, 59, 59);
+
+        // 1. ПОЛЬЗОВАТЕЛИ
+        Long currentUsers = userRepository.countByCreatedAtBetween(startDateTime, endDateTime);
+        Long previousUsers = userRepository.countByCreatedAtBetween(previousStartDateTime, previousEndDateTime);
+        analytics.setTotalUsers(currentUsers != null ? currentUsers : 0L);
+        analytics.setUserGrowthRate(calculateGrowthRate(currentUsers, previousUsers));
+
+        // 2. ЗАКАЗЫ
+        Long currentOrders = orderRepository.countByOrderDateBetweenAndStatusIn(
+                startDateTime, endDateTime, analyticsConfig.getOrderCountStatuses());
+        Long previousOrders = orderRepository.countByOrderDateBetweenAndStatusIn(
+                previousStartDateTime, previousEndDateTime, analyticsConfig.getOrderCountStatuses());
+        analytics.setTotalOrders(currentOrders != null ? currentOrders : 0L);
+        analytics.setOrderGrowthRate(calculateGrowthRate(currentOrders, previousOrders));
+
+        // 3. ВЫРУЧКА
+        BigDecimal currentRevenue = orderRepository.calculateRevenueByStatusIn(
+                startDateTime, endDateTime, analyticsConfig.getRevenueStatuses());
+        BigDecimal previousRevenue = orderRepository.calculateRevenueByStatusIn(
+                previousStartDateTime, previousEndDateTime, analyticsConfig.getRevenueStatuses());
+        analytics.setTotalRevenue(currentRevenue != null ? currentRevenue : BigDecimal.ZERO);
+        analytics.setRevenueGrowthRate(calculateGrowthRate(currentRevenue, previousRevenue));
+
+        // 4. СРЕДНИЙ ЧЕК
+        if (currentOrders != null && currentOrders > 0 && currentRevenue != null) {
+            analytics.setAverageOrderValue(
+                    currentRevenue.divide(BigDecimal.valueOf(currentOrders), 2, RoundingMode.HALF_UP)
+            );
+        } else {
+            analytics.setAverageOrderValue(BigDecimal.ZERO);
+        }
+
+        // 5. КОНВЕРСИЯ
+        if (currentUsers != null && currentUsers > 0 && currentOrders != null) {
+            double conversion = (currentOrders.doubleValue() / currentUsers.doubleValue()) * 100;
+            analytics.setConversionRate(Math.min(conversion, 100.0));
+        } else {
+            analytics.setConversionRate(0.0);
         }
 
+        // 6. ДАННЫЕ ДЛЯ ГРАФИКОВ
+        analytics.setRevenueByCategory(getRevenueByCategory(startDateTime, endDateTime));
+        analytics.setDailyOrders(getDailyOrders(startDateTime, endDateTime));
+        analytics.setTopSellingProducts(getTopSellingProducts(startDateTime, endDateTime));
+
+        log.info("Analytics calculated: users={}, orders={}, revenue={}",
+                analytics.getTotalUsers(), analytics.getTotalOrders(), analytics.getTotalRevenue());
+
         return analytics;
     }
 
+    private record Period(LocalDate start, LocalDate end) {
+    }
+
     private Map<String, BigDecimal> getRevenueByCategory(LocalDateTime start, LocalDateTime end) {
         try {
             List<Object[]> results = orderItemRepository.getRevenueByCategory(start, end);
@@ -1,16 +1,23 @@
 package com.example.clothingstore.service;
 
+import com.example.clothingstore.dto.CursorPage;
 import com.example.clothingstore.model.AuditLog;
 import com.example.clothingstore.repository.AuditLogRepository;
+import com.example.clothingstore.util.KeysetCursor;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -85,4 +92,33 @@ public class AuditService {
         return auditLogRepository.findDistinctActions();
     }
 
+    @Transactional(readOnly = true)
+    public CursorPage<AuditLog> scrollLogs(String entityType, String action, String username,
+                                           int size, String after, boolean exactCount) {
+        Sort sort = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+        Specification<AuditLog> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (entityType != null && !entityType.isEmpty()) {
+                predicates.add(cb.equal(root.get("entityType"), entityType));
+            }
+            if (action != null && !action.isEmpty()) {
+                predicates.add(cb.equal(root.get("action"), action));
+            }
+            if (username != null && !username.isEmpty()) {
+                predicates.add(cb.like(root.get("username"), "%" + username + "%"));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+        Window<AuditLog> window = auditLogRepository.findBy(spec, query -> query
+                .sortBy(sort)
+                .limit(size)
+                .scroll(KeysetCursor.decode(after, AuditLog.class)));
+        // Оценка reltuples - по всей таблице, поэтому для отфильтрованного списка итог не показываем
+        boolean filtered = (entityType != null && !entityType.isEmpty()) || (action != null && !action.isEmpty())
+                || (username != null && !username.isEmpty());
+        Long total = exactCount ? Long.valueOf(auditLogRepository.count(spec))
+                : filtered ? null : Long.valueOf(auditLogRepository.estimateRowCount());
+        return new CursorPage<>(window, size, sort, total, exactCount);
+    }
+
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.example.clothingstore.service;
 
 import com.example.clothingstore.model.Brand;
 import com.example.clothingstore.repository.BrandRepository;
+import com.example.clothingstore.repository.ProductRepository;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -10,6 +11,7 @@ import com.lowagie.text.Font;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -25,9 +27,14 @@ import java.util.Optional;
 public class BrandService {
 
     private final BrandRepository brandRepository;
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public BrandService(BrandRepository brandRepository) {
+    public BrandService(BrandRepository brandRepository, ProductRepository productRepository,
+                        ApplicationEventPublisher eventPublisher) {
         this.brandRepository = brandRepository;
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
     }
     public List<Brand> getAllActiveBrands() {
         return brandRepository.findByDeletedFalse();
@@ -47,7 +54,9 @@ public class BrandService {
             throw new RuntimeException("Бренд с названием '" + brand.getName() + "' уже существует");
         }
         brand.setDeleted(false);
-        return brandRepository.save(brand);
+        Brand saved = brandRepository.save(brand);
+        publishChanged();
+        return saved;
     }
     public Brand updateBrand(Long id, Brand brandDetails) {
         Brand brand = getBrandById(id);
@@ -56,17 +65,26 @@ public class BrandService {
             throw new RuntimeException("Бренд с названием '" + brandDetails.getName() + "' уже существует");
         }
 
+        boolean renamed = !brand.getName().equals(brandDetails.getName());
         brand.setName(brandDetails.getName());
         brand.setContactEmail(brandDetails.getContactEmail());
-        return brandRepository.save(brand);
+        Brand saved = brandRepository.save(brand);
+        publishChanged();
+        if (renamed) {
+            // Название бренда участвует в поиске по товарам
+            eventPublisher.publishEvent(new ProductChangedEvent(productRepository.findIdsByBrandId(id)));
+        }
+        return saved;
     }
     public void softDeleteBrand(Long id) {
         Brand brand = getBrandById(id);
         brand.setDeleted(true);
         brandRepository.save(brand);
+        publishChanged();
     }
     public void hardDeleteBrand(Long id) {
         brandRepository.deleteById(id);
+        publishChanged();
     }
 
     public List<Brand> searchBrands(String query) {
@@ -75,7 +93,13 @@ public class BrandService {
     public Brand restoreBrand(Long id) {
         Brand brand = getBrandById(id);
         brand.setDeleted(false);
-        return brandRepository.save(brand);
+        Brand saved = brandRepository.save(brand);
+        publishChanged();
+        return saved;
+    }
+
+    private void publishChanged() {
+        eventPublisher.publishEvent(new ReferenceDataChangedEvent(Brand.class));
     }
 
     public Optional<Brand> findByName(String name) {
@@ -0,0 +1,147 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.model.CartItem;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Итоги корзины для страницы корзины, оформления и значка в шапке. Все суммы - long в копейках,
+ * без double. Правила акций (скидка от порога, доставка) собираются из настроек один раз при
+ * старте и применяются по порядку: сначала скидки, затем доставка от суммы со скидкой.
+ * <p>
+ * Итог корзины пользователя кэширует CartService до изменения её строк; pricesVersion растёт
+ * при изменении товаров, кроме просмотров и остатков (цена могла поменяться), и сбрасывает все
+ * закэшированные итоги.
+ */
+@Service
+public class CartPricingService {
+
+    private final List<Rule> rules;
+    private final long freeDeliveryThreshold;
+    private final AtomicLong pricesVersion = new AtomicLong();
+
+    public CartPricingService(@Value("${app.cart-pricing.discount-threshold:200000}") BigDecimal discountThreshold,
+                              @Value("${app.cart-pricing.discount:500}") BigDecimal discount,
+                              @Value("${app.cart-pricing.free-delivery-threshold:200000}") BigDecimal freeDeliveryThreshold,
+                              @Value("${app.cart-pricing.delivery-cost:300}") BigDecimal deliveryCost) {
+        this.freeDeliveryThreshold = toMinor(freeDeliveryThreshold);
+        this.rules = List.of(
+                new ThresholdDiscount(toMinor(discountThreshold), toMinor(discount)),
+                new Delivery(this.freeDeliveryThreshold, toMinor(deliveryCost)));
+    }
+
+    public long pricesVersion() {
+        return pricesVersion.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!event.viewsOnly() && !event.stockOnly()) {
+            pricesVersion.incrementAndGet();
+        }
+    }
+
+    public Summary price(Collection<Line> lines) {
+        if (lines.isEmpty()) {
+            return Summary.EMPTY;
+        }
+        Totals totals = new Totals();
+        for (Line line : lines) {
+            totals.lines++;
+            totals.items += line.quantity();
+            totals.subtotal = Math.addExact(totals.subtotal, Math.multiplyExact(line.unitPrice(), line.quantity()));
+        }
+        for (Rule rule : rules) {
+            rule.apply(totals);
+        }
+        return new Summary(totals.lines, totals.items, totals.subtotal, totals.discount, totals.delivery,
+                totals.subtotal - totals.discount + totals.delivery);
+    }
+
+    // Для корзин, которые не кэшируются (гостевая в cookie)
+    public Summary priceItems(List<CartItem> items) {
+        return price(items.stream()
+                .filter(item -> item != null && item.getProduct() != null && item.getProduct().getPrice() != null)
+                .map(item -> new Line(toMinor(item.getProduct().getPrice()), item.getQuantity()))
+                .toList());
+    }
+
+    public BigDecimal freeDeliveryThreshold() {
+        return toAmount(freeDeliveryThreshold);
+    }
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public static BigDecimal toAmount(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+
+    // unitPrice - в копейках
+    public record Line(long unitPrice, int quantity) {
+    }
+
+    /**
+     * Итог корзины в копейках; методы *Amount - те же суммы в рублях для шаблонов.
+     */
+    public record Summary(int lineCount, int itemCount, long subtotal, long discount, long delivery, long total) {
+
+        public static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, 0);
+
+        public boolean isEmpty() {
+            return lineCount == 0;
+        }
+
+        public BigDecimal subtotalAmount() {
+            return toAmount(subtotal);
+        }
+
+        public BigDecimal discountAmount() {
+            return toAmount(discount);
+        }
+
+        public BigDecimal deliveryAmount() {
+            return toAmount(delivery);
+        }
+
+        public BigDecimal totalAmount() {
+            return toAmount(total);
+        }
+    }
+
+    private static final class Totals {
+        private int lines;
+        private int items;
+        private long subtotal;
+        private long discount;
+        private long delivery;
+    }
+
+    private interface Rule {
+        void apply(Totals totals);
+    }
+
+    private record ThresholdDiscount(long threshold, long discount) implements Rule {
+        @Override
+        public void apply(Totals totals) {
+            if (totals.subtotal - totals.discount >= threshold) {
+                totals.discount += Math.min(discount, totals.subtotal - totals.discount);
+            }
+        }
+    }
+
+    private record Delivery(long freeFrom, long cost) implements Rule {
+        @Override
+        public void apply(Totals totals) {
+            totals.delivery = totals.subtotal - totals.discount >= freeFrom ? 0 : cost;
+        }
+    }
+}
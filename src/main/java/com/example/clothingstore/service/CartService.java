@@ -1,28 +1,672 @@
 package com.example.clothingstore.service;
 
 import com.example.clothingstore.model.CartItem;
+import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.User;
-import com.example.clothingstore.repository.CartItemRepository;
-import lombok.RequiredArgsConstructor;
+import com.example.clothingstore.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Корзины с отложенной записью. Активная корзина пользователя (по email) живёт в памяти:
+ * добавление, "+1" и удаление меняют только её, а изменения всех корзин раз в flush-interval-ms
+ * пишутся в cart_item пачками - одна вставка, одно обновление и одно удаление на сброс,
+ * сколько бы кликов ни было. Перед оформлением заказа корзина сбрасывается синхронно (flush).
+ * Несохранённые корзины из памяти не вытесняются; сохранённые уходят после idle-timeout-ms
+ * и сверх max-carts, давно не использованные первыми.
+ * <p>
+ * Id строки (CartItem.id для форм /cart/update и /cart/remove) - id в cart_item, а у ещё
+ * не записанных строк отрицательный временный, который сохраняется до вытеснения корзины.
+ * Итог корзины (CartPricingService) хранится в ней же до изменения строк или цен товаров.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class CartService {
 
-    private final CartItemRepository cartItemRepository;
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductRepository productRepository;
+    private final CartPricingService cartPricingService;
+    private final TransactionTemplate flushTransaction;
+    private final long idleTimeoutMs;
+    private final int maxCarts;
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    private final AtomicLong temporaryIds = new AtomicLong();
+    // Сбросы по таймеру и синхронные перед заказом не пересекаются
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public CartService(JdbcTemplate jdbcTemplate, ProductRepository productRepository,
+                       CartPricingService cartPricingService, PlatformTransactionManager transactionManager,
+                       @Value("${app.cart.idle-timeout-ms:1800000}") long idleTimeoutMs,
+                       @Value("${app.cart.max-carts:100000}") int maxCarts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productRepository = productRepository;
+        this.cartPricingService = cartPricingService;
+        // Синхронный сброс идёт вне транзакции заказа, как и по таймеру: её откат вернул бы
+        // строки, уже отмеченные записанными
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxCarts = maxCarts;
+    }
 
     public int getCartItemsCount(User user) {
-        return cartItemRepository.countByUser(user);
+        return cart(user.getEmail()).lines().size();
+    }
+
+    public List<CartItem> getCartItems(User user) {
+        return toItems(user, cart(user.getEmail()).lines());
+    }
+
+    // Для страниц, которым пользователь как сущность не нужен
+    public List<CartItem> getCartItems(String email) {
+        return toItems(null, cart(email).lines());
+    }
+
+    /**
+     * Итог корзины для страниц и значка в шапке. Пересчитывается только после изменения строк
+     * корзины или товаров, иначе отдаётся сохранённый без обращения к БД.
+     */
+    public CartPricingService.Summary getCartSummary(String email) {
+        Cart cart = cart(email);
+        long pricesVersion = cartPricingService.pricesVersion();
+        Cart.Snapshot snapshot = cart.snapshot(pricesVersion);
+        if (snapshot.summary() != null) {
+            return snapshot.summary();
+        }
+        CartPricingService.Summary summary = price(snapshot.lines());
+        cart.priced(snapshot.revision(), pricesVersion, summary);
+        return summary;
+    }
+
+    public Optional<CartItem> findItem(String email, Long itemId) {
+        return cart(email).line(itemId)
+                .map(line -> toItem(null, line, productRepository.findById(line.productId).orElse(null)));
+    }
+
+    /**
+     * Добавляет количество к строке товара с таким размером и цветом или создаёт её.
+     * Пустой результат - итог превысил бы maxQuantity, корзина не изменилась.
+     */
+    public OptionalInt addItem(String email, Long productId, int quantity, String size, String color, int maxQuantity) {
+        return change(email, cart -> cart.add(productId, quantity, size, color, maxQuantity, temporaryIds));
     }
+
+    /**
+     * Перенос строк (например, гостевой корзины после входа) одним вызовом: количество
+     * складывается с уже лежащим в корзине и ограничивается maxQuantity. Возвращает число
+     * строк, которые что-то изменили; в БД они уйдут с ближайшим сбросом одной пачкой.
+     */
+    public int mergeItems(String email, List<MergedItem> items) {
+        return change(email, cart -> {
+            int merged = 0;
+            for (MergedItem item : items) {
+                if (cart.merge(item, temporaryIds)) {
+                    merged++;
+                }
+            }
+            return merged;
+        });
+    }
+
+    public boolean updateQuantity(String email, Long itemId, int quantity) {
+        return quantity <= 0 ? removeItem(email, itemId) : change(email, cart -> cart.update(itemId, quantity));
+    }
+
+    public boolean removeItem(String email, Long itemId) {
+        return change(email, cart -> cart.remove(itemId));
+    }
+
     public void clearCart(User user) {
-        List<CartItem> cartItems = cartItemRepository.findByUser(user);
-        cartItemRepository.deleteAll(cartItems);
+        clearCart(user.getEmail());
     }
 
-    public List<CartItem> getCartItems(User user) {
-        return cartItemRepository.findByUser(user);
+    public void clearCart(String email) {
+        change(email, cart -> {
+            cart.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Удаляет оформленные строки в текущей транзакции заказа, а из памяти - после её коммита:
+     * при откате заказа корзина остаётся как была. Строки должны быть сброшены (flush).
+     */
+    public void removeCheckedOut(User user, List<CartItem> items) {
+        Cart cart = cart(user.getEmail());
+        List<Long> itemIds = items.stream().map(CartItem::getId).toList();
+        Long[] storedIds = cart.storedIds(itemIds);
+        if (storedIds.length > 0) {
+            jdbcTemplate.update("DELETE FROM cart_item WHERE id = ANY(?)", (Object) storedIds);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cart.forget(itemIds);
+                }
+            });
+        } else {
+            cart.forget(itemIds);
+        }
+    }
+
+    // Синхронная запись корзины пользователя, например перед оформлением заказа
+    public void flush(User user) {
+        Cart cart = carts.get(user.getEmail());
+        if (cart != null) {
+            flushLock.lock();
+            try {
+                flushTransaction.executeWithoutResult(status -> write(List.of(cart), true));
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.cart.flush-interval-ms:2000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            write(new ArrayList<>(carts.values()), false);
+        } finally {
+            flushLock.unlock();
+        }
+        evictIdle();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // Вытесненную из карты корзину не отдаём: берём заново (она загрузится из БД)
+    private Cart cart(String email) {
+        while (true) {
+            Cart cart = carts.computeIfAbsent(email, key -> new Cart());
+            cart.lastAccess = System.currentTimeMillis();
+            if (!cart.loaded) {
+                synchronized (cart) {
+                    if (!cart.evicted && !cart.loaded) {
+                        load(email, cart);
+                    }
+                }
+            }
+            if (!cart.evicted) {
+                return cart;
+            }
+        }
+    }
+
+    /**
+     * Изменение строк под монитором корзины: вытеснение (тоже под монитором) не может убрать
+     * корзину между cart() и изменением, иначе изменение осталось бы в недоступном объекте.
+     */
+    private <T> T change(String email, Function<Cart, T> action) {
+        while (true) {
+            Cart cart = cart(email);
+            synchronized (cart) {
+                if (!cart.evicted) {
+                    return action.apply(cart);
+                }
+            }
+        }
+    }
+
+    private void load(String email, Cart cart) {
+        jdbcTemplate.query("SELECT u.id, ci.id, ci.product_id, ci.quantity, ci.size, ci.color " +
+                "FROM users u LEFT JOIN cart_item ci ON ci.user_id = u.id WHERE u.email = ? ORDER BY ci.id", rs -> {
+            cart.userId = rs.getLong(1);
+            long id = rs.getLong(2);
+            if (!rs.wasNull()) {
+                cart.loadLine(new Line(id, id, rs.getLong(3), rs.getInt(4), rs.getString(5), rs.getString(6)));
+            }
+        }, email);
+        if (cart.userId == null) {
+            cart.evicted = true;
+            carts.remove(email, cart);
+            throw new IllegalArgumentException("Пользователь не найден: " + email);
+        }
+        cart.loaded = true;
+    }
+
+    // Изменения всех переданных корзин: по одному пакету вставок, обновлений и удалений
+    private void write(List<Cart> dirtyCarts, boolean rethrow) {
+        List<Cart.Change> inserts = new ArrayList<>();
+        List<Cart.Change> updates = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        Map<Cart.Change, Cart> owners = new IdentityHashMap<>();
+        Map<Cart, List<Long>> deletesByCart = new IdentityHashMap<>();
+        for (Cart cart : dirtyCarts) {
+            if (!cart.loaded) {
+                continue;
+            }
+            Cart.Changes changes = cart.takeChanges();
+            changes.inserts().forEach(change -> owners.put(change, cart));
+            changes.updates().forEach(change -> owners.put(change, cart));
+            inserts.addAll(changes.inserts());
+            updates.addAll(changes.updates());
+            if (!changes.deletes().isEmpty()) {
+                deletes.addAll(changes.deletes());
+                deletesByCart.put(cart, changes.deletes());
+            }
+        }
+        if (inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        Set<Cart> involved = Collections.newSetFromMap(new IdentityHashMap<>());
+        involved.addAll(owners.values());
+        involved.addAll(deletesByCart.keySet());
+        try {
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM cart_item WHERE id = ANY(?)", (Object) deletes.toArray(Long[]::new));
+            }
+            deletesByCart.clear();
+            for (int from = 0; from < updates.size(); from += BATCH_SIZE) {
+                List<Cart.Change> batch = updates.subList(from, Math.min(from + BATCH_SIZE, updates.size()));
+                jdbcTemplate.batchUpdate("UPDATE cart_item SET quantity = ? WHERE id = ?", batch, batch.size(),
+                        (ps, change) -> {
+                            ps.setInt(1, change.quantity());
+                            ps.setLong(2, change.line().storedId);
+                        });
+                batch.forEach(change -> owners.get(change).written(change, null));
+            }
+            for (int from = 0; from < inserts.size(); from += BATCH_SIZE) {
+                List<Cart.Change> batch = inserts.subList(from, Math.min(from + BATCH_SIZE, inserts.size()));
+                List<Long> ids = insert(batch, owners);
+                for (int i = 0; i < batch.size(); i++) {
+                    owners.get(batch.get(i)).written(batch.get(i), ids.get(i));
+                }
+            }
+        } catch (Exception e) {
+            // Незаписанное снова помечаем изменённым; записанное до ошибки уже отмечено
+            owners.forEach((change, cart) -> cart.failed(change));
+            deletesByCart.forEach(Cart::deleteFailed);
+            if (e instanceof DataIntegrityViolationException && involved.size() > 1) {
+                // Строка с товаром или пользователем, удалённым до записи, не должна держать все корзины:
+                // пишем по одной, чтобы ошибка осталась у своей
+                log.warn("Пакет корзин не записан из-за нарушения целостности, пишем {} корзин по одной", involved.size());
+                involved.forEach(cart -> write(List.of(cart), false));
+                return;
+            }
+            log.error("Не удалось записать корзины: {} вставок, {} обновлений, {} удалений, повторим при следующем сбросе",
+                    inserts.size(), updates.size(), deletes.size(), e);
+            if (e instanceof DataIntegrityViolationException) {
+                dropOrphans(dirtyCarts.get(0));
+            }
+            if (rethrow) {
+                throw new IllegalStateException("Не удалось сохранить корзину", e);
+            }
+        }
+    }
+
+    /**
+     * Корзина, которую не удалось записать из-за внешнего ключа: строки удалённых товаров
+     * отбрасываются, а корзина удалённого пользователя целиком уходит из памяти, иначе
+     * сброс повторял бы ту же ошибку бесконечно.
+     */
+    private void dropOrphans(Cart cart) {
+        try {
+            if (jdbcTemplate.queryForList("SELECT id FROM users WHERE id = ?", Long.class, cart.userId).isEmpty()) {
+                synchronized (cart) {
+                    cart.evicted = true;
+                    carts.values().remove(cart);
+                }
+                log.warn("Корзина удалённого пользователя {} отброшена", cart.userId);
+                return;
+            }
+            Set<Long> productIds = cart.lines().stream().map(line -> line.productId).collect(Collectors.toSet());
+            productIds.removeAll(jdbcTemplate.queryForList("SELECT id FROM products WHERE id = ANY(?)", Long.class,
+                    (Object) productIds.toArray(Long[]::new)));
+            if (!productIds.isEmpty()) {
+                cart.forgetProducts(productIds);
+                log.warn("Из корзины пользователя {} убраны удалённые товары {}", cart.userId, productIds);
+            }
+        } catch (Exception e) {
+            log.error("Не удалось проверить корзину пользователя {}", cart.userId, e);
+        }
+    }
+
+    private List<Long> insert(List<Cart.Change> batch, Map<Cart.Change, Cart> owners) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(
+                        "INSERT INTO cart_item (user_id, product_id, quantity, size, color) VALUES (?, ?, ?, ?, ?)",
+                        new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Cart.Change change = batch.get(i);
+                        ps.setLong(1, owners.get(change).userId);
+                        ps.setLong(2, change.line().productId);
+                        ps.setInt(3, change.quantity());
+                        ps.setString(4, change.line().size);
+                        ps.setString(5, change.line().color);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keys);
+        return keys.getKeyList().stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+    }
+
+    // Строки без товара или цены в итог не входят - так же, как toItems не показывает их
+    private CartPricingService.Summary price(List<Line> lines) {
+        if (lines.isEmpty()) {
+            return CartPricingService.Summary.EMPTY;
+        }
+        Map<Long, Long> prices = productRepository.findAllById(lines.stream().map(line -> line.productId).distinct().toList())
+                .stream()
+                .filter(product -> product.getPrice() != null)
+                .collect(Collectors.toMap(Product::getId, product -> CartPricingService.toMinor(product.getPrice())));
+        return cartPricingService.price(lines.stream()
+                .filter(line -> prices.containsKey(line.productId))
+                .map(line -> new CartPricingService.Line(prices.get(line.productId), line.quantity))
+                .toList());
+    }
+
+    private List<CartItem> toItems(User user, List<Line> lines) {
+        if (lines.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Product> products = productRepository.findAllById(lines.stream().map(line -> line.productId).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return lines.stream()
+                .filter(line -> products.containsKey(line.productId))
+                .map(line -> toItem(user, line, products.get(line.productId)))
+                .collect(Collectors.toList());
+    }
+
+    // Не сущность из БД: изменения такого CartItem никуда не пишутся
+    private static CartItem toItem(User user, Line line, Product product) {
+        CartItem item = new CartItem();
+        item.setId(line.id);
+        item.setUser(user);
+        item.setProduct(product);
+        item.setQuantity(line.quantity);
+        item.setSize(line.size);
+        item.setColor(line.color);
+        return item;
+    }
+
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        carts.forEach((email, cart) -> evict(email, cart, idleSince));
+        int excess = carts.size() - maxCarts;
+        if (excess <= 0) {
+            return;
+        }
+        carts.entrySet().stream()
+                .filter(entry -> entry.getValue().isClean())
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                .limit(excess)
+                .toList()
+                .forEach(entry -> evict(entry.getKey(), entry.getValue(), Long.MAX_VALUE));
+    }
+
+    // Под монитором корзины: одновременное изменение либо успеет до проверки, либо возьмёт новую корзину
+    private void evict(String email, Cart cart, long idleSince) {
+        synchronized (cart) {
+            if (cart.isClean() && cart.lastAccess < idleSince) {
+                cart.evicted = true;
+                carts.remove(email, cart);
+            }
+        }
+    }
+
+    // maxQuantity - остаток товара, общий для всех его строк в корзине
+    public record MergedItem(Long productId, int quantity, String size, String color, int maxQuantity) {
+    }
+
+    private static final class Line {
+        // Id для форм; у сохранённой строки из БД совпадает со storedId
+        private final long id;
+        private final long productId;
+        private final String size;
+        private final String color;
+        private Long storedId;
+        private int quantity;
+        private int version;
+        private int writtenVersion;
+        private boolean inserting;
+        private boolean removed;
+
+        Line(long id, Long storedId, long productId, int quantity, String size, String color) {
+            this.id = id;
+            this.storedId = storedId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.size = size;
+            this.color = color;
+        }
+
+        boolean matches(long productId, String size, String color) {
+            return this.productId == productId && Objects.equals(this.size, size) && Objects.equals(this.color, color);
+        }
+    }
+
+    private static final class Cart {
+        private final List<Line> lines = new ArrayList<>();
+        // id удалённых строк, которые ещё есть в cart_item
+        private final List<Long> pendingDeletes = new ArrayList<>();
+        private volatile boolean loaded;
+        private volatile boolean evicted;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private Long userId;
+        // Растёт при каждом изменении строк; итог действителен для той ревизии, с которой посчитан
+        private long revision;
+        private Priced priced;
+
+        record Change(Line line, int quantity, int version) {
+        }
+
+        record Changes(List<Change> inserts, List<Change> updates, List<Long> deletes) {
+        }
+
+        record Priced(long revision, long pricesVersion, CartPricingService.Summary summary) {
+        }
+
+        // summary == null - сохранённого итога нет, его нужно посчитать по lines
+        record Snapshot(long revision, List<Line> lines, CartPricingService.Summary summary) {
+        }
+
+        synchronized void loadLine(Line line) {
+            lines.add(line);
+            revision++;
+        }
+
+        synchronized Snapshot snapshot(long pricesVersion) {
+            if (priced != null && priced.revision() == revision && priced.pricesVersion() == pricesVersion) {
+                return new Snapshot(revision, List.of(), priced.summary());
+            }
+            return new Snapshot(revision, List.copyOf(lines), null);
+        }
+
+        // Итог, посчитанный по устаревшей ревизии, не сохраняем
+        synchronized void priced(long revision, long pricesVersion, CartPricingService.Summary summary) {
+            if (revision == this.revision) {
+                priced = new Priced(revision, pricesVersion, summary);
+            }
+        }
+
+        synchronized List<Line> lines() {
+            return List.copyOf(lines);
+        }
+
+        synchronized Optional<Line> line(Long id) {
+            return lines.stream().filter(line -> id != null && line.id == id).findFirst();
+        }
+
+        synchronized OptionalInt add(Long productId, int quantity, String size, String color, int maxQuantity,
+                                     AtomicLong temporaryIds) {
+            Line line = lines.stream().filter(l -> l.matches(productId, size, color)).findFirst().orElse(null);
+            int total = (line != null ? line.quantity : 0) + quantity;
+            if (total > maxQuantity) {
+                return OptionalInt.empty();
+            }
+            if (line == null) {
+                lines.add(new Line(temporaryIds.decrementAndGet(), null, productId, quantity, size, color));
+            } else {
+                line.quantity = total;
+                line.version++;
+            }
+            revision++;
+            return OptionalInt.of(total);
+        }
+
+        synchronized boolean merge(MergedItem item, AtomicLong temporaryIds) {
+            Line line = lines.stream()
+                    .filter(l -> l.matches(item.productId(), item.size(), item.color()))
+                    .findFirst().orElse(null);
+            int existing = line != null ? line.quantity : 0;
+            // Остаток один на все размеры и цвета товара
+            int others = lines.stream()
+                    .filter(l -> l != line && l.productId == item.productId())
+                    .mapToInt(l -> l.quantity)
+                    .sum();
+            int total = Math.min(existing + item.quantity(), item.maxQuantity() - others);
+            if (total <= existing) {
+                return false;
+            }
+            if (line == null) {
+                lines.add(new Line(temporaryIds.decrementAndGet(), null, item.productId(), total, item.size(), item.color()));
+            } else {
+                line.quantity = total;
+                line.version++;
+            }
+            revision++;
+            return true;
+        }
+
+        synchronized boolean update(Long id, int quantity) {
+            Optional<Line> line = line(id);
+            line.ifPresent(l -> {
+                l.quantity = quantity;
+                l.version++;
+                revision++;
+            });
+            return line.isPresent();
+        }
+
+        synchronized boolean remove(Long id) {
+            Optional<Line> line = line(id);
+            line.ifPresent(this::drop);
+            return line.isPresent();
+        }
+
+        synchronized void clear() {
+            new ArrayList<>(lines).forEach(this::drop);
+        }
+
+        synchronized Long[] storedIds(List<Long> ids) {
+            return lines.stream()
+                    .filter(line -> ids.contains(line.id) && line.storedId != null)
+                    .map(line -> line.storedId)
+                    .toArray(Long[]::new);
+        }
+
+        // Строки уже удалены из БД чужой транзакцией - просто забываем
+        synchronized void forget(List<Long> ids) {
+            lines.removeIf(line -> {
+                if (ids.contains(line.id)) {
+                    line.removed = true;
+                    revision++;
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        // Товаров уже нет в БД, значит, и строк cart_item с ними нет - забываем без удаления
+        synchronized void forgetProducts(Set<Long> productIds) {
+            lines.removeIf(line -> {
+                if (productIds.contains(line.productId)) {
+                    line.removed = true;
+                    revision++;
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        private void drop(Line line) {
+            lines.remove(line);
+            line.removed = true;
+            revision++;
+            if (line.storedId != null) {
+                pendingDeletes.add(line.storedId);
+            }
+            // Строку, которая сейчас вставляется, удалит written() после получения id
+        }
+
+        synchronized boolean isClean() {
+            return pendingDeletes.isEmpty()
+                    && lines.stream().allMatch(line -> line.storedId != null && line.version == line.writtenVersion);
+        }
+
+        synchronized Changes takeChanges() {
+            List<Change> inserts = new ArrayList<>();
+            List<Change> updates = new ArrayList<>();
+            for (Line line : lines) {
+                if (line.storedId == null) {
+                    if (!line.inserting) {
+                        line.inserting = true;
+                        inserts.add(new Change(line, line.quantity, line.version));
+                    }
+                } else if (line.version != line.writtenVersion) {
+                    updates.add(new Change(line, line.quantity, line.version));
+                }
+            }
+            List<Long> deletes = List.copyOf(pendingDeletes);
+            pendingDeletes.clear();
+            return new Changes(inserts, updates, deletes);
+        }
+
+        synchronized void written(Change change, Long insertedId) {
+            Line line = change.line();
+            if (insertedId != null) {
+                line.storedId = insertedId;
+                line.inserting = false;
+                if (line.removed) {
+                    pendingDeletes.add(insertedId);
+                }
+            }
+            line.writtenVersion = Math.max(line.writtenVersion, change.version());
+        }
+
+        synchronized void failed(Change change) {
+            if (change.line().storedId == null) {
+                change.line().inserting = false;
+            }
+        }
+
+        synchronized void deleteFailed(List<Long> ids) {
+            pendingDeletes.addAll(ids);
+        }
     }
 }
@@ -0,0 +1,100 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.CatalogFacets;
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.repository.ProductRepository;
+import com.example.clothingstore.util.SingleFlightCache;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Счётчики значений для боковой панели каталога (цвет, размер, страна).
+ * Считаются одним проходом по товарам, подходящим под категорию, бренд, аудиторию,
+ * тег, цену и поиск; собственные выборы фасетов не учитываются, чтобы были видны альтернативы.
+ * Одновременные запросы одного фильтра считаются один раз, результат сбрасывается при смене версии индекса.
+ */
+@Service
+public class CatalogFacetService {
+
+    private static final int MAX_CACHED_FILTERS = 1000;
+    // Страховка на случай пропущенной смены версии; обычно записи сбрасываются раньше
+    private static final Duration CACHE_TTL = Duration.ofMinutes(10);
+
+    private final ProductFilterEngine filterEngine;
+    private final ProductRepository productRepository;
+    private final SingleFlightCache<ProductFilter, CatalogFacets> cache =
+            new SingleFlightCache<>(CACHE_TTL, MAX_CACHED_FILTERS);
+    private volatile long cachedVersion = -1;
+
+    public CatalogFacetService(ProductFilterEngine filterEngine, ProductRepository productRepository) {
+        this.filterEngine = filterEngine;
+        this.productRepository = productRepository;
+    }
+
+    public CatalogFacets getFacets(ProductFilter filter) {
+        if (!filterEngine.isReady()) {
+            return CatalogFacets.withoutCounts(productRepository.findDistinctColors(),
+                    productRepository.findDistinctSizes(), productRepository.findDistinctCountries());
+        }
+
+        long version = filterEngine.getVersion();
+        if (version != cachedVersion) {
+            cache.invalidateAll();
+            cachedVersion = version;
+        }
+        ProductFilter scope = scope(filter);
+        return cache.get(scope, () -> compute(scope));
+    }
+
+    private CatalogFacets compute(ProductFilter scope) {
+        return filterEngine.read(index -> {
+            Map<String, Integer> colors = new HashMap<>();
+            Map<String, Integer> sizes = new HashMap<>();
+            Map<String, Integer> countries = new HashMap<>();
+
+            BitSet matched = index.match(scope);
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                ProductFilterEngine.ProductDoc doc = index.doc(i);
+                doc.colors().forEach(color -> count(colors, ProductFilterEngine.Index.colorKey(color)));
+                doc.sizes().forEach(size -> count(sizes, ProductFilterEngine.Index.sizeKey(size)));
+                if (doc.country() != null) {
+                    countries.merge(key(doc.country()), 1, Integer::sum);
+                }
+            }
+
+            return new CatalogFacets(
+                    labelled(colors, index.colorLabels),
+                    labelled(sizes, index.sizeLabels),
+                    labelled(countries, index.countryLabels));
+        });
+    }
+
+    // Сбрасываем выбранные цвет/размер/страну: счётчики показывают, что ещё можно выбрать
+    private static ProductFilter scope(ProductFilter filter) {
+        ProductFilter normalized = filter.normalized();
+        return new ProductFilter(normalized.search(), normalized.categoryId(), normalized.brandId(),
+                normalized.minPrice(), normalized.maxPrice(), null, null, null,
+                normalized.audience(), normalized.tag());
+    }
+
+    private static Map<String, Integer> labelled(Map<String, Integer> counts, Map<String, String> labels) {
+        List<String> keys = new ArrayList<>(counts.keySet());
+        keys.sort(Comparator.comparing(labels::get, String.CASE_INSENSITIVE_ORDER));
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        keys.forEach(key -> result.put(labels.get(key), counts.get(key)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static void count(Map<String, Integer> counts, String key) {
+        if (key != null) {
+            counts.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.repository.ProductSpecifications;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов выборок каталога: страница id и общее число, ключ - каноничная сигнатура
+ * (вид выборки, нормализованный фильтр, сортировка со стабильным id, номер и размер страницы)
+ * плюс версия каталога и версия ProductFilterEngine. Любое изменение товаров поднимает версию
+ * каталога, поэтому выборка из БД, начатая до изменения, не попадёт под новый ключ. Движок
+ * применяет то же изменение в своём слушателе (или откладывает до конца перестройки), и до этого
+ * отдаёт прежние id; его версия растёт только после применения, так что такие id остаются под
+ * ключом старой версии движка. Вытеснение - W-TinyLFU Caffeine, вес записи - число id.
+ * Сброс просмотров версию не трогает: порядок по популярности догоняется по TTL.
+ * Метрики: cache.gets{cache=catalog.query,result=hit|miss}, cache.size, catalog.query.cache.weight.
+ */
+@Service
+public class CatalogQueryCache {
+
+    static final String CACHE_NAME = "catalog.query";
+
+    private final Cache<Key, Ids> cache;
+    private final ProductFilterEngine filterEngine;
+    private final AtomicLong version = new AtomicLong();
+
+    public CatalogQueryCache(ProductFilterEngine filterEngine, MeterRegistry meterRegistry,
+                             @Value("${app.catalog-cache.max-ids:500000}") long maxIds,
+                             @Value("${app.catalog-cache.ttl-ms:60000}") long ttlMillis) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxIds)
+                .weigher((Key key, Ids ids) -> ids.ids().size() + 1)
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .recordStats()
+                .build();
+        this.filterEngine = filterEngine;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        // Около 20 байт на id в списке - по весу видно, сколько памяти занимает кэш
+        Gauge.builder("catalog.query.cache.weight", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Суммарное число id в кэше выборок каталога")
+                .register(meterRegistry);
+        Gauge.builder("catalog.query.cache.version", version, AtomicLong::get)
+                .description("Версия каталога для кэша выборок")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Страница id из кэша или от loader. query различает выборки с одинаковым фильтром
+     * (например, "audience" и "filter" с тем же audience идут разными запросами к БД).
+     */
+    public Page<Long> ids(String query, ProductFilter filter, Pageable pageable, Supplier<Page<Long>> loader) {
+        if (pageable.isUnpaged()) {
+            return loader.get();
+        }
+        Key key = new Key(query, filter != null ? filter.normalized() : null,
+                ProductSpecifications.normalizeSort(pageable.getSort()),
+                pageable.getPageNumber(), pageable.getPageSize(), version.get(), filterEngine.getVersion());
+        Ids ids = cache.get(key, k -> Ids.of(loader.get()));
+        return new PageImpl<>(ids.ids(), pageable, ids.total());
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.viewsOnly()) {
+            return;
+        }
+        version.incrementAndGet();
+        // Записи старой версии уже недостижимы - освобождаем память сразу
+        cache.invalidateAll();
+    }
+
+    private record Key(String query, ProductFilter filter, Sort sort, int page, int size, long version,
+                       long engineVersion) {
+    }
+
+    private record Ids(List<Long> ids, long total) {
+        static Ids of(Page<Long> page) {
+            return new Ids(List.copyOf(page.getContent()), page.getTotalElements());
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.example.clothingstore.service;
 
 import com.example.clothingstore.model.Category;
 import com.example.clothingstore.repository.CategoryRepository;
+import com.example.clothingstore.repository.ProductRepository;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -15,14 +17,20 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 @Transactional
 public class CategoryService {
     private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public CategoryService(CategoryRepository categoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, ProductRepository productRepository,
+                           ApplicationEventPublisher eventPublisher) {
         this.categoryRepository = categoryRepository;
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
     }
     public List<Category> getAllActiveCategories() {
         return categoryRepository.findByDeletedFalse();
@@ -34,24 +42,35 @@ public class CategoryService {
     }
 
     public Category createCategory(Category category) {
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        publishChanged();
+        return saved;
     }
 
     public Category updateCategory(Long id, Category categoryDetails) {
         Category category = getCategoryById(id);
+        boolean renamed = !Objects.equals(category.getName(), categoryDetails.getName());
         category.setName(categoryDetails.getName());
         category.setDescription(categoryDetails.getDescription());
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        publishChanged();
+        if (renamed) {
+            // Название категории участвует в поиске по товарам
+            eventPublisher.publishEvent(new ProductChangedEvent(productRepository.findIdsByCategoryId(id)));
+        }
+        return saved;
     }
 
     public void softDeleteCategory(Long id) {
         Category category = getCategoryById(id);
         category.setDeleted(true);
         categoryRepository.save(category);
+        publishChanged();
     }
 
     public void hardDeleteCategory(Long id) {
         categoryRepository.deleteById(id);
+        publishChanged();
     }
 
     public List<Category> getAllCategories() {
@@ -104,6 +123,11 @@ public class CategoryService {
         Category category = getCategoryById(id);
         category.setDeleted(false);
         categoryRepository.save(category);
+        publishChanged();
+    }
+
+    private void publishChanged() {
+        eventPublisher.publishEvent(new ReferenceDataChangedEvent(Category.class));
     }
 
     public void exportToExcel(List<Category> categories, HttpServletResponse response) throws IOException {
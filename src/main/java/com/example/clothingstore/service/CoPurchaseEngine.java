@@ -0,0 +1,263 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.repository.OrderItemRepository;
+import com.example.clothingstore.util.LongFloatHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "С этим товаром покупают": разреженная матрица совместных покупок по заказам.
+ * Строка матрицы - LongFloatHashMap соседей товара. Матрица строится параллельно
+ * (fork-join по корзинам) при старте и дополняется после каждого оформленного заказа.
+ * Близость товаров - косинусная: co(a, b) / sqrt(n(a) * n(b)). Лучшие соседи товара
+ * кэшируются и сбрасываются, когда товар попадает в новый заказ. Заказы, оформленные во время
+ * построения, копятся по id и добавляются после него, кроме уже попавших в загрузку.
+ * Если построение упало, оно повторяется через минуту.
+ */
+@Slf4j
+@Service
+public class CoPurchaseEngine {
+
+    // Большие корзины дают квадратичное число пар и мало говорят о связи товаров
+    private static final int MAX_BASKET_SIZE = 50;
+    private static final int SPLIT_THRESHOLD = 2_000;
+    private static final int CACHED_NEIGHBORS = 50;
+    private static final long RETRY_DELAY_MS = 60_000;
+
+    private final OrderItemRepository orderItemRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // id заказа -> корзина; меняется только под write-lock
+    private final Map<Long, long[]> pendingBaskets = new HashMap<>();
+
+    private volatile boolean ready = false;
+    private boolean rebuilding = false;
+    private Matrix matrix = new Matrix();
+
+    public CoPurchaseEngine(OrderItemRepository orderItemRepository) {
+        this.orderItemRepository = orderItemRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        CompletableFuture.runAsync(this::rebuild);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        long[] basket = basket(event.productIds());
+        if (basket.length < 2) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                pendingBaskets.put(event.orderId(), basket);
+            } else {
+                matrix.add(basket);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void rebuild() {
+        // Заказ, добавленный в старую матрицу до этого момента, уже закоммичен и попадёт в загрузку
+        lock.writeLock().lock();
+        try {
+            rebuilding = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Matrix fresh = null;
+        Set<Long> loadedOrders = Set.of();
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, long[]> byOrder = loadBaskets();
+            List<long[]> baskets = new ArrayList<>(byOrder.values());
+            fresh = ForkJoinPool.commonPool().invoke(new BuildTask(baskets, 0, baskets.size()));
+            loadedOrders = byOrder.keySet();
+            log.info("Матрица совместных покупок построена: {} заказов, {} товаров за {} мс",
+                    baskets.size(), fresh.rows.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Не удалось построить матрицу совместных покупок", e);
+            if (!ready) {
+                CompletableFuture.runAsync(this::rebuild,
+                        CompletableFuture.delayedExecutor(RETRY_DELAY_MS, TimeUnit.MILLISECONDS));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (fresh != null) {
+                matrix = fresh;
+                ready = true;
+            }
+            for (Map.Entry<Long, long[]> entry : pendingBaskets.entrySet()) {
+                if (!loadedOrders.contains(entry.getKey())) {
+                    matrix.add(entry.getValue());
+                }
+            }
+            pendingBaskets.clear();
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Товары, которые чаще всего покупают вместе с указанными, по убыванию близости.
+     * Пустой Optional - матрица ещё не построена.
+     */
+    public Optional<List<Long>> recommend(Collection<Long> productIds, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        Set<Long> exclude = new HashSet<>(productIds);
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Float> scores = new HashMap<>();
+            for (Long productId : exclude) {
+                for (Scored neighbor : matrix.neighbors(productId)) {
+                    if (!exclude.contains(neighbor.productId())) {
+                        scores.merge(neighbor.productId(), neighbor.score(), Float::sum);
+                    }
+                }
+            }
+            return Optional.of(scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    record Scored(long productId, float score) {
+    }
+
+    // id заказа -> корзина
+    private Map<Long, long[]> loadBaskets() {
+        Map<Long, Set<Long>> byOrder = new HashMap<>();
+        for (Object[] row : orderItemRepository.findBasketRows()) {
+            byOrder.computeIfAbsent(((Number) row[0]).longValue(), k -> new HashSet<>())
+                    .add(((Number) row[1]).longValue());
+        }
+        Map<Long, long[]> baskets = new HashMap<>(byOrder.size() * 4 / 3 + 1);
+        byOrder.forEach((orderId, products) -> {
+            long[] basket = basket(products);
+            if (basket.length >= 2) {
+                baskets.put(orderId, basket);
+            }
+        });
+        return baskets;
+    }
+
+    private static long[] basket(Collection<Long> productIds) {
+        long[] basket = productIds.stream().filter(Objects::nonNull).distinct().mapToLong(Long::longValue).toArray();
+        return basket.length <= MAX_BASKET_SIZE ? basket : new long[0];
+    }
+
+    static final class Matrix {
+        // товар -> (сосед -> число заказов, где они встретились вместе)
+        private final Map<Long, LongFloatHashMap> rows = new HashMap<>();
+        // товар -> число заказов с этим товаром
+        private final LongFloatHashMap counts = new LongFloatHashMap();
+        // товар -> лучшие соседи по убыванию близости; заполняется под read-lock, поэтому конкурентный
+        private final Map<Long, List<Scored>> topNeighbors = new ConcurrentHashMap<>();
+
+        List<Scored> neighbors(Long productId) {
+            return topNeighbors.computeIfAbsent(productId, this::computeNeighbors);
+        }
+
+        private List<Scored> computeNeighbors(Long productId) {
+            LongFloatHashMap row = rows.get(productId);
+            if (row == null) {
+                return List.of();
+            }
+            float own = counts.get(productId);
+            Comparator<Scored> byScore = Comparator.comparingDouble(Scored::score)
+                    .thenComparing(Scored::productId, Comparator.reverseOrder());
+            PriorityQueue<Scored> heap = new PriorityQueue<>(CACHED_NEIGHBORS + 1, byScore);
+            row.forEach((neighbor, together) -> {
+                float score = (float) (together / Math.sqrt(own * counts.get(neighbor)));
+                if (heap.size() < CACHED_NEIGHBORS || byScore.compare(new Scored(neighbor, score), heap.peek()) > 0) {
+                    heap.add(new Scored(neighbor, score));
+                    if (heap.size() > CACHED_NEIGHBORS) {
+                        heap.poll();
+                    }
+                }
+            });
+            List<Scored> result = new ArrayList<>(heap);
+            result.sort(byScore.reversed());
+            return List.copyOf(result);
+        }
+
+        void add(long[] basket) {
+            for (int i = 0; i < basket.length; i++) {
+                // близость к соседям поменялась только у товаров этой корзины, остальные строки
+                // устаревают на один заказ в знаменателе - это допустимо до следующей перестройки
+                topNeighbors.remove(basket[i]);
+                counts.addTo(basket[i], 1f);
+                LongFloatHashMap row = rows.computeIfAbsent(basket[i], k -> new LongFloatHashMap());
+                for (int j = 0; j < basket.length; j++) {
+                    if (i != j) {
+                        row.addTo(basket[j], 1f);
+                    }
+                }
+            }
+        }
+
+        void merge(Matrix other) {
+            counts.addAll(other.counts);
+            other.rows.forEach((productId, row) ->
+                    rows.computeIfAbsent(productId, k -> new LongFloatHashMap(row.size())).addAll(row));
+        }
+    }
+
+    private static final class BuildTask extends RecursiveTask<Matrix> {
+        private final List<long[]> baskets;
+        private final int from;
+        private final int to;
+
+        BuildTask(List<long[]> baskets, int from, int to) {
+            this.baskets = baskets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Matrix compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Matrix matrix = new Matrix();
+                for (int i = from; i < to; i++) {
+                    matrix.add(baskets.get(i));
+                }
+                return matrix;
+            }
+            int middle = (from + to) >>> 1;
+            BuildTask left = new BuildTask(baskets, from, middle);
+            left.fork();
+            Matrix right = new BuildTask(baskets, middle, to).compute();
+            Matrix result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -25,6 +26,7 @@ public class ExcelImportService {
     private final BrandRepository brandRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public ImportResult importFromExcel(MultipartFile file) {
@@ -195,6 +197,7 @@ public class ExcelImportService {
 
     private SheetResult importProducts(Sheet sheet) {
         SheetResult result = new SheetResult("Товары");
+        List<Long> importedIds = new ArrayList<>();
 
         for (int i = 1; i <= sheet.getLastRowNum(); i++) {
             Row row = sheet.getRow(i);
@@ -203,7 +206,7 @@ public class ExcelImportService {
             try {
                 Product product = parseProductFromRow(row, i + 1, result);
                 if (product != null) {
-                    productRepository.save(product);
+                    importedIds.add(productRepository.save(product).getId());
                     result.incrementSuccessCount();
                 }
 
@@ -212,6 +215,9 @@ public class ExcelImportService {
             }
         }
 
+        if (!importedIds.isEmpty()) {
+            eventPublisher.publishEvent(new ProductChangedEvent(importedIds));
+        }
         return result;
     }
 
@@ -1,5 +1,7 @@
 package com.example.clothingstore.service;
 
+import com.example.clothingstore.dto.FavoriteCard;
+import com.example.clothingstore.dto.ProductCard;
 import com.example.clothingstore.model.Favorite;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.User;
@@ -8,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -16,6 +19,7 @@ import java.util.stream.Collectors;
 public class FavoriteService {
 
     private final FavoriteRepository favoriteRepository;
+    private final ProductService productService;
 
     @Transactional
     public Favorite addToFavorites(User user, Product product) {
@@ -56,6 +60,25 @@ public class FavoriteService {
     public List<Favorite> getUserFavorites(User user) {
         return favoriteRepository.findByUserOrderByCreatedAtDesc(user);
     }
+
+    // Страница избранного: два запроса на весь список вместо сущности товара на каждую строку
+    public List<FavoriteCard> getUserFavoriteCards(User user) {
+        List<Object[]> rows = favoriteRepository.findRowsByUser(user);
+        Map<Long, ProductCard> cards = productService.getCardsIncludingDeleted(
+                rows.stream().map(row -> (Long) row[1]).distinct().toList());
+        List<FavoriteCard> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ProductCard card = cards.get((Long) row[1]);
+            if (card != null) {
+                result.add(new FavoriteCard((Long) row[0], (LocalDateTime) row[2], card));
+            }
+        }
+        return result;
+    }
+
+    public Set<Long> getFavoriteProductIds(User user) {
+        return new HashSet<>(favoriteRepository.findProductIdsByUser(user));
+    }
     public Map<Long, Boolean> getFavoriteStatusForProducts(User user, List<Long> productIds) {
         Map<Long, Boolean> result = new HashMap<>();
         List<Favorite> favorites = favoriteRepository.findByUserAndProductIdIn(user, productIds);
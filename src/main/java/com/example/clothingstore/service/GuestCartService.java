@@ -0,0 +1,301 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.model.CartItem;
+import com.example.clothingstore.model.Product;
+import com.example.clothingstore.repository.ProductRepository;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Корзина гостя целиком в подписанной cookie: на сервере для неё ни сессии, ни строк cart_item.
+ * Значение - base64url("1|выдано|id,кол-во,размер,цвет;...") + "." + base64url(HMAC-SHA256),
+ * подпись обрезана до 16 байт. Cookie с неверной подписью, устаревшая или испорченная читается
+ * как пустая корзина. Снятые с продажи товары отбрасываются при показе, остаток проверяется
+ * при добавлении и изменении количества - по всем строкам товара сразу (размеры и цвета делят
+ * один остаток), а при входе строки сверяются с карточками товаров, одной пачкой переносятся
+ * в корзину пользователя (CartService) и только после этого cookie стирается.
+ * Id строки гостевой корзины для форм - её номер, начиная с 1.
+ */
+@Slf4j
+@Service
+public class GuestCartService {
+
+    static final String COOKIE_NAME = "guest_cart";
+    private static final String VERSION = "1";
+    private static final int MAX_LINES = 30;
+    private static final int MAX_QUANTITY = 99;
+    private static final int SIGNATURE_BYTES = 16;
+    private static final Duration MAX_AGE = Duration.ofDays(30);
+
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final CartService cartService;
+    private final SecretKeySpec key;
+
+    public GuestCartService(ProductRepository productRepository, ProductService productService, CartService cartService,
+                            @Value("${app.guest-cart.secret:}") String secret,
+                            @Value("${app.jwt.secret}") String jwtSecret) {
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.cartService = cartService;
+        this.key = new SecretKeySpec(secret.isBlank() ? deriveKey(jwtSecret) : secret.getBytes(StandardCharsets.UTF_8),
+                "HmacSHA256");
+    }
+
+    // Без отдельного секрета ключ выводится из секрета JWT с меткой назначения, сам он для подписи не используется
+    private static byte[] deriveKey(String jwtSecret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(jwtSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal("guest-cart".getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 недоступен", e);
+        }
+    }
+
+    public List<Line> read(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return List.of();
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                return decode(cookie.getValue());
+            }
+        }
+        return List.of();
+    }
+
+    public void write(HttpServletRequest request, HttpServletResponse response, List<Line> lines) {
+        if (lines.isEmpty()) {
+            clear(request, response);
+            return;
+        }
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, encode(lines), MAX_AGE).toString());
+    }
+
+    public void clear(HttpServletRequest request, HttpServletResponse response) {
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, "", Duration.ZERO).toString());
+    }
+
+    /**
+     * Добавляет количество к строке товара с таким размером и цветом. Пустой результат -
+     * корзина не изменилась: превышен остаток товара или число строк.
+     */
+    public Optional<List<Line>> add(List<Line> lines, Long productId, int quantity, String size, String color, int stock) {
+        List<Line> result = new ArrayList<>(lines);
+        for (int i = 0; i < result.size(); i++) {
+            Line line = result.get(i);
+            if (line.matches(productId, size, color)) {
+                int total = line.quantity() + quantity;
+                if (!fits(result, i, productId, total, stock)) {
+                    return Optional.empty();
+                }
+                result.set(i, line.withQuantity(total));
+                return Optional.of(result);
+            }
+        }
+        if (result.size() >= MAX_LINES || !fits(result, -1, productId, quantity, stock)) {
+            return Optional.empty();
+        }
+        result.add(new Line(productId, quantity, size, color));
+        return Optional.of(result);
+    }
+
+    /**
+     * Меняет количество в строке, 0 и меньше удаляет её. Пустой результат - превышен остаток товара.
+     */
+    public Optional<List<Line>> update(List<Line> lines, long itemId, int quantity, int stock) {
+        int index = (int) itemId - 1;
+        if (index < 0 || index >= lines.size()) {
+            return Optional.of(lines);
+        }
+        List<Line> result = new ArrayList<>(lines);
+        if (quantity <= 0) {
+            result.remove(index);
+            return Optional.of(result);
+        }
+        Line line = result.get(index);
+        if (!fits(result, index, line.productId(), quantity, stock)) {
+            return Optional.empty();
+        }
+        result.set(index, line.withQuantity(quantity));
+        return Optional.of(result);
+    }
+
+    public List<Line> remove(List<Line> lines, long itemId) {
+        return update(lines, itemId, 0, 0).orElse(lines);
+    }
+
+    // Количество в строке index вместе с остальными строками того же товара не больше остатка
+    private static boolean fits(List<Line> lines, int index, Long productId, int quantity, int stock) {
+        int others = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (i != index && lines.get(i).productId().equals(productId)) {
+                others += lines.get(i).quantity();
+            }
+        }
+        return quantity <= MAX_QUANTITY && others + quantity <= stock;
+    }
+
+    public Optional<Line> line(List<Line> lines, long itemId) {
+        return itemId >= 1 && itemId <= lines.size() ? Optional.of(lines.get((int) itemId - 1)) : Optional.empty();
+    }
+
+    // Строки для шаблона корзины: не сущности, id - номер строки
+    public List<CartItem> toItems(List<Line> lines) {
+        if (lines.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Product> products = productRepository.findAllById(lines.stream().map(Line::productId).distinct().toList())
+                .stream()
+                .filter(product -> !product.isDeleted())
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            Product product = products.get(line.productId());
+            if (product != null) {
+                CartItem item = new CartItem();
+                item.setId((long) i + 1);
+                item.setProduct(product);
+                item.setQuantity(line.quantity());
+                item.setSize(line.size());
+                item.setColor(line.color());
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Переносит гостевую корзину в корзину пользователя после входа: снятые с продажи товары
+     * отбрасываются, количество всех строк товара ограничивается его остатком. Cookie стирается
+     * только после переноса - если он упал, гостевая корзина остаётся. Возвращает число перенесённых строк.
+     */
+    public int mergeOnLogin(String email, HttpServletRequest request, HttpServletResponse response) {
+        List<Line> lines = read(request);
+        if (lines.isEmpty()) {
+            return 0;
+        }
+        try {
+            Map<Long, ProductCard> cards = productService.getProductsByIds(
+                            lines.stream().map(Line::productId).distinct().toList())
+                    .stream()
+                    .collect(Collectors.toMap(ProductCard::id, Function.identity()));
+            List<CartService.MergedItem> items = lines.stream()
+                    .filter(line -> cards.containsKey(line.productId()) && cards.get(line.productId()).isInStock())
+                    .map(line -> new CartService.MergedItem(line.productId(), line.quantity(), line.size(), line.color(),
+                            cards.get(line.productId()).stockQuantity()))
+                    .toList();
+            int merged = cartService.mergeItems(email, items);
+            clear(request, response);
+            return merged;
+        } catch (Exception e) {
+            log.error("Не удалось перенести гостевую корзину пользователю {}", email, e);
+            return 0;
+        }
+    }
+
+    private ResponseCookie cookie(HttpServletRequest request, String value, Duration maxAge) {
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    String encode(List<Line> lines) {
+        StringBuilder payload = new StringBuilder(VERSION).append('|')
+                .append(System.currentTimeMillis() / 1000).append('|');
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            payload.append(i == 0 ? "" : ";")
+                    .append(line.productId()).append(',')
+                    .append(line.quantity()).append(',')
+                    .append(escape(line.size())).append(',')
+                    .append(escape(line.color()));
+        }
+        byte[] bytes = payload.toString().getBytes(StandardCharsets.UTF_8);
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        return base64.encodeToString(bytes) + "." + base64.encodeToString(sign(bytes));
+    }
+
+    List<Line> decode(String token) {
+        try {
+            int dot = token.indexOf('.');
+            if (dot < 0) {
+                return List.of();
+            }
+            Base64.Decoder base64 = Base64.getUrlDecoder();
+            byte[] payload = base64.decode(token.substring(0, dot));
+            if (!MessageDigest.isEqual(sign(payload), base64.decode(token.substring(dot + 1)))) {
+                return List.of();
+            }
+            String[] parts = new String(payload, StandardCharsets.UTF_8).split("\\|", -1);
+            long issuedAt = Long.parseLong(parts[1]);
+            if (!VERSION.equals(parts[0]) || System.currentTimeMillis() / 1000 - issuedAt > MAX_AGE.toSeconds()) {
+                return List.of();
+            }
+            List<Line> lines = new ArrayList<>();
+            for (String item : parts[2].isEmpty() ? new String[0] : parts[2].split(";")) {
+                String[] fields = item.split(",", -1);
+                int quantity = Integer.parseInt(fields[1]);
+                if (quantity > 0 && quantity <= MAX_QUANTITY && lines.size() < MAX_LINES) {
+                    lines.add(new Line(Long.parseLong(fields[0]), quantity, unescape(fields[2]), unescape(fields[3])));
+                }
+            }
+            return lines;
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return Arrays.copyOf(mac.doFinal(payload), SIGNATURE_BYTES);
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 недоступен", e);
+        }
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String unescape(String value) {
+        return value.isEmpty() ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    public record Line(Long productId, int quantity, String size, String color) {
+        boolean matches(Long productId, String size, String color) {
+            return this.productId.equals(productId) && Objects.equals(this.size, size) && Objects.equals(this.color, color);
+        }
+
+        Line withQuantity(int quantity) {
+            return new Line(productId, quantity, size, color);
+        }
+    }
+}
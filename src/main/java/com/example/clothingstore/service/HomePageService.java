@@ -0,0 +1,162 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.HomePageSnapshot;
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.dto.SafeProduct;
+import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.ProductTagsConverter;
+import com.example.clothingstore.repository.ProductRepository;
+import com.example.clothingstore.util.SingleFlightCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Блоки главной страницы (новинки, хиты, распродажа), собранные заранее. Снимок пересобирается
+ * в фоне раз в refresh-interval, а также после изменения товаров, которые в него входят или
+ * могут войти; параллельные пересборки объединяются (SingleFlightCache). Запрос /home в БД
+ * не ходит - только самый первый, если стартовая сборка ещё не закончилась, ждёт её.
+ * Если сборка упала, отдаётся последний удачный снимок.
+ */
+@Slf4j
+@Service
+public class HomePageService {
+
+    private static final int SECTION_SIZE = 8;
+    private static final String SNAPSHOT_KEY = "home";
+    private static final int SECTION_TAGS = ProductTagsConverter.maskOf(List.of(ProductTag.NEW_ARRIVAL, ProductTag.BESTSELLER));
+
+    private final ProductService productService;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final SingleFlightCache<String, HomePageSnapshot> cache;
+    // Последний удачно собранный снимок; null - ещё ни одного
+    private final AtomicReference<HomePageSnapshot> snapshot = new AtomicReference<>();
+    // Начинается со времени старта: после перезапуска версии, а с ними и ETag /home, не повторяются
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    // Изменённые товары не из снимка: могут ли они попасть в блоки, проверяется одним запросом на пачку
+    private final Set<Long> pendingCandidates = ConcurrentHashMap.newKeySet();
+
+    public HomePageService(ProductService productService, ProductRepository productRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${app.home.refresh-interval-ms:300000}") long refreshIntervalMs) {
+        this.productService = productService;
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.cache = new SingleFlightCache<>(Duration.ofMillis(refreshIntervalMs), 1);
+    }
+
+    public HomePageSnapshot getSnapshot() {
+        HomePageSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        try {
+            return cache.get(SNAPSHOT_KEY, this::build);
+        } catch (Exception e) {
+            log.error("Не удалось собрать снимок главной страницы", e);
+            return HomePageSnapshot.empty();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.home.refresh-interval-ms:300000}",
+            initialDelayString = "${app.home.refresh-interval-ms:300000}")
+    public void refresh() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        // Счётчики просмотров в блоки главной не входят
+        if (event.viewsOnly() || dirty.get() || event.productIds().isEmpty()) {
+            return;
+        }
+        HomePageSnapshot current = snapshot.get();
+        if (current != null && event.productIds().stream().anyMatch(current.productIds()::contains)) {
+            dirty.set(true);
+        } else {
+            pendingCandidates.addAll(event.productIds());
+        }
+    }
+
+    // Изменения копятся и применяются одной пересборкой, а не на каждое событие. Пока идёт
+    // сборка, начатая до изменения, ждём её конца: присоединившись к ней, изменение бы потерялось
+    @Scheduled(fixedDelayString = "${app.home.dirty-check-interval-ms:2000}")
+    public void rebuildIfDirty() {
+        if (!dirty.get() && !pendingCandidates.isEmpty()) {
+            List<Long> ids = new ArrayList<>(pendingCandidates);
+            pendingCandidates.removeAll(ids);
+            try {
+                if (productRepository.countHomeSectionCandidates(ids, SECTION_TAGS) > 0) {
+                    dirty.set(true);
+                }
+            } catch (Exception e) {
+                log.error("Не удалось проверить изменённые товары для главной страницы", e);
+                pendingCandidates.addAll(ids);
+            }
+        }
+        if (dirty.get() && !cache.isLoading(SNAPSHOT_KEY) && dirty.compareAndSet(true, false)) {
+            // Пересборка начнётся позже этих изменений и учтёт их
+            pendingCandidates.clear();
+            rebuild();
+        }
+    }
+
+    // Пересборка в фоне: до её окончания читатели получают прежний снимок, параллельные вызовы объединяются
+    public void rebuild() {
+        cache.refresh(SNAPSHOT_KEY, this::build).exceptionally(e -> {
+            HomePageSnapshot current = snapshot.get();
+            log.error("Не удалось собрать снимок главной страницы, остаётся v{}", current != null ? current.version() : 0, e);
+            return null;
+        });
+    }
+
+    private HomePageSnapshot build() {
+        HomePageSnapshot fresh = transactionTemplate.execute(status -> new HomePageSnapshot(
+                version.incrementAndGet(),
+                LocalDateTime.now(),
+                section("newArrivals", () -> productService.getNewArrivals(SECTION_SIZE)),
+                section("bestSellers", () -> productService.getBestSellers(SECTION_SIZE)),
+                section("saleProducts", () -> productService.getSaleProducts(SECTION_SIZE))));
+        snapshot.set(fresh);
+        log.info("Снимок главной страницы v{} собран - New: {}, Best: {}, Sale: {}", fresh.version(),
+                fresh.newArrivals().size(), fresh.bestSellers().size(), fresh.saleProducts().size());
+        return fresh;
+    }
+
+    private List<SafeProduct> section(String type, Supplier<List<ProductCard>> loader) {
+        List<SafeProduct> safeProducts = new ArrayList<>();
+        for (ProductCard product : loader.get()) {
+            try {
+                safeProducts.add(new SafeProduct(product));
+            } catch (Exception e) {
+                log.warn("Skipping problematic product {} in {}: {}", product.id(), type, e.getMessage());
+            }
+        }
+        return List.copyOf(safeProducts);
+    }
+}
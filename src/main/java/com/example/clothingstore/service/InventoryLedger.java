@@ -0,0 +1,299 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.ProductTagsConverter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Остатки в памяти для распродаж (app.inventory-ledger.enabled): доступное количество товара -
+ * AtomicLong, резерв - CAS без блокировок, товары разложены по шардам по id. Под горячий товар
+ * оформления не выстраиваются в очередь за блокировкой строки products.
+ * <p>
+ * Резерв (hold) живёт hold-ttl-ms: заказ подтверждает его после коммита, откат или истёкший
+ * TTL (упавший поток, брошенное оформление) возвращают количество. Подтверждённые списания
+ * копятся и пишутся в БД пачкой раз в flush-interval-ms одним UPDATE ... FROM (VALUES ...).
+ * Остатки, изменённые в БД мимо реестра (админка, импорт), подтягиваются по ProductChangedEvent:
+ * к доступному прибавляется разница между БД и тем, что реестр ожидал там увидеть.
+ * Ещё не записанные списания при падении процесса теряются - остаток в БД окажется завышен.
+ */
+@Slf4j
+@Service
+public class InventoryLedger {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final long holdTtlMs;
+    private final Map<Long, Slot>[] shards;
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+    private final AtomicLong holdIds = new AtomicLong();
+    private final Set<Long> resyncQueue = ConcurrentHashMap.newKeySet();
+
+    @SuppressWarnings("unchecked")
+    public InventoryLedger(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                           @Value("${app.inventory-ledger.enabled:false}") boolean enabled,
+                           @Value("${app.inventory-ledger.hold-ttl-ms:600000}") long holdTtlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.holdTtlMs = holdTtlMs;
+        // Шардов с запасом относительно ядер, чтобы потоки реже делили одну таблицу
+        int shardCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) - 1) << 1;
+        this.shards = new Map[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Товары распродажи загружаем заранее - первый покупатель не ждёт чтения остатка
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                // Один запрос на все товары, а не по запросу на товар через slot()
+                int[] loaded = new int[1];
+                jdbcTemplate.query("SELECT id, COALESCE(stock_quantity, 0) FROM products " +
+                                "WHERE deleted = false AND tag_mask & ? <> 0",
+                        rs -> {
+                            // Слот, который уже создал покупатель, не трогаем - в нём могут быть резервы
+                            shard(rs.getLong(1)).putIfAbsent(rs.getLong(1), new Slot(rs.getLong(2)));
+                            loaded[0]++;
+                        }, ProductTagsConverter.maskOf(ProductTag.SALE));
+                log.info("Реестр остатков: загружено {} товаров распродажи", loaded[0]);
+            } catch (Exception e) {
+                log.error("Не удалось загрузить остатки товаров распродажи", e);
+            }
+        });
+    }
+
+    /**
+     * Резервирует количество по всем товарам или ни по одному. Пустой failedProducts -
+     * резерв создан, его нужно подтвердить (confirm) или вернуть (release).
+     */
+    public HoldResult hold(Map<Long, Integer> quantities) {
+        List<Map.Entry<Long, Integer>> taken = new ArrayList<>(quantities.size());
+        Set<Long> failed = new HashSet<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Slot slot = slot(entry.getKey());
+            if (slot != null && slot.tryTake(entry.getValue())) {
+                taken.add(entry);
+            } else {
+                failed.add(entry.getKey());
+            }
+        }
+        if (!failed.isEmpty()) {
+            taken.forEach(entry -> slot(entry.getKey()).available.addAndGet(entry.getValue()));
+            return new HoldResult(0, failed);
+        }
+        long holdId = holdIds.incrementAndGet();
+        holds.put(holdId, new Hold(Map.copyOf(quantities), System.currentTimeMillis() + holdTtlMs));
+        return new HoldResult(holdId, Set.of());
+    }
+
+    /**
+     * Списание после коммита заказа. Если резерв уже вернулся по TTL, а заказ всё же
+     * оформлен, количество забирается из доступного повторно.
+     */
+    public void confirm(long holdId, Map<Long, Integer> quantities) {
+        if (holds.remove(holdId) == null) {
+            log.warn("Резерв {} подтверждён после истечения TTL, остаток может уйти в минус", holdId);
+            quantities.forEach((productId, quantity) -> {
+                Slot slot = slot(productId);
+                if (slot != null) {
+                    slot.available.addAndGet(-quantity);
+                }
+            });
+        }
+        quantities.forEach((productId, quantity) -> {
+            Slot slot = slot(productId);
+            if (slot != null) {
+                slot.unflushed.add(quantity);
+            }
+        });
+    }
+
+    public void release(long holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold != null) {
+            hold.quantities().forEach((productId, quantity) -> slot(productId).available.addAndGet(quantity));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!enabled || event.viewsOnly()) {
+            return;
+        }
+        for (Long productId : event.productIds()) {
+            if (shard(productId).containsKey(productId)) {
+                resyncQueue.add(productId);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.inventory-ledger.sweep-interval-ms:10000}")
+    public void releaseExpired() {
+        long now = System.currentTimeMillis();
+        int released = 0;
+        for (Map.Entry<Long, Hold> entry : holds.entrySet()) {
+            if (entry.getValue().expiresAt() < now && holds.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().quantities().forEach((productId, quantity) ->
+                        slot(productId).available.addAndGet(quantity));
+                released++;
+            }
+        }
+        if (released > 0) {
+            log.info("Реестр остатков: возвращено {} просроченных резервов", released);
+        }
+    }
+
+    // Запись списаний и сверка с БД идут в одном потоке, поэтому expectedStock не гоняется сам с собой
+    @Scheduled(fixedDelayString = "${app.inventory-ledger.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (!enabled) {
+            return;
+        }
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Map<Long, Slot> shard : shards) {
+            shard.forEach((productId, slot) -> {
+                long delta = slot.unflushed.sumThenReset();
+                if (delta > 0) {
+                    deltas.put(productId, delta);
+                }
+            });
+        }
+
+        List<Long> flushed = new ArrayList<>(deltas.size());
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(deltas.entrySet());
+        for (int from = 0; from < entries.size(); from += BATCH_SIZE) {
+            List<Map.Entry<Long, Long>> batch = entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+            try {
+                update(batch);
+                batch.forEach(entry -> {
+                    shard(entry.getKey()).get(entry.getKey()).expectedStock -= entry.getValue();
+                    flushed.add(entry.getKey());
+                });
+            } catch (Exception e) {
+                log.error("Не удалось записать списания остатков для {} товаров, повторим при следующем сбросе", batch.size(), e);
+                batch.forEach(entry -> shard(entry.getKey()).get(entry.getKey()).unflushed.add(entry.getValue()));
+            }
+        }
+        if (!flushed.isEmpty()) {
+            eventPublisher.publishEvent(ProductChangedEvent.stock(flushed));
+        }
+        resync();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void resync() {
+        List<Long> ids = new ArrayList<>(resyncQueue);
+        if (ids.isEmpty()) {
+            return;
+        }
+        resyncQueue.removeAll(ids);
+        try {
+            jdbcTemplate.query("SELECT id, stock_quantity, deleted FROM products WHERE id = ANY(?)",
+                    rs -> {
+                        Slot slot = shard(rs.getLong(1)).get(rs.getLong(1));
+                        long stock = rs.getBoolean(3) ? 0 : rs.getLong(2);
+                        if (slot != null && stock != slot.expectedStock) {
+                            slot.available.addAndGet(stock - slot.expectedStock);
+                            slot.expectedStock = stock;
+                        }
+                    }, (Object) ids.toArray(Long[]::new));
+        } catch (Exception e) {
+            log.error("Не удалось сверить остатки {} товаров с БД", ids.size(), e);
+            resyncQueue.addAll(ids);
+        }
+    }
+
+    private void update(List<Map.Entry<Long, Long>> batch) {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE products p SET stock_quantity = p.stock_quantity - v.delta FROM (VALUES ");
+        Object[] args = new Object[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?::bigint, ?::int)");
+            args[i * 2] = batch.get(i).getKey();
+            args[i * 2 + 1] = batch.get(i).getValue().intValue();
+        }
+        sql.append(") AS v(id, delta) WHERE p.id = v.id");
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private Map<Long, Slot> shard(Long productId) {
+        return shards[Long.hashCode(productId) & (shards.length - 1)];
+    }
+
+    // null - товара нет или он снят с продажи
+    private Slot slot(Long productId) {
+        Map<Long, Slot> shard = shard(productId);
+        Slot slot = shard.get(productId);
+        if (slot != null) {
+            return slot;
+        }
+        List<Long> stock = jdbcTemplate.queryForList(
+                "SELECT COALESCE(stock_quantity, 0) FROM products WHERE id = ? AND deleted = false", Long.class, productId);
+        if (stock.isEmpty()) {
+            return null;
+        }
+        return shard.computeIfAbsent(productId, id -> new Slot(stock.get(0)));
+    }
+
+    private static final class Slot {
+        private final AtomicLong available;
+        private final LongAdder unflushed = new LongAdder();
+        // Остаток, который реестр ожидает увидеть в БД; меняется только в flush()
+        private volatile long expectedStock;
+
+        Slot(long stock) {
+            this.available = new AtomicLong(stock);
+            this.expectedStock = stock;
+        }
+
+        boolean tryTake(int quantity) {
+            while (true) {
+                long current = available.get();
+                if (current < quantity) {
+                    return false;
+                }
+                if (available.compareAndSet(current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private record Hold(Map<Long, Integer> quantities, long expiresAt) {
+    }
+
+    public record HoldResult(long holdId, Set<Long> failedProducts) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.clothingstore.service;
+
+import java.util.Collection;
+
+public record OrderPlacedEvent(Long orderId, Collection<Long> productIds) {
+}
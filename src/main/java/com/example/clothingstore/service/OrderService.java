@@ -1,15 +1,20 @@
 package com.example.clothingstore.service;
+import com.example.clothingstore.dto.CursorPage;
 import com.example.clothingstore.model.Order;
 import com.example.clothingstore.model.OrderStatus;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.repository.OrderRepository;
 import com.example.clothingstore.repository.ProductRepository;
+import com.example.clothingstore.util.KeysetCursor;
 import com.lowagie.text.*;
 import com.lowagie.text.Font;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.*;
@@ -18,6 +23,9 @@ import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,7 +33,9 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -168,6 +178,46 @@ public class OrderService {
     public Page<Order> getOrdersByStatus(OrderStatus status, Pageable pageable) {
         return orderRepository.findByStatusAndDeletedFalse(status, pageable);
     }
+
+    // Только NOT NULL колонки: условие курсора (a > ? OR a = ? AND id > ?) пропускает строки с NULL
+    private static final Set<String> ORDER_SORT_FIELDS = Set.of("id", "orderDate", "orderNumber");
+
+    @Transactional(readOnly = true)
+    public CursorPage<Order> scrollOrders(String search, OrderStatus status, Sort sort, int size,
+                                          String after, boolean exactCount) {
+        Sort stable = KeysetCursor.stableSort(sort, ORDER_SORT_FIELDS, Sort.Order.desc("orderDate"));
+        Specification<Order> spec = activeOrders(search, status);
+        Window<Order> window = orderRepository.findBy(spec, query -> query
+                .sortBy(stable)
+                .limit(size)
+                .scroll(KeysetCursor.decode(after, Order.class)));
+        // Оценка reltuples - по всей таблице, поэтому для отфильтрованного списка итог не показываем
+        boolean filtered = status != null || (search != null && !search.isBlank());
+        Long total = exactCount ? Long.valueOf(orderRepository.count(spec))
+                : filtered ? null : Long.valueOf(orderRepository.estimateRowCount());
+        return new CursorPage<>(window, size, stable, total, exactCount);
+    }
+
+    private static Specification<Order> activeOrders(String search, OrderStatus status) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.isFalse(root.get("deleted")));
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (search != null && !search.isBlank()) {
+                String pattern = "%" + search.trim().toLowerCase() + "%";
+                Join<Object, Object> user = root.join("user", JoinType.LEFT);
+                predicates.add(cb.or(
+                        cb.like(cb.lower(root.get("orderNumber")), pattern),
+                        cb.like(cb.lower(user.get("firstName")), pattern),
+                        cb.like(cb.lower(user.get("lastName")), pattern),
+                        cb.like(cb.lower(user.get("email")), pattern),
+                        cb.like(cb.lower(root.get("shippingAddress")), pattern)));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
     public Page<Order> getArchivedOrders(Pageable pageable) {
         return orderRepository.findByDeletedTrue(pageable);
     }
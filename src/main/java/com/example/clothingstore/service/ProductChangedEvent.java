@@ -0,0 +1,28 @@
+package com.example.clothingstore.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Товары изменились. viewsOnly - поменялись только счётчики просмотров (сброс ProductViewCounter):
+ * состав выборок каталога от этого не меняется, только порядок по популярности.
+ * stockOnly - поменялись только остатки (резерв, списание при заказе), цены те же.
+ */
+public record ProductChangedEvent(Collection<Long> productIds, boolean viewsOnly, boolean stockOnly) {
+
+    public ProductChangedEvent(Collection<Long> productIds) {
+        this(productIds, false, false);
+    }
+
+    public static ProductChangedEvent of(Long productId) {
+        return new ProductChangedEvent(List.of(productId));
+    }
+
+    public static ProductChangedEvent views(Collection<Long> productIds) {
+        return new ProductChangedEvent(productIds, true, false);
+    }
+
+    public static ProductChangedEvent stock(Collection<Long> productIds) {
+        return new ProductChangedEvent(productIds, false, true);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.clothingstore.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Заполнение производных колонок products при старте, если скрипты из db/migration не прогоняли
+ * вручную: ddl-auto создаёт колонки пустыми, и без заполнения фильтры, распродажа и карточки
+ * молча теряют все старые товары. Сохранённые приложением строки заполнены всегда, поэтому
+ * условие "колонка пуста" отбирает только строки, записанные до её появления.
+ * <p>
+ * Теги переносятся из product_tags один раз - после переноса таблица помечается комментарием,
+ * и следующие старты её не трогают (product_tags приложение больше не пишет, поэтому повторный
+ * перенос вернул бы снятые с товаров теги). Частичные индексы из скриптов создаются здесь же.
+ * Ошибка останавливает запуск.
+ */
+@Slf4j
+@Service
+public class ProductColumnsBackfill implements ApplicationRunner {
+
+    static final String MIGRATED_MARK = "migrated to products.tag_mask";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProductColumnsBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        backfillTagMask();
+        backfillColorNames();
+        backfillSizeList();
+        backfillDiscounts();
+        createIndexes();
+    }
+
+    private void backfillTagMask() {
+        Boolean pending = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('product_tags') IS NOT NULL " +
+                "AND obj_description(to_regclass('product_tags'), 'pg_class') IS DISTINCT FROM ?",
+                Boolean.class, MIGRATED_MARK);
+        if (!Boolean.TRUE.equals(pending)) {
+            return;
+        }
+        // Бит = ordinal() ProductTag, как в V007
+        int updated = jdbcTemplate.update("""
+                UPDATE products p SET tag_mask = t.mask
+                FROM (SELECT product_id,
+                             bit_or(CASE tag
+                                        WHEN 'SALE' THEN 1
+                                        WHEN 'NEW_ARRIVAL' THEN 2
+                                        WHEN 'BESTSELLER' THEN 4
+                                        WHEN 'REGULAR_PRICE' THEN 8
+                                        WHEN 'LIMITED_EDITION' THEN 16
+                                        ELSE 0 END) AS mask
+                      FROM product_tags GROUP BY product_id) t
+                WHERE p.id = t.product_id AND p.tag_mask = 0""");
+        jdbcTemplate.execute("COMMENT ON TABLE product_tags IS '" + MIGRATED_MARK + "'");
+        log.info("Теги перенесены из product_tags в tag_mask: {} товаров", updated);
+    }
+
+    private void backfillColorNames() {
+        int colored = jdbcTemplate.update("""
+                UPDATE products p SET color_names = ARRAY(
+                    SELECT c.name FROM (
+                        SELECT lower(trim(pc.name)) AS name, min(pc.id) AS ord
+                        FROM product_colors pc
+                        WHERE pc.product_id = p.id AND trim(pc.name) <> ''
+                        GROUP BY 1) c
+                    ORDER BY c.ord)
+                WHERE p.color_names IS NULL""");
+        if (colored > 0) {
+            log.info("Заполнены color_names: {} товаров", colored);
+        }
+    }
+
+    // Та же нормализация, что в Product.normalizeSize и V004: trim, верхний регистр, без пробелов и повторов
+    private void backfillSizeList() {
+        int sized = jdbcTemplate.update("""
+                UPDATE products p SET size_list = ARRAY(
+                    SELECT s.size FROM (
+                        SELECT upper(regexp_replace(part, '\\s+', '', 'g')) AS size, min(ord) AS ord
+                        FROM unnest(string_to_array(coalesce(p.sizes, ''), ',')) WITH ORDINALITY AS t(part, ord)
+                        WHERE trim(part) <> ''
+                        GROUP BY 1) s
+                    ORDER BY s.ord)
+                WHERE p.size_list IS NULL""");
+        if (sized > 0) {
+            log.info("Заполнены size_list: {} товаров", sized);
+        }
+    }
+
+    // Та же формула, что в Product.syncDiscount и V005
+    private void backfillDiscounts() {
+        int discounted = jdbcTemplate.update("""
+                UPDATE products SET
+                    discount_amount = CASE WHEN original_price > 0 AND original_price > price
+                                           THEN original_price - price ELSE 0 END,
+                    discount_percent = CASE WHEN original_price > 0 AND original_price > price
+                                            THEN round((original_price - price) / original_price, 2) * 100 ELSE 0 END
+                WHERE discount_amount IS NULL OR discount_percent IS NULL""");
+        if (discounted > 0) {
+            log.info("Заполнены скидки: {} товаров", discounted);
+        }
+    }
+
+    // Как в V003-V005 и V007: без этих индексов фильтры, сортировки каталога и распродажа читают всю таблицу
+    private void createIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_category_price " +
+                "ON products(category_id, price) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_brand_price " +
+                "ON products(brand_id, price) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_audience_price " +
+                "ON products(target_audience, price) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_created_at " +
+                "ON products(created_at DESC, id DESC) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_product_colors_product ON product_colors(product_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_size_list " +
+                "ON products USING gin (size_list) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_color_names " +
+                "ON products USING gin (color_names) WHERE deleted = false");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_discount_percent " +
+                "ON products(discount_percent DESC, id DESC) WHERE deleted = false AND discount_percent > 0");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_products_active_discount_amount " +
+                "ON products(discount_amount DESC, id DESC) WHERE deleted = false AND discount_amount > 0");
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductDetailView;
+import com.example.clothingstore.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш страниц товаров: карточка, картинки, цвета, размеры и похожие товары собираются
+ * один раз в неизменяемый ProductDetailView. Запись сбрасывается при изменении самого
+ * товара или любого из его похожих, а похожие дополнительно обновляются по TTL, потому что
+ * зависят от заказов и каталога. Вытеснение - LRU по числу записей.
+ * Сброс просмотров записи не трогает: число просмотров досчитывается по ProductViewCounter.
+ */
+@Service
+public class ProductDetailService {
+
+    private final ProductService productService;
+    private final ProductViewCounter viewCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlMillis;
+    private final Map<Long, Entry> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ProductDetailService(ProductService productService, ProductViewCounter viewCounter,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.product-detail.cache-size:5000}") int cacheSize,
+                                @Value("${app.product-detail.ttl-ms:600000}") long ttlMillis) {
+        this.productService = productService;
+        this.viewCounter = viewCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public ProductDetailView getDetail(Long productId) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(productId);
+        }
+        if (entry != null && entry.expiresAt > now) {
+            return entry.view;
+        }
+
+        // Сборка вне блокировки: параллельные промахи по одному товару соберут его дважды, это дешевле ожидания
+        long generation = invalidations.get();
+        ProductDetailView view = transactionTemplate.execute(status -> {
+            Product product = productService.getProductByIdIgnoreDeleted(productId);
+            return ProductDetailView.of(product, productService.getRelatedProducts(product));
+        });
+        // Снимаем после чтения товара: просмотры, записанные между чтением и снимком, не покажутся до
+        // пересборки, зато число на странице не уменьшается
+        long flushedViews = viewCounter.flushedViews(productId);
+        synchronized (cache) {
+            // Если во время сборки что-то поменялось, собранное могло устареть - не кладём
+            if (invalidations.get() == generation) {
+                cache.put(productId, new Entry(view, now + ttlMillis, flushedViews));
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Просмотры товара в БД на сейчас: значение из собранной карточки плюс то, что счётчик
+     * записал после сборки. Ещё не записанные просмотры добавляет ProductService.recordView.
+     */
+    public long storedViews(ProductDetailView view) {
+        Long productId = view.product().id();
+        long built = view.product().views() != null ? view.product().views() : 0;
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(productId);
+        }
+        // Не из кэша - собрана только что, после сборки ничего не записано
+        if (entry == null || entry.view != view) {
+            return built;
+        }
+        return built + viewCounter.flushedViews(productId) - entry.flushedViews;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.viewsOnly()) {
+            return;
+        }
+        Set<Long> changed = new HashSet<>(event.productIds());
+        synchronized (cache) {
+            invalidations.incrementAndGet();
+            cache.values().removeIf(entry -> entry.view.mentionsAny(changed));
+        }
+    }
+
+    private record Entry(ProductDetailView view, long expiresAt, long flushedViews) {
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.model.Product;
+import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.ProductTagsConverter;
+import com.example.clothingstore.model.TargetAudience;
+import com.example.clothingstore.repository.ProductRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Резидентный индекс каталога: битовые карты по категории, бренду, аудитории, тегу,
+ * цвету и размеру плюс порядки сортировки (int[] порядковых номеров). Пока индекс не построен,
+ * {@link #findIds} возвращает пустой Optional и вызывающий код идёт в БД.
+ * <p>
+ * Порядки сортируются целиком только при построении; изменённые товары вынимаются из порядков,
+ * где поменялся их ключ, и вставляются слиянием - один линейный проход на поле. Сброс
+ * просмотров поэтому трогает только порядок "views" и не меняет версию индекса.
+ */
+@Service
+public class ProductFilterEngine extends ResidentProductIndex<ProductFilterEngine.Index, ProductFilterEngine.ProductDoc> {
+
+    private static final Map<String, Comparator<ProductDoc>> SORT_ORDERS = sortOrders();
+
+    private final ProductRepository productRepository;
+    private final AtomicLong version = new AtomicLong();
+
+    public ProductFilterEngine(ProductRepository productRepository) {
+        super(new Index());
+        this.productRepository = productRepository;
+    }
+
+    // Растёт при каждом изменении индекса, используется как часть ключа кэшей поверх движка
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    protected String title() {
+        return "Индекс фильтров каталога";
+    }
+
+    @Override
+    protected Index build() {
+        Index fresh = new Index();
+        loadDocs(null).values().forEach(fresh::upsert);
+        fresh.sortAll();
+        return fresh;
+    }
+
+    @Override
+    protected String describe(Index index) {
+        return index.alive.cardinality() + " товаров";
+    }
+
+    @Override
+    protected Map<Long, ProductDoc> load(List<Long> ids) {
+        return loadDocs(ids);
+    }
+
+    @Override
+    protected void apply(Index index, Long id, ProductDoc doc) {
+        if (doc != null) {
+            index.upsert(doc);
+        } else {
+            index.remove(id);
+        }
+    }
+
+    // Порядок "views" обновляется при сбросе просмотров
+    @Override
+    protected boolean tracksViews() {
+        return true;
+    }
+
+    @Override
+    protected void afterRebuild(Index index) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    protected void afterApply(Index index) {
+        if (index.refreshOrders()) {
+            version.incrementAndGet();
+        }
+    }
+
+    public Optional<Page<Long>> findIds(ProductFilter filter, Pageable pageable) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+
+        Sort.Order order = pageable.getSort().stream().findFirst().orElse(null);
+        String sortField = order != null ? order.getProperty() : "id";
+        if (!SORT_ORDERS.containsKey(sortField)) {
+            return Optional.empty();
+        }
+        boolean ascending = order == null || order.isAscending();
+        ProductFilter normalized = filter.normalized();
+
+        return Optional.of(read(idx -> {
+            BitSet matched = idx.match(normalized);
+            long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+            int limit = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+            List<Long> ids = idx.page(matched, sortField, ascending, offset, limit);
+            return new PageImpl<>(ids, pageable, matched.cardinality());
+        }));
+    }
+
+    private Map<Long, ProductDoc> loadDocs(Collection<Long> ids) {
+        List<Object[]> rows = ids == null ? productRepository.findFilterRows() : productRepository.findFilterRowsByIds(ids);
+        List<Object[]> colorRows = ids == null ? productRepository.findColorRows() : productRepository.findColorRowsByIds(ids);
+
+        Map<Long, Set<String>> colors = new HashMap<>();
+        for (Object[] row : colorRows) {
+            if (row[1] != null) {
+                colors.computeIfAbsent((Long) row[0], k -> new HashSet<>()).add(row[1].toString().trim());
+            }
+        }
+
+        Map<Long, ProductDoc> docs = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            Long id = (Long) row[0];
+            docs.put(id, new ProductDoc(
+                    id,
+                    (Long) row[1],
+                    (Long) row[2],
+                    (TargetAudience) row[3],
+                    ProductTagsConverter.tagsOf((Integer) row[11]),
+                    colors.getOrDefault(id, Collections.emptySet()),
+                    row[5] != null ? new HashSet<>(Arrays.asList((String[]) row[5])) : Collections.emptySet(),
+                    toCents((BigDecimal) row[4], RoundingMode.HALF_UP),
+                    lower((String) row[6]),
+                    row[7] != null && !((String) row[7]).isBlank() ? ((String) row[7]).trim() : null,
+                    row[8] != null ? ((LocalDateTime) row[8]).toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MIN_VALUE,
+                    row[9] != null ? (Integer) row[9] : 0,
+                    row[10] != null ? (Double) row[10] : 0.0
+            ));
+        }
+        return docs;
+    }
+
+    private static long toCents(BigDecimal price, RoundingMode mode) {
+        if (price == null) {
+            return Long.MIN_VALUE;
+        }
+        return price.setScale(2, mode).movePointRight(2).longValue();
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static Map<String, Comparator<ProductDoc>> sortOrders() {
+        Comparator<ProductDoc> byId = Comparator.comparing(ProductDoc::id);
+        Map<String, Comparator<ProductDoc>> orders = new LinkedHashMap<>();
+        orders.put("id", byId);
+        orders.put("name", Comparator.comparing(ProductDoc::name, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+                .thenComparing(byId));
+        orders.put("price", Comparator.comparingLong(ProductDoc::priceCents).thenComparing(byId));
+        orders.put("createdAt", Comparator.comparingLong(ProductDoc::createdAt).thenComparing(byId));
+        orders.put("views", Comparator.comparingInt(ProductDoc::views).thenComparing(byId));
+        orders.put("rating", Comparator.comparingDouble(ProductDoc::rating).thenComparing(byId));
+        return Collections.unmodifiableMap(orders);
+    }
+
+    record ProductDoc(Long id, Long categoryId, Long brandId, TargetAudience audience,
+                      Set<ProductTag> tags, Set<String> colors, Set<String> sizes,
+                      long priceCents, String name, String country,
+                      long createdAt, int views, double rating) {
+
+        boolean sameExceptViews(ProductDoc other) {
+            return other != null && new ProductDoc(id, categoryId, brandId, audience, tags, colors, sizes, priceCents,
+                    name, country, createdAt, other.views, rating).equals(other);
+        }
+    }
+
+    static final class Index {
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private ProductDoc[] docs = new ProductDoc[1024];
+        private int size = 0;
+
+        final BitSet alive = new BitSet();
+        final Map<Long, BitSet> byCategory = new HashMap<>();
+        final Map<Long, BitSet> byBrand = new HashMap<>();
+        final Map<TargetAudience, BitSet> byAudience = new EnumMap<>(TargetAudience.class);
+        final Map<ProductTag, BitSet> byTag = new EnumMap<>(ProductTag.class);
+        final Map<String, BitSet> byColor = new HashMap<>();
+        final Map<String, BitSet> bySize = new HashMap<>();
+        final Map<String, BitSet> byCountry = new HashMap<>();
+
+        // Ключи карт выше в нижнем регистре, здесь исходное написание для отображения
+        final Map<String, String> colorLabels = new HashMap<>();
+        final Map<String, String> sizeLabels = new HashMap<>();
+        final Map<String, String> countryLabels = new HashMap<>();
+
+        private final Map<String, int[]> sortOrders = new HashMap<>();
+        // Товары, изменённые после последнего обновления порядков, и их прежние документы (null - не было)
+        private final Map<Integer, ProductDoc> changed = new HashMap<>();
+        private boolean sorted = false;
+
+        Index() {
+            SORT_ORDERS.keySet().forEach(field -> sortOrders.put(field, new int[0]));
+        }
+
+        ProductDoc doc(int ordinal) {
+            return docs[ordinal];
+        }
+
+        void upsert(ProductDoc doc) {
+            Integer ordinal = ordinals.get(doc.id());
+            if (ordinal == null) {
+                ordinal = size++;
+                if (ordinal == docs.length) {
+                    docs = Arrays.copyOf(docs, docs.length * 2);
+                }
+                ordinals.put(doc.id(), ordinal);
+            } else if (docs[ordinal] != null) {
+                unindex(docs[ordinal], ordinal);
+            }
+
+            track(ordinal);
+            docs[ordinal] = doc;
+            alive.set(ordinal);
+            if (doc.categoryId() != null) {
+                byCategory.computeIfAbsent(doc.categoryId(), k -> new BitSet()).set(ordinal);
+            }
+            if (doc.brandId() != null) {
+                byBrand.computeIfAbsent(doc.brandId(), k -> new BitSet()).set(ordinal);
+            }
+            if (doc.audience() != null) {
+                byAudience.computeIfAbsent(doc.audience(), k -> new BitSet()).set(ordinal);
+            }
+            for (ProductTag tag : doc.tags()) {
+                byTag.computeIfAbsent(tag, k -> new BitSet()).set(ordinal);
+            }
+            for (String color : doc.colors()) {
+                index(byColor, colorLabels, colorKey(color), color, ordinal);
+            }
+            for (String size : doc.sizes()) {
+                index(bySize, sizeLabels, sizeKey(size), size, ordinal);
+            }
+            if (doc.country() != null) {
+                index(byCountry, countryLabels, lower(doc.country()), doc.country(), ordinal);
+            }
+        }
+
+        private void track(int ordinal) {
+            if (sorted && !changed.containsKey(ordinal)) {
+                changed.put(ordinal, docs[ordinal]);
+            }
+        }
+
+        private static void index(Map<String, BitSet> target, Map<String, String> labels, String key, String value,
+                                  int ordinal) {
+            if (key == null) {
+                return;
+            }
+            target.computeIfAbsent(key, k -> new BitSet()).set(ordinal);
+            labels.putIfAbsent(key, value);
+        }
+
+        // Ключи цвета и размера - те же нормализации, что у color_names и size_list в SQL-версии фильтра
+        static String colorKey(String color) {
+            return Product.normalizeColor(color);
+        }
+
+        static String sizeKey(String size) {
+            return Product.normalizeSize(size);
+        }
+
+        // Порядковый номер остаётся за id, чтобы восстановленный из архива товар занял прежнее место
+        void remove(Long id) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null || docs[ordinal] == null) {
+                return;
+            }
+            unindex(docs[ordinal], ordinal);
+            track(ordinal);
+            docs[ordinal] = null;
+        }
+
+        private void unindex(ProductDoc doc, int ordinal) {
+            alive.clear(ordinal);
+            clear(byCategory.get(doc.categoryId()), ordinal);
+            clear(byBrand.get(doc.brandId()), ordinal);
+            if (doc.audience() != null) {
+                clear(byAudience.get(doc.audience()), ordinal);
+            }
+            doc.tags().forEach(tag -> clear(byTag.get(tag), ordinal));
+            doc.colors().forEach(color -> clear(byColor.get(colorKey(color)), ordinal));
+            doc.sizes().forEach(size -> clear(bySize.get(sizeKey(size)), ordinal));
+            if (doc.country() != null) {
+                clear(byCountry.get(lower(doc.country())), ordinal);
+            }
+        }
+
+        private static void clear(BitSet bits, int ordinal) {
+            if (bits != null) {
+                bits.clear(ordinal);
+            }
+        }
+
+        // Полная сортировка при построении индекса, до его публикации
+        void sortAll() {
+            int[] live = alive.stream().toArray();
+            SORT_ORDERS.forEach((field, comparator) -> sortOrders.put(field, sorted(live, comparator)));
+            changed.clear();
+            sorted = true;
+        }
+
+        /**
+         * Переставляет изменённые товары в тех порядках, где поменялся их ключ: остальные
+         * номера идут в прежнем порядке, вставляемые сливаются с ними за один проход.
+         * Возвращает false, если у товаров поменялись только просмотры.
+         */
+        boolean refreshOrders() {
+            if (changed.isEmpty()) {
+                return false;
+            }
+            boolean filtersChanged = false;
+            for (Map.Entry<Integer, ProductDoc> entry : changed.entrySet()) {
+                ProductDoc current = docs[entry.getKey()];
+                filtersChanged |= entry.getValue() == null || !entry.getValue().sameExceptViews(current);
+            }
+            SORT_ORDERS.forEach(this::reorder);
+            changed.clear();
+            return filtersChanged;
+        }
+
+        private void reorder(String field, Comparator<ProductDoc> comparator) {
+            BitSet moved = new BitSet();
+            List<Integer> inserted = new ArrayList<>();
+            changed.forEach((ordinal, previous) -> {
+                ProductDoc current = docs[ordinal];
+                if (previous == null || current == null || comparator.compare(previous, current) != 0) {
+                    moved.set(ordinal);
+                    if (current != null) {
+                        inserted.add(ordinal);
+                    }
+                }
+            });
+            if (moved.isEmpty()) {
+                return;
+            }
+            int[] insert = sorted(inserted.stream().mapToInt(Integer::intValue).toArray(), comparator);
+            int[] order = sortOrders.get(field);
+            int[] merged = new int[order.length + insert.length];
+            int size = 0;
+            int next = 0;
+            for (int ordinal : order) {
+                if (moved.get(ordinal)) {
+                    continue;
+                }
+                while (next < insert.length && comparator.compare(docs[insert[next]], docs[ordinal]) < 0) {
+                    merged[size++] = insert[next++];
+                }
+                merged[size++] = ordinal;
+            }
+            while (next < insert.length) {
+                merged[size++] = insert[next++];
+            }
+            sortOrders.put(field, size == merged.length ? merged : Arrays.copyOf(merged, size));
+        }
+
+        // Сортировка слиянием по примитивному int[] без упаковки номеров в Integer
+        private int[] sorted(int[] ordinals, Comparator<ProductDoc> comparator) {
+            int[] result = ordinals.clone();
+            mergeSort(result, new int[result.length], 0, result.length, comparator);
+            return result;
+        }
+
+        private void mergeSort(int[] values, int[] buffer, int from, int to, Comparator<ProductDoc> comparator) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(values, buffer, from, middle, comparator);
+            mergeSort(values, buffer, middle, to, comparator);
+            if (comparator.compare(docs[values[middle - 1]], docs[values[middle]]) <= 0) {
+                return;
+            }
+            System.arraycopy(values, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && comparator.compare(docs[buffer[left]], docs[buffer[right]]) <= 0)) {
+                    values[i] = buffer[left++];
+                } else {
+                    values[i] = buffer[right++];
+                }
+            }
+        }
+
+        BitSet match(ProductFilter filter) {
+            BitSet result = (BitSet) alive.clone();
+            if (filter.categoryId() != null) {
+                and(result, byCategory.get(filter.categoryId()));
+            }
+            if (filter.brandId() != null) {
+                and(result, byBrand.get(filter.brandId()));
+            }
+            if (filter.audience() != null) {
+                and(result, byAudience.get(filter.audience()));
+            }
+            if (filter.tag() != null) {
+                and(result, byTag.get(filter.tag()));
+            }
+            // Цвет и размер - точное совпадение, как color_names @> / size_list @> в SQL
+            if (filter.size() != null) {
+                and(result, bySize.get(sizeKey(filter.size())));
+            }
+            if (filter.color() != null) {
+                and(result, byColor.get(colorKey(filter.color())));
+            }
+            if (filter.country() != null) {
+                result.and(containing(byCountry, filter.country()));
+            }
+            if (filter.minPrice() != null || filter.maxPrice() != null) {
+                result.and(priceRange(filter.minPrice(), filter.maxPrice()));
+            }
+            if (filter.search() != null) {
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    String name = docs[i].name();
+                    if (name == null || !name.contains(filter.search())) {
+                        result.clear(i);
+                    }
+                }
+            }
+            return result;
+        }
+
+        // Объединение значений, содержащих подстроку (как LIKE '%value%' у страны в SQL-версии фильтра)
+        private static BitSet containing(Map<String, BitSet> values, String query) {
+            BitSet bits = new BitSet();
+            values.forEach((key, valueBits) -> {
+                if (key.contains(query)) {
+                    bits.or(valueBits);
+                }
+            });
+            return bits;
+        }
+
+        private static void and(BitSet target, BitSet values) {
+            if (values == null) {
+                target.clear();
+            } else {
+                target.and(values);
+            }
+        }
+
+        private BitSet priceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+            long min = minPrice != null ? toCents(minPrice, RoundingMode.CEILING) : Long.MIN_VALUE + 1;
+            long max = maxPrice != null ? toCents(maxPrice, RoundingMode.FLOOR) : Long.MAX_VALUE;
+            int[] order = sortOrders.get("price");
+            BitSet bits = new BitSet();
+            for (int i = lowerBound(order, min); i < order.length && docs[order[i]].priceCents() <= max; i++) {
+                bits.set(order[i]);
+            }
+            return bits;
+        }
+
+        private int lowerBound(int[] order, long value) {
+            int low = 0;
+            int high = order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (docs[order[mid]].priceCents() < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        List<Long> page(BitSet matched, String sortField, boolean ascending, long offset, int limit) {
+            int[] order = sortOrders.get(sortField);
+            List<Long> ids = new ArrayList<>(Math.min(limit, 64));
+            long skipped = 0;
+            for (int i = 0; i < order.length && ids.size() < limit; i++) {
+                int ordinal = order[ascending ? i : order.length - 1 - i];
+                if (!matched.get(ordinal)) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                ids.add(docs[ordinal].id());
+            }
+            return ids;
+        }
+    }
+}
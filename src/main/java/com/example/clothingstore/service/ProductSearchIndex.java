@@ -0,0 +1,397 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.repository.ProductRepository;
+import com.example.clothingstore.util.RussianStemmer;
+import com.example.clothingstore.util.WordTrie;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Полнотекстовый поиск по каталогу: инвертированный индекс по названию, описанию,
+ * бренду и категории со стеммингом и синонимами, ранжирование BM25.
+ * Поля имеют разный вес (название важнее описания). Документ должен содержать все
+ * слова запроса; если таких нет, возвращаются товары хотя бы с одним словом.
+ * Перед поиском запрос проходит через {@link SearchQueryRewriter} (раскладка, транслит, опечатки).
+ */
+@Service
+public class ProductSearchIndex extends ResidentProductIndex<ProductSearchIndex.Index, ProductSearchIndex.SearchDoc> {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final float SYNONYM_WEIGHT = 0.8f;
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float BRAND_WEIGHT = 2f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    private static final List<List<String>> SYNONYM_GROUPS = List.of(
+            List.of("майка", "футболка"),
+            List.of("толстовка", "худи", "свитшот"),
+            List.of("штаны", "брюки"),
+            List.of("свитер", "джемпер", "пуловер"),
+            List.of("джинсы", "деним", "jeans"),
+            List.of("кроссовки", "кеды", "сникеры", "sneakers"),
+            List.of("пиджак", "жакет", "блейзер"),
+            List.of("платье", "dress"),
+            List.of("куртка", "jacket"));
+
+    private static final Map<String, Set<String>> SYNONYMS = buildSynonyms();
+
+    private final ProductRepository productRepository;
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        super(new Index());
+        this.productRepository = productRepository;
+    }
+
+    /**
+     * Id товаров по релевантности. Пустой Optional - индекс ещё не готов,
+     * пустая страница - в запросе нет ни одного слова.
+     */
+    public Optional<Page<Long>> search(String query, Pageable pageable) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        return Optional.of(read(index -> {
+            List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(
+                    SearchQueryRewriter.rewrite(query, index.postings::containsKey, index.dictionary)));
+            if (queryTerms.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            List<Long> ids = index.search(queryTerms);
+            int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), ids.size()) : 0;
+            int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), ids.size()) : ids.size();
+            return new PageImpl<>(new ArrayList<>(ids.subList(from, to)), pageable, ids.size());
+        }));
+    }
+
+    @Override
+    protected String title() {
+        return "Поисковый индекс каталога";
+    }
+
+    @Override
+    protected Index build() {
+        Index fresh = new Index();
+        for (Object[] row : productRepository.findSearchRows()) {
+            fresh.upsert((Long) row[0], document(row));
+        }
+        return fresh;
+    }
+
+    @Override
+    protected String describe(Index index) {
+        return index.size() + " товаров, " + index.postings.size() + " термов";
+    }
+
+    @Override
+    protected Map<Long, SearchDoc> load(List<Long> ids) {
+        Map<Long, SearchDoc> docs = new HashMap<>();
+        for (Object[] row : productRepository.findSearchRowsByIds(ids)) {
+            docs.put((Long) row[0], document(row));
+        }
+        return docs;
+    }
+
+    @Override
+    protected void apply(Index index, Long id, SearchDoc doc) {
+        if (doc != null) {
+            index.upsert(id, doc);
+        } else {
+            index.remove(id);
+        }
+    }
+
+    // Строка: id, название, описание, бренд, категория. Словарь опечаток - из названия и бренда
+    private static SearchDoc document(Object[] row) {
+        Map<String, Float> terms = new HashMap<>();
+        addField(terms, (String) row[1], NAME_WEIGHT);
+        addField(terms, (String) row[2], DESCRIPTION_WEIGHT);
+        addField(terms, (String) row[3], BRAND_WEIGHT);
+        addField(terms, (String) row[4], CATEGORY_WEIGHT);
+
+        Set<String> words = new HashSet<>(words((String) row[1]));
+        words.addAll(words((String) row[3]));
+        return new SearchDoc(terms, words.toArray(new String[0]));
+    }
+
+    private static void addField(Map<String, Float> terms, String text, float weight) {
+        for (String word : words(text)) {
+            terms.merge(RussianStemmer.stem(word), weight, Float::sum);
+        }
+    }
+
+    // Слова в нижнем регистре, ё заменена на е
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    record SearchDoc(Map<String, Float> terms, String[] words) {
+    }
+
+    private static Map<String, Set<String>> buildSynonyms() {
+        Map<String, Set<String>> synonyms = new HashMap<>();
+        for (List<String> group : SYNONYM_GROUPS) {
+            Set<String> stems = new HashSet<>();
+            group.forEach(word -> stems.add(RussianStemmer.stem(word)));
+            for (String stem : stems) {
+                Set<String> others = new HashSet<>(stems);
+                others.remove(stem);
+                synonyms.computeIfAbsent(stem, k -> new HashSet<>()).addAll(others);
+            }
+        }
+        return synonyms;
+    }
+
+    static final class Index {
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private final Map<String, Postings> postings = new HashMap<>();
+        private final WordTrie dictionary = new WordTrie();
+        private long[] ids = new long[1024];
+        private float[] lengths = new float[1024];
+        private String[][] docTerms = new String[1024][];
+        private String[][] docWords = new String[1024][];
+        private int nextOrdinal = 0;
+        private int size = 0;
+        private double totalLength = 0;
+
+        int size() {
+            return size;
+        }
+
+        void upsert(Long id, SearchDoc doc) {
+            remove(id);
+            Map<String, Float> terms = doc.terms();
+            if (terms.isEmpty()) {
+                return;
+            }
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                ordinal = nextOrdinal++;
+                ensureCapacity(ordinal);
+                ordinals.put(id, ordinal);
+            }
+
+            float length = 0;
+            for (Map.Entry<String, Float> term : terms.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), k -> new Postings()).put(ordinal, term.getValue());
+                length += term.getValue();
+            }
+            ids[ordinal] = id;
+            lengths[ordinal] = length;
+            docTerms[ordinal] = terms.keySet().toArray(new String[0]);
+            docWords[ordinal] = doc.words();
+            for (String word : doc.words()) {
+                dictionary.add(word);
+            }
+            totalLength += length;
+            size++;
+        }
+
+        void remove(Long id) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null || docTerms[ordinal] == null) {
+                return;
+            }
+            for (String term : docTerms[ordinal]) {
+                Postings list = postings.get(term);
+                if (list != null) {
+                    list.remove(ordinal);
+                    if (list.size == 0) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            for (String word : docWords[ordinal]) {
+                dictionary.remove(word);
+            }
+            totalLength -= lengths[ordinal];
+            docTerms[ordinal] = null;
+            docWords[ordinal] = null;
+            size--;
+        }
+
+        private void ensureCapacity(int ordinal) {
+            if (ordinal < ids.length) {
+                return;
+            }
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            docTerms = Arrays.copyOf(docTerms, capacity);
+            docWords = Arrays.copyOf(docWords, capacity);
+        }
+
+        List<Long> search(List<String> queryTerms) {
+            // Кандидатов не больше, чем суммарная длина списков терминов и синонимов
+            int candidates = 0;
+            for (String term : queryTerms) {
+                candidates += postingsSize(term);
+                for (String synonym : SYNONYMS.getOrDefault(term, Set.of())) {
+                    candidates += postingsSize(synonym);
+                }
+            }
+            Scores scores = new Scores(candidates);
+            float averageLength = size > 0 ? (float) (totalLength / size) : 1f;
+
+            for (String term : queryTerms) {
+                // Лучший вклад термина или его синонима в каждый документ
+                accumulate(term, 1f, averageLength, scores);
+                for (String synonym : SYNONYMS.getOrDefault(term, Set.of())) {
+                    accumulate(synonym, SYNONYM_WEIGHT, averageLength, scores);
+                }
+                scores.endTerm();
+            }
+
+            List<Integer> all = new ArrayList<>();
+            List<Integer> any = new ArrayList<>();
+            for (int i = 0; i < scores.size; i++) {
+                int slot = scores.slots[i];
+                if (scores.matched[slot] == queryTerms.size()) {
+                    all.add(slot);
+                } else {
+                    any.add(slot);
+                }
+            }
+            List<Integer> result = all.isEmpty() ? any : all;
+            result.sort((a, b) -> scores.scores[a] != scores.scores[b]
+                    ? Float.compare(scores.scores[b], scores.scores[a])
+                    : Long.compare(ids[scores.ordinal(a)], ids[scores.ordinal(b)]));
+
+            List<Long> found = new ArrayList<>(result.size());
+            result.forEach(slot -> found.add(ids[scores.ordinal(slot)]));
+            return found;
+        }
+
+        private int postingsSize(String term) {
+            Postings list = postings.get(term);
+            return list != null ? list.size : 0;
+        }
+
+        private void accumulate(String term, float weight, float averageLength, Scores scores) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                return;
+            }
+            double idf = Math.log(1 + (size - list.size + 0.5) / (list.size + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int ordinal = list.docs[i];
+                float tf = list.frequencies[i];
+                float norm = K1 * (1 - B + B * lengths[ordinal] / averageLength);
+                scores.offer(ordinal, (float) (weight * idf * tf * (K1 + 1) / (tf + norm)));
+            }
+        }
+    }
+
+    /**
+     * Очки документов одного запроса: открытая адресация ordinal -> очки, размер по числу
+     * кандидатов, а не по всему каталогу. slots - занятые ячейки в порядке появления.
+     */
+    static final class Scores {
+        private final int[] keys;
+        private final float[] scores;
+        private final float[] termScores;
+        private final int[] matched;
+        private final int[] slots;
+        private final int[] touched;
+        private final int mask;
+        private int size = 0;
+        private int touchedSize = 0;
+
+        Scores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new int[capacity];
+            scores = new float[capacity];
+            termScores = new float[capacity];
+            matched = new int[capacity];
+            mask = capacity - 1;
+            slots = new int[Math.max(1, expected)];
+            touched = new int[Math.max(1, expected)];
+        }
+
+        // Ключ хранится как ordinal + 1: ноль - пустая ячейка
+        void offer(int ordinal, float score) {
+            int slot = (ordinal * 0x9E3779B9) >>> 1 & mask;
+            while (keys[slot] != 0 && keys[slot] != ordinal + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = ordinal + 1;
+                slots[size++] = slot;
+            }
+            if (termScores[slot] == 0) {
+                touched[touchedSize++] = slot;
+            }
+            termScores[slot] = Math.max(termScores[slot], score);
+        }
+
+        void endTerm() {
+            for (int i = 0; i < touchedSize; i++) {
+                int slot = touched[i];
+                scores[slot] += termScores[slot];
+                matched[slot]++;
+                termScores[slot] = 0;
+            }
+            touchedSize = 0;
+        }
+
+        int ordinal(int slot) {
+            return keys[slot] - 1;
+        }
+    }
+
+    // Отсортированные порядковые номера товаров и взвешенные частоты термина в них
+    static final class Postings {
+        private int[] docs = new int[4];
+        private float[] frequencies = new float[4];
+        private int size = 0;
+
+        void put(int ordinal, float frequency) {
+            int position = Arrays.binarySearch(docs, 0, size, ordinal);
+            if (position >= 0) {
+                frequencies[position] = frequency;
+                return;
+            }
+            int insertAt = -position - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(docs, insertAt, docs, insertAt + 1, size - insertAt);
+            System.arraycopy(frequencies, insertAt, frequencies, insertAt + 1, size - insertAt);
+            docs[insertAt] = ordinal;
+            frequencies[insertAt] = frequency;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int position = Arrays.binarySearch(docs, 0, size, ordinal);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(docs, position + 1, docs, position, size - position - 1);
+            System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+            size--;
+        }
+    }
+}
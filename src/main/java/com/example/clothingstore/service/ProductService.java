@@ -1,24 +1,41 @@
 package com.example.clothingstore.service;
+import com.example.clothingstore.dto.CursorPage;
+import com.example.clothingstore.dto.ProductCard;
+import com.example.clothingstore.dto.ProductFilter;
+import com.example.clothingstore.dto.ProductSuggestion;
 import com.example.clothingstore.util.JsonUtils;
+import com.example.clothingstore.util.KeysetCursor;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.data.domain.Pageable;
 import com.example.clothingstore.model.Product;
 import com.example.clothingstore.model.ProductTag;
+import com.example.clothingstore.model.ProductTagsConverter;
 import com.example.clothingstore.model.TargetAudience;
 import com.example.clothingstore.repository.ProductRepository;
+import com.example.clothingstore.repository.ProductSpecifications;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,11 +44,31 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final MetricsService metricsService;
     private final AuditService auditService;
-
-    public ProductService(ProductRepository productRepository,MetricsService metricsService,AuditService auditService) {
+    private final ProductFilterEngine filterEngine;
+    private final ProductSuggestIndex suggestIndex;
+    private final ProductSearchIndex searchIndex;
+    private final ProductViewCounter viewCounter;
+    private final CoPurchaseEngine coPurchaseEngine;
+    private final TrendingProductsTracker trendingTracker;
+    private final CatalogQueryCache queryCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ProductService(ProductRepository productRepository,MetricsService metricsService,AuditService auditService,
+                          ProductFilterEngine filterEngine, ProductSuggestIndex suggestIndex,
+                          ProductSearchIndex searchIndex, ProductViewCounter viewCounter,
+                          CoPurchaseEngine coPurchaseEngine, TrendingProductsTracker trendingTracker,
+                          CatalogQueryCache queryCache, ApplicationEventPublisher eventPublisher) {
         this.productRepository = productRepository;
         this.metricsService = metricsService;
         this.auditService = auditService;
+        this.filterEngine = filterEngine;
+        this.suggestIndex = suggestIndex;
+        this.searchIndex = searchIndex;
+        this.viewCounter = viewCounter;
+        this.coPurchaseEngine = coPurchaseEngine;
+        this.trendingTracker = trendingTracker;
+        this.queryCache = queryCache;
+        this.eventPublisher = eventPublisher;
         initializeProductsCount();
     }
     private void initializeProductsCount() {
@@ -39,12 +76,15 @@ public class ProductService {
         metricsService.setProductsCount((int) count);
     }
     
-    public Page<Product> getAllProducts(Pageable pageable) {
-        return productRepository.findAllByDeletedFalse(pageable);
+    public Page<ProductCard> getAllProducts(Pageable pageable) {
+        Pageable normalized = ProductSpecifications.normalizePageable(pageable);
+        return loadCardPage(queryCache.ids("filter", ProductFilter.empty(), normalized,
+                () -> filterEngine.findIds(ProductFilter.empty(), normalized)
+                        .orElseGet(() -> productRepository.findActiveIds(normalized))));
     }
 
     public Product createProduct(Product product) {
-        return productRepository.save(product);
+        return publishChanged(productRepository.save(product));
     }
 
     public Product updateProduct(Long id, Product productDetails) {
@@ -63,7 +103,7 @@ public class ProductService {
         product.setViews(productDetails.getViews());
         product.setRating(productDetails.getRating());
         product.setReviewCount(productDetails.getReviewCount());
-        return productRepository.save(product);
+        return publishChanged(productRepository.save(product));
     }
 
     public Product getProductById(Long id) {
@@ -72,44 +112,109 @@ public class ProductService {
     }
 
     public Product saveProduct(Product product) {
-        return productRepository.save(product);
+        return publishChanged(productRepository.save(product));
     }
 
     public void softDeleteProduct(Long id) {
         Product p = getProductById(id);
         p.setDeleted(true);
-        productRepository.save(p);
+        publishChanged(productRepository.save(p));
     }
 
     public void hardDeleteProduct(Long id) {
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
     }
 
-    public Page<Product> searchProducts(String keyword, Pageable pageable) {
-        return productRepository.findByNameContainingIgnoreCaseAndDeletedFalse(keyword, pageable);
+    // Релевантный поиск по индексу; пока индекс строится - прежний LIKE по названию
+    public Page<ProductCard> searchProducts(String keyword, Pageable pageable) {
+        return loadCardPage(searchIndex.search(keyword, pageable)
+                .orElseGet(() -> productRepository.findIdsByNameContaining(keyword, pageable)));
     }
-    public Page<Product> filterProducts(String name, Long categoryId, Long brandId,
+    public Page<ProductCard> filterProducts(String name, Long categoryId, Long brandId,
                                         BigDecimal minPrice, BigDecimal maxPrice,
                                         String color, String size, String country,
                                         TargetAudience audience, ProductTag tag,
                                         Pageable pageable) {
-        return productRepository.findByFilters(name, categoryId, brandId, minPrice, maxPrice,
-                color, size, country, audience, tag, pageable);
+        ProductFilter filter = new ProductFilter(name, categoryId, brandId, minPrice, maxPrice,
+                color, size, country, audience, tag);
+        Pageable normalized = ProductSpecifications.normalizePageable(pageable);
+        return loadCardPage(queryCache.ids("filter", filter, normalized,
+                () -> filterEngine.findIds(filter, normalized)
+                        .orElseGet(() -> productRepository.findAll(ProductSpecifications.byFilter(filter), normalized)
+                                .map(Product::getId))));
+    }
+
+    // Режим курсоров: seek по (ключ сортировки, id) без OFFSET и COUNT(*)
+    @Transactional(readOnly = true)
+    public CursorPage<ProductCard> scrollProducts(ProductFilter filter, Sort sort, int size, String after, boolean exactCount) {
+        Sort normalized = ProductSpecifications.normalizeKeysetSort(sort);
+        Specification<Product> spec = ProductSpecifications.byFilter(filter);
+        Window<Product> window = productRepository.findBy(spec, query -> query
+                .sortBy(normalized)
+                .limit(size)
+                .scroll(KeysetCursor.decode(after, Product.class)));
+        // Оценка reltuples - по всей таблице, поэтому для отфильтрованного каталога итог не показываем
+        Long total = exactCount ? Long.valueOf(productRepository.count(spec))
+                : !filter.normalized().isEmpty() ? null : Long.valueOf(productRepository.estimateRowCount());
+        Map<Long, ProductCard> cards = cardsById(window.getContent().stream().map(Product::getId).toList(), false);
+        return new CursorPage<>(window.map(product -> cards.get(product.getId())), size, normalized, total, exactCount);
+    }
+
+    // Карточки по страничке id, с сохранением порядка сортировки
+    private Page<ProductCard> loadCardPage(Page<Long> ids) {
+        if (ids.getContent().isEmpty()) {
+            return new PageImpl<>(List.of(), ids.getPageable(), ids.getTotalElements());
+        }
+        return new PageImpl<>(loadCards(ids.getContent()), ids.getPageable(), ids.getTotalElements());
     }
-    public Page<Product> filterProductsAlternative(String name, Long categoryId, Long brandId,
+
+    public List<ProductCard> getProductsByIds(List<Long> ids) {
+        return loadCards(ids);
+    }
+
+    // Карточки для избранного, включая снятые с продажи товары
+    public Map<Long, ProductCard> getCardsIncludingDeleted(List<Long> ids) {
+        return cardsById(ids, true);
+    }
+
+    // Один запрос на страницу, сколько бы товаров ни было
+    private List<ProductCard> loadCards(List<Long> ids) {
+        Map<Long, ProductCard> byId = cardsById(ids, false);
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, ProductCard> cardsById(List<Long> ids, boolean includeDeleted) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        List<ProductCard> cards = includeDeleted
+                ? productRepository.findCardsByIdsIncludingDeleted(ids)
+                : productRepository.findCardsByIds(ids);
+        return cards.stream().collect(Collectors.toMap(ProductCard::id, Function.identity()));
+    }
+
+    private Product publishChanged(Product product) {
+        eventPublisher.publishEvent(ProductChangedEvent.of(product.getId()));
+        return product;
+    }
+    public Page<ProductCard> filterProductsAlternative(String name, Long categoryId, Long brandId,
                                                    BigDecimal minPrice, BigDecimal maxPrice,
                                                    String color, String size, String country,
                                                    TargetAudience audience, ProductTag tag,
                                                    Pageable pageable) {
-        return productRepository.findByFiltersAlternative(name, categoryId, brandId, minPrice, maxPrice,
+        return filterProducts(name, categoryId, brandId, minPrice, maxPrice,
                 color, size, country, audience, tag, pageable);
     }
-    public Page<Product> filterProducts(String name, Long categoryId, Long brandId,
-                                        Double minPrice, Double maxPrice, Pageable pageable) {
+    public Page<ProductCard> filterProducts(String name, Long categoryId, Long brandId,
+                                            Double minPrice, Double maxPrice, Pageable pageable) {
         BigDecimal minPriceBigDecimal = minPrice != null ? BigDecimal.valueOf(minPrice) : null;
         BigDecimal maxPriceBigDecimal = maxPrice != null ? BigDecimal.valueOf(maxPrice) : null;
 
-        return productRepository.findByFilters(name, categoryId, brandId,
+        return filterProducts(name, categoryId, brandId,
                 minPriceBigDecimal, maxPriceBigDecimal, null, null, null, null, null, pageable);
     }
 
@@ -121,36 +226,46 @@ public class ProductService {
         return productRepository.findByIdInAndDeletedFalse(ids);
     }
 
-    public Page<Product> getProductsByCategory(Long categoryId, Pageable pageable) {
-        return productRepository.findByCategoryIdAndDeletedFalse(categoryId, pageable);
+    public Page<ProductCard> getProductsByCategory(Long categoryId, Pageable pageable) {
+        return loadCardPage(productRepository.findIdsByCategoryId(categoryId, pageable));
     }
 
-    public Page<Product> getProductsByBrand(Long brandId, Pageable pageable) {
-        return productRepository.findByBrandIdAndDeletedFalse(brandId, pageable);
+    public Page<ProductCard> getProductsByBrand(Long brandId, Pageable pageable) {
+        return loadCardPage(productRepository.findIdsByBrandId(brandId, pageable));
     }
 
     // Методы для главной страницы
-    public List<Product> getNewArrivals(int limit) {
-        return productRepository.findByTagsContainingAndDeletedFalseOrderByCreatedAtDesc(
-                ProductTag.NEW_ARRIVAL, PageRequest.of(0, limit)).getContent();
+    public List<ProductCard> getNewArrivals(int limit) {
+        return loadCards(productRepository.findIdsByTagMask(ProductTagsConverter.maskOf(ProductTag.NEW_ARRIVAL),
+                PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "createdAt"))).getContent());
+    }
+
+    public List<ProductCard> getBestSellers(int limit) {
+        return loadCards(productRepository.findIdsByTagMask(ProductTagsConverter.maskOf(ProductTag.BESTSELLER),
+                PageRequest.of(0, limit)).getContent());
     }
 
-    public List<Product> getBestSellers(int limit) {
-        return productRepository.findByTagsContainingAndDeletedFalse(
-                ProductTag.BESTSELLER, PageRequest.of(0, limit)).getContent();
+    // Товары с наибольшей скидкой: диапазонное чтение idx_products_active_discount_percent
+    public List<ProductCard> getSaleProducts(int limit) {
+        return loadCards(productRepository.findSaleProductIds(PageRequest.of(0, limit)).getContent());
     }
 
-    public List<Product> getSaleProducts(int limit) {
-        return productRepository.findByTagsContainingAndDeletedFalse(
-                ProductTag.SALE, PageRequest.of(0, limit)).getContent();
+    public Page<ProductCard> getSaleProducts(Pageable pageable) {
+        Pageable unsorted = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        return loadCardPage(queryCache.ids("sale", null, unsorted,
+                () -> productRepository.findSaleProductIds(unsorted)));
     }
 
-    public Page<Product> getProductsByAudience(TargetAudience audience, Pageable pageable) {
-        return productRepository.findByTargetAudienceAndDeletedFalse(audience, pageable);
+    public Page<ProductCard> getProductsByAudience(TargetAudience audience, Pageable pageable) {
+        Pageable normalized = ProductSpecifications.normalizePageable(pageable);
+        return loadCardPage(queryCache.ids("audience:" + audience, null, normalized,
+                () -> productRepository.findIdsByTargetAudience(audience, normalized)));
     }
 
-    public Page<Product> getProductsByTag(ProductTag tag, Pageable pageable) {
-        return productRepository.findByTagsContainingAndDeletedFalse(tag, pageable);
+    public Page<ProductCard> getProductsByTag(ProductTag tag, Pageable pageable) {
+        Pageable normalized = ProductSpecifications.normalizePageable(pageable);
+        return loadCardPage(queryCache.ids("tag:" + tag, null, normalized,
+                () -> productRepository.findIdsByTagMask(ProductTagsConverter.maskOf(tag), normalized)));
     }
 
     public List<String> getAvailableColors() {
@@ -165,8 +280,8 @@ public class ProductService {
         return productRepository.findDistinctCountries();
     }
 
-    public Page<Product> getDiscountedProducts(Pageable pageable) {
-        return productRepository.findDiscountedProducts(pageable);
+    public Page<ProductCard> getDiscountedProducts(Pageable pageable) {
+        return loadCardPage(productRepository.findDiscountedProductIds(pageable));
     }
 
     public Page<Product> getProductsByDiscountRange(BigDecimal minDiscount, BigDecimal maxDiscount, Pageable pageable) {
@@ -181,12 +296,12 @@ public class ProductService {
         return productRepository.findByStockQuantityGreaterThanAndDeletedFalse(minStock, pageable);
     }
 
-    public Page<Product> getPopularProducts(Pageable pageable) {
-        return productRepository.findPopularProducts(pageable);
+    public Page<ProductCard> getPopularProducts(Pageable pageable) {
+        return loadCardPage(productRepository.findPopularProductIds(pageable));
     }
 
-    public Page<Product> getProductsByMultipleTags(List<ProductTag> tags, Pageable pageable) {
-        return productRepository.findByMultipleTags(tags, pageable);
+    public Page<ProductCard> getProductsByMultipleTags(List<ProductTag> tags, Pageable pageable) {
+        return loadCardPage(productRepository.findIdsByTagMask(ProductTagsConverter.maskOf(tags), pageable));
     }
 
     public Page<Product> getProductsByDateRange(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
@@ -201,12 +316,15 @@ public class ProductService {
         return productRepository.findByRatingGreaterThanEqual(minRating, pageable);
     }
 
-    public Page<Product> getProductsByColor(String colorName, Pageable pageable) {
-        return productRepository.findByColorName(colorName, pageable);
+    public Page<ProductCard> getProductsByColor(String colorName, Pageable pageable) {
+        return loadCardPage(productRepository.findIdsByColorName(Product.normalizeColor(colorName), pageable));
     }
 
-    public Page<Product> getProductsByColors(List<String> colorNames, Pageable pageable) {
-        return productRepository.findByColorNames(colorNames, pageable);
+    public Page<ProductCard> getProductsByColors(List<String> colorNames, Pageable pageable) {
+        return loadCardPage(productRepository.findIdsByColorNames(colorNames.stream()
+                .map(Product::normalizeColor)
+                .filter(Objects::nonNull)
+                .toArray(String[]::new), pageable));
     }
 
     public Long getProductsWithTagsCount() {
@@ -222,41 +340,98 @@ public class ProductService {
     }
 
     public List<String> getProductNameSuggestions(String query, int limit) {
-        return productRepository.findProductNamesContaining(query, PageRequest.of(0, limit));
+        return suggestIndex.suggest(query, limit)
+                .map(suggestions -> suggestions.stream().map(ProductSuggestion::name).collect(Collectors.toList()))
+                .orElseGet(() -> productRepository.findProductNamesContaining(query, PageRequest.of(0, limit)));
     }
 
-    public List<Product> getProductsWithTag(ProductTag tag, int limit) {
-        return productRepository.findByTagsContainingAndDeletedFalse(tag, PageRequest.of(0, limit))
-                .getContent();
+    @Transactional(readOnly = true)
+    public List<ProductSuggestion> suggestProducts(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return suggestIndex.suggest(query, limit)
+                .orElseGet(() -> productRepository.findAll(
+                                ProductSpecifications.byFilter(new ProductFilter(query, null, null, null, null,
+                                        null, null, null, null, null)),
+                                PageRequest.of(0, limit, Sort.by(Sort.Order.desc("views"), Sort.Order.asc("id"))))
+                        .map(product -> new ProductSuggestion(product.getId(), product.getName()))
+                        .getContent());
     }
-    public void save(Product product) {
-        productRepository.save(product);
+
+    public List<ProductCard> getProductsWithTag(ProductTag tag, int limit) {
+        return loadCards(productRepository.findIdsByTagMask(ProductTagsConverter.maskOf(tag), PageRequest.of(0, limit))
+                .getContent());
     }
-    public List<Product> getProductsByTagOrderByCreatedAt(ProductTag tag, int limit) {
-        return productRepository.findByTagOrderByCreatedAtDesc(tag, PageRequest.of(0, limit));
+    public void save(Product product) {
+        publishChanged(productRepository.save(product));
     }
-    public List<Product> getRelatedProducts(Product product) {
-        return productRepository.findTop4ByCategoryAndIdNot(product.getCategory(), product.getId());
+
+    // Просмотр без записи в БД; возвращает число просмотров с учётом ещё не сброшенных
+    public long recordView(Product product) {
+        return recordView(product.getId(), product.getViews() != null ? product.getViews() : 0);
     }
-    public List<Product> getRecommendedProducts(Long productId, int limit) {
-        try {
-            Product currentProduct = getProductById(productId);
 
-            currentProduct.incrementViews();
-            productRepository.save(currentProduct);
+    public long recordView(Long productId, long storedViews) {
+        viewCounter.record(productId);
+        trendingTracker.recordView(productId);
+        return storedViews + viewCounter.pendingViews(productId);
+    }
 
-            if (currentProduct.getCategory() != null && currentProduct.getBrand() != null) {
-                return productRepository.findByBrandIdAndCategoryIdAndDeletedFalse(
-                        currentProduct.getBrand().getId(),
-                        currentProduct.getCategory().getId(),
-                        PageRequest.of(0, limit)
-                ).getContent();
+    public void recordCartAdd(Long productId, int quantity) {
+        trendingTracker.recordCartAdd(productId, quantity);
+    }
+    public List<Product> getProductsByTagOrderByCreatedAt(ProductTag tag, int limit) {
+        return productRepository.findByTagMaskOrderByCreatedAtDesc(ProductTagsConverter.maskOf(tag), PageRequest.of(0, limit));
+    }
+    // Сначала "с этим товаром покупают", остаток добираем товарами той же категории
+    public List<ProductCard> getRelatedProducts(Product product) {
+        List<Long> related = boughtTogetherIds(List.of(product.getId()), 4);
+        if (related.size() < 4 && product.getCategory() != null) {
+            topUp(related, productRepository.findIdsByCategoryIdAndIdNot(
+                    product.getCategory().getId(), product.getId(), PageRequest.of(0, 4)), 4);
+        }
+        return loadCards(related);
+    }
+    public List<ProductCard> getRecommendedProducts(Long productId, int limit) {
+        List<Long> recommended = boughtTogetherIds(List.of(productId), limit);
+        if (recommended.size() < limit) {
+            List<Object[]> categoryAndBrand = productRepository.findCategoryAndBrandIds(productId);
+            Object[] ids = categoryAndBrand.isEmpty() ? new Object[2] : categoryAndBrand.get(0);
+            if (ids[0] != null && ids[1] != null) {
+                topUp(recommended, productRepository.findIdsByBrandIdAndCategoryIdAndIdNot(
+                        (Long) ids[1], (Long) ids[0], productId, PageRequest.of(0, limit)), limit);
             }
+        }
+        if (recommended.size() < limit) {
+            topUp(recommended, productRepository.findPopularProductIds(PageRequest.of(0, limit + 1)).getContent().stream()
+                    .filter(id -> !id.equals(productId)).toList(), limit);
+        }
+        return loadCards(recommended);
+    }
 
-            return getPopularProducts(PageRequest.of(0, limit)).getContent();
+    // Товары, которые чаще всего покупают вместе с указанными (рекомендации к корзине)
+    public List<ProductCard> getBoughtTogether(Collection<Long> productIds, int limit) {
+        return loadCards(boughtTogetherIds(productIds, limit));
+    }
 
-        } catch (Exception e) {
-            return getPopularProducts(PageRequest.of(0, limit)).getContent();
+    private List<Long> boughtTogetherIds(Collection<Long> productIds, int limit) {
+        if (productIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return coPurchaseEngine.recommend(productIds, limit)
+                .<List<Long>>map(ArrayList::new)
+                .orElseGet(ArrayList::new);
+    }
+
+    private static void topUp(List<Long> target, List<Long> candidates, int limit) {
+        for (Long candidate : candidates) {
+            if (target.size() >= limit) {
+                return;
+            }
+            if (!target.contains(candidate)) {
+                target.add(candidate);
+            }
         }
     }
     public boolean isProductAvailable(Long productId, int quantity) {
@@ -271,7 +446,7 @@ public class ProductService {
         Product product = getProductById(productId);
         if (product.getStockQuantity() >= quantity) {
             product.setStockQuantity(product.getStockQuantity() - quantity);
-            productRepository.save(product);
+            publishChanged(productRepository.save(product));
         } else {
             throw new IllegalArgumentException("Недостаточно товара на складе");
         }
@@ -280,32 +455,24 @@ public class ProductService {
     public void increaseStockQuantity(Long productId, int quantity) {
         Product product = getProductById(productId);
         product.setStockQuantity(product.getStockQuantity() + quantity);
-        productRepository.save(product);
-    }
-
-    public List<Product> getTopDiscountedProductsList(int limit) {
-        return getDiscountedProducts(PageRequest.of(0, limit * 2)).getContent()
-                .stream()
-                .sorted((p1, p2) -> {
-                    BigDecimal discount1 = p1.getDiscountAmount();
-                    BigDecimal discount2 = p2.getDiscountAmount();
-                    return discount2.compareTo(discount1);
-                })
-                .limit(limit)
-                .collect(Collectors.toList());
+        publishChanged(productRepository.save(product));
+    }
+
+    public List<ProductCard> getTopDiscountedProductsList(int limit) {
+        return loadCards(productRepository.findTopDiscountedProductIds(PageRequest.of(0, limit)).getContent());
     }
 
-    public Page<Product> searchProductsAdvanced(String keyword, Long categoryId, Long brandId,
+    public Page<ProductCard> searchProductsAdvanced(String keyword, Long categoryId, Long brandId,
                                                 BigDecimal minPrice, BigDecimal maxPrice,
                                                 Pageable pageable) {
-        return productRepository.findByFilters(keyword, categoryId, brandId, minPrice, maxPrice,
+        return filterProducts(keyword, categoryId, brandId, minPrice, maxPrice,
                 null, null, null, null, null, pageable);
     }
 
     public void updateProductRating(Long productId, Double newRating) {
         Product product = getProductById(productId);
         product.updateRating(newRating);
-        productRepository.save(product);
+        publishChanged(productRepository.save(product));
     }
 
     public List<Product> getRecentArrivals(int limit) {
@@ -321,12 +488,17 @@ public class ProductService {
                 .collect(Collectors.toList());
     }
 
-    public Page<Product> getTrendingProducts(Pageable pageable) {
-        return getPopularProducts(pageable);
+    // Тренды недели из памяти; пока счёт не накоплен - популярные за всё время
+    public Page<ProductCard> getTrendingProducts(Pageable pageable) {
+        return trendingTracker.top((int) pageable.getOffset(), pageable.getPageSize())
+                .map(ids -> (Page<ProductCard>) new PageImpl<>(loadCards(ids), pageable, trendingTracker.size()))
+                .orElseGet(() -> loadCardPage(productRepository.findPopularProductIds(pageable)));
     }
 
     public void bulkUpdateProducts(List<Product> products) {
-        productRepository.saveAll(products);
+        List<Product> saved = productRepository.saveAll(products);
+        eventPublisher.publishEvent(new ProductChangedEvent(
+                saved.stream().map(Product::getId).collect(Collectors.toList())));
     }
 
     public boolean isProductNameUnique(String name, Long excludeProductId) {
@@ -341,7 +513,7 @@ public class ProductService {
         return productRepository.findByIdIgnoreDeleted(id)
                 .orElseThrow(() -> new IllegalArgumentException("Товар с ID " + id + " не найден"));
     }
-    public Page<Product> getProductsByTagAndAudience(ProductTag tag, TargetAudience audience, Pageable pageable) {
+    public Page<ProductCard> getProductsByTagAndAudience(ProductTag tag, TargetAudience audience, Pageable pageable) {
         return filterProducts(null, null, null, null, null, null, null, null, audience, tag, pageable);
     }
     public Page<Product> getArchivedProducts(Pageable pageable) {
@@ -351,7 +523,7 @@ public class ProductService {
     public void restoreProduct(Long id) {
         Product product = getProductById(id);
         product.setDeleted(false);
-        productRepository.save(product);
+        publishChanged(productRepository.save(product));
     }
 
     public long getTotalProductsCount() {
@@ -370,9 +542,9 @@ public class ProductService {
         BigDecimal minPriceBigDecimal = minPrice != null ? BigDecimal.valueOf(minPrice) : null;
         BigDecimal maxPriceBigDecimal = maxPrice != null ? BigDecimal.valueOf(maxPrice) : null;
 
-        return productRepository.findByFilters(search, categoryId, brandId,
-                minPriceBigDecimal, maxPriceBigDecimal,
-                null, null, null, null, null, Pageable.unpaged()).getContent();
+        ProductFilter filter = new ProductFilter(search, categoryId, brandId,
+                minPriceBigDecimal, maxPriceBigDecimal, null, null, null, null, null);
+        return productRepository.findAll(ProductSpecifications.byFilter(filter), Sort.by("id"));
     }
 
     public List<Product> searchProductsForExport(String search) {
@@ -383,8 +555,9 @@ public class ProductService {
         BigDecimal minPriceBigDecimal = minPrice != null ? BigDecimal.valueOf(minPrice) : null;
         BigDecimal maxPriceBigDecimal = maxPrice != null ? BigDecimal.valueOf(maxPrice) : null;
 
-        return productRepository.findBySimpleFilters(null, categoryId, brandId,
-                minPriceBigDecimal, maxPriceBigDecimal);
+        ProductFilter filter = new ProductFilter(null, categoryId, brandId,
+                minPriceBigDecimal, maxPriceBigDecimal, null, null, null, null, null);
+        return productRepository.findAll(ProductSpecifications.byFilter(filter), Sort.by("id"));
     }
 
     public List<Product> getAllProductsForExport() {
@@ -466,7 +639,7 @@ public class ProductService {
 
 
     public Product createProduct(Product product, HttpServletRequest request) {
-        Product savedProduct = productRepository.save(product);
+        Product savedProduct = publishChanged(productRepository.save(product));
 
         auditService.logAction("CREATE", "PRODUCT", savedProduct.getId(),
                 null, JsonUtils.toJson(savedProduct), request);
@@ -491,7 +664,7 @@ public class ProductService {
         product.setOriginalPrice(productDetails.getOriginalPrice());
         product.setTags(productDetails.getTags());
 
-        Product savedProduct = productRepository.save(product);
+        Product savedProduct = publishChanged(productRepository.save(product));
 
         String newValues = JsonUtils.toJson(savedProduct);
         auditService.logAction("UPDATE", "PRODUCT", id, oldValues, newValues, request);
@@ -504,7 +677,7 @@ public class ProductService {
         String oldValues = JsonUtils.toJson(product);
 
         product.setDeleted(true);
-        productRepository.save(product);
+        publishChanged(productRepository.save(product));
 
         auditService.logAction("SOFT_DELETE", "PRODUCT", id, oldValues,
                 "{\"deleted\": true}", request);
@@ -515,7 +688,7 @@ public class ProductService {
         String oldValues = JsonUtils.toJson(product);
 
         product.setDeleted(false);
-        productRepository.save(product);
+        publishChanged(productRepository.save(product));
 
         auditService.logAction("RESTORE", "PRODUCT", id, oldValues,
                 "{\"deleted\": false}", request);
@@ -526,6 +699,7 @@ public class ProductService {
         String oldValues = JsonUtils.toJson(product);
 
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
 
         auditService.logAction("HARD_DELETE", "PRODUCT", id, oldValues, null, request);
     }
@@ -0,0 +1,364 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductSuggestion;
+import com.example.clothingstore.repository.ProductRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Триграммный индекс названий товаров для автодополнения.
+ * Слова индексируются с отступами как в pg_trgm ("  к", " ко", "коф", ...), начало
+ * названия дополнительно помечается отдельными ключами, а первые три буквы каждого слова -
+ * ещё одним ключом: иначе запрос "ова" с начала слова пересекал бы " ов" и "ова" из разных
+ * слов и проверял десятки тысяч названий впустую. Порядковые номера раздаются
+ * по убыванию просмотров при построении, поэтому списки товаров отсортированы по
+ * популярности и поиск останавливается, как только набрано нужное число подсказок.
+ * Ранжирование: совпадение с начала названия, с начала слова, внутри слова.
+ */
+@Service
+public class ProductSuggestIndex extends ResidentProductIndex<ProductSuggestIndex.Index, Object[]> {
+
+    private final ProductRepository productRepository;
+
+    public ProductSuggestIndex(ProductRepository productRepository) {
+        super(new Index());
+        this.productRepository = productRepository;
+    }
+
+    public Optional<List<ProductSuggestion>> suggest(String query, int limit) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return Optional.of(List.of());
+        }
+        return Optional.of(read(index -> index.search(normalized, limit)));
+    }
+
+    @Override
+    protected String title() {
+        return "Индекс подсказок";
+    }
+
+    @Override
+    protected Index build() {
+        Index fresh = new Index();
+        for (Object[] row : productRepository.findSuggestRows()) {
+            fresh.upsert((Long) row[0], (String) row[1], row[2] != null ? (Integer) row[2] : 0);
+        }
+        return fresh;
+    }
+
+    @Override
+    protected String describe(Index index) {
+        return index.size() + " товаров";
+    }
+
+    // Строка: id, название, просмотры
+    @Override
+    protected Map<Long, Object[]> load(List<Long> ids) {
+        Map<Long, Object[]> rows = new HashMap<>();
+        for (Object[] row : productRepository.findSuggestRowsByIds(ids)) {
+            rows.put((Long) row[0], row);
+        }
+        return rows;
+    }
+
+    @Override
+    protected void apply(Index index, Long id, Object[] row) {
+        if (row != null) {
+            index.upsert(id, (String) row[1], row[2] != null ? (Integer) row[2] : 0);
+        } else {
+            index.remove(id);
+        }
+    }
+
+    // Внутри класса совпадения подсказки упорядочены по текущим просмотрам
+    @Override
+    protected boolean tracksViews() {
+        return true;
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim().toLowerCase(Locale.ROOT).replace('ё', 'е').replaceAll("\\s+", " ");
+    }
+
+    private static final long NAME_START = 1L << 48;
+    private static final long WORD_PREFIX = 1L << 49;
+
+    private static long trigram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static List<String> words(String normalized) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Триграммы названия: каждое слово с двумя пробелами в начале и одним в конце
+    static Set<Long> indexTrigrams(String normalized) {
+        Set<Long> trigrams = new HashSet<>();
+        List<String> words = words(normalized);
+        for (String word : words) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 2 < padded.length(); i++) {
+                trigrams.add(trigram(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)));
+            }
+            if (word.length() > 2) {
+                trigrams.add(trigram(word.charAt(0), word.charAt(1), word.charAt(2)) | WORD_PREFIX);
+            }
+        }
+        if (!words.isEmpty()) {
+            trigrams.addAll(startTrigrams(words.get(0), NAME_START));
+        }
+        return trigrams;
+    }
+
+    private static List<Long> startTrigrams(String word, long flag) {
+        List<Long> trigrams = new ArrayList<>(3);
+        trigrams.add(trigram(' ', ' ', word.charAt(0)) | flag);
+        if (word.length() > 1) {
+            trigrams.add(trigram(' ', word.charAt(0), word.charAt(1)) | flag);
+        }
+        if (word.length() > 2) {
+            trigrams.add(trigram(word.charAt(0), word.charAt(1), word.charAt(2)) | flag | WORD_PREFIX);
+        }
+        return trigrams;
+    }
+
+    private static List<Long> innerTrigrams(String word) {
+        List<Long> trigrams = new ArrayList<>();
+        for (int i = 0; i + 2 < word.length(); i++) {
+            trigrams.add(trigram(word.charAt(i), word.charAt(i + 1), word.charAt(i + 2)));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Триграммы запроса для класса совпадения: 0 - с начала названия, 1 - с начала слова,
+     * 2 - внутри слова. Первое слово запроса в классе 2 даёт только внутренние триграммы,
+     * последующие слова в любом классе начинаются с начала слова.
+     */
+    static Set<Long> queryTrigrams(String normalized, int matchClass) {
+        List<String> words = words(normalized);
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (i == 0 && matchClass == 0) {
+                trigrams.addAll(startTrigrams(word, NAME_START));
+            } else if (i > 0 || matchClass == 1) {
+                trigrams.addAll(startTrigrams(word, 0));
+            }
+            trigrams.addAll(innerTrigrams(word));
+        }
+        return trigrams;
+    }
+
+    static final class Index {
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private long[] ids = new long[1024];
+        private String[] names = new String[1024];
+        private String[] normalizedNames = new String[1024];
+        private int[] views = new int[1024];
+        private int nextOrdinal = 0;
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        void upsert(Long id, String name, int productViews) {
+            if (name == null || name.isBlank()) {
+                remove(id);
+                return;
+            }
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                ordinal = nextOrdinal++;
+                ensureCapacity(ordinal);
+                ordinals.put(id, ordinal);
+            }
+
+            String normalized = normalize(name);
+            String previous = normalizedNames[ordinal];
+            if (!normalized.equals(previous)) {
+                Set<Long> oldTrigrams = previous != null ? indexTrigrams(previous) : Set.of();
+                Set<Long> newTrigrams = indexTrigrams(normalized);
+                for (Long trigram : oldTrigrams) {
+                    if (!newTrigrams.contains(trigram)) {
+                        Postings list = postings.get(trigram);
+                        if (list != null) {
+                            list.remove(ordinal);
+                        }
+                    }
+                }
+                for (Long trigram : newTrigrams) {
+                    if (!oldTrigrams.contains(trigram)) {
+                        postings.computeIfAbsent(trigram, k -> new Postings()).add(ordinal);
+                    }
+                }
+            }
+            if (previous == null) {
+                size++;
+            }
+
+            ids[ordinal] = id;
+            names[ordinal] = name;
+            normalizedNames[ordinal] = normalized;
+            views[ordinal] = productViews;
+        }
+
+        void remove(Long id) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null || normalizedNames[ordinal] == null) {
+                return;
+            }
+            for (Long trigram : indexTrigrams(normalizedNames[ordinal])) {
+                Postings list = postings.get(trigram);
+                if (list != null) {
+                    list.remove(ordinal);
+                }
+            }
+            names[ordinal] = null;
+            normalizedNames[ordinal] = null;
+            size--;
+        }
+
+        private void ensureCapacity(int ordinal) {
+            if (ordinal < ids.length) {
+                return;
+            }
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            normalizedNames = Arrays.copyOf(normalizedNames, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+
+        List<ProductSuggestion> search(String query, int limit) {
+            List<Integer> found = new ArrayList<>(limit);
+            Set<Integer> seen = new HashSet<>();
+            for (int matchClass = 0; matchClass <= 2 && found.size() < limit; matchClass++) {
+                Set<Long> trigrams = queryTrigrams(query, matchClass);
+                if (trigrams.isEmpty()) {
+                    continue;
+                }
+                List<Integer> hits = scan(trigrams, query, matchClass, limit - found.size(), seen);
+                // Внутри класса точнее упорядочиваем по текущим просмотрам
+                hits.sort(Comparator.comparingInt((Integer ordinal) -> -views[ordinal])
+                        .thenComparing(ordinal -> normalizedNames[ordinal]));
+                found.addAll(hits);
+                seen.addAll(hits);
+            }
+
+            List<ProductSuggestion> result = new ArrayList<>(found.size());
+            for (int ordinal : found) {
+                result.add(new ProductSuggestion(ids[ordinal], names[ordinal]));
+            }
+            return result;
+        }
+
+        // Пересечение списков в порядке популярности с остановкой после limit совпадений
+        private List<Integer> scan(Set<Long> trigrams, String query, int matchClass, int limit, Set<Integer> seen) {
+            List<Postings> lists = new ArrayList<>(trigrams.size());
+            for (Long trigram : trigrams) {
+                Postings list = postings.get(trigram);
+                if (list == null || list.size == 0) {
+                    return new ArrayList<>();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            List<Integer> hits = new ArrayList<>(limit);
+            Postings smallest = lists.get(0);
+            for (int i = 0; i < smallest.size && hits.size() < limit; i++) {
+                int ordinal = smallest.data[i];
+                boolean inAll = true;
+                for (int j = 1; j < lists.size() && inAll; j++) {
+                    inAll = lists.get(j).contains(ordinal);
+                }
+                String name = normalizedNames[ordinal];
+                if (inAll && name != null && !seen.contains(ordinal)
+                        && name.contains(query) && rank(name, query) == matchClass) {
+                    hits.add(ordinal);
+                }
+            }
+            return hits;
+        }
+
+        // 0 - название начинается с запроса, 1 - одно из слов, 2 - совпадение внутри слова.
+        // Смотрим все вхождения: первое может быть внутри слова, а следующее - с начала слова
+        static int rank(String name, String query) {
+            if (name.startsWith(query)) {
+                return 0;
+            }
+            for (int position = name.indexOf(query); position > 0; position = name.indexOf(query, position + 1)) {
+                if (!Character.isLetterOrDigit(name.charAt(position - 1))) {
+                    return 1;
+                }
+            }
+            return 2;
+        }
+    }
+
+    // Отсортированный список порядковых номеров товаров для одной триграммы
+    static final class Postings {
+        private int[] data = new int[4];
+        private int size = 0;
+
+        void add(int ordinal) {
+            if (size > 0 && data[size - 1] < ordinal) {
+                append(ordinal);
+                return;
+            }
+            int position = Arrays.binarySearch(data, 0, size, ordinal);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            System.arraycopy(data, insertAt, data, insertAt + 1, size - insertAt);
+            data[insertAt] = ordinal;
+            size++;
+        }
+
+        private void append(int ordinal) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = ordinal;
+        }
+
+        void remove(int ordinal) {
+            int position = Arrays.binarySearch(data, 0, size, ordinal);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(data, position + 1, data, position, size - position - 1);
+            size--;
+        }
+
+        boolean contains(int ordinal) {
+            return Arrays.binarySearch(data, 0, size, ordinal) >= 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.clothingstore.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчик просмотров товаров с отложенной записью. Просмотр страницы только увеличивает
+ * LongAdder в памяти; раз в несколько секунд накопленные приращения пишутся в БД одним
+ * UPDATE ... FROM (VALUES ...). Запись идёт мимо Hibernate, поэтому не создаёт ревизий Envers.
+ */
+@Slf4j
+@Service
+public class ProductViewCounter {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    // Просмотры, взятые из pending в запись с момента старта: pending + flushed по товару только растёт
+    private final Map<Long, LongAdder> flushedTotals = new ConcurrentHashMap<>();
+
+    public ProductViewCounter(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void record(Long productId) {
+        addPending(productId, 1);
+    }
+
+    // Если сброс как раз убрал пустой счётчик, записанное в него переносим в новый
+    private void addPending(Long productId, long delta) {
+        LongAdder adder = pending.computeIfAbsent(productId, id -> new LongAdder());
+        adder.add(delta);
+        if (pending.get(productId) != adder) {
+            drain(productId, adder);
+        }
+    }
+
+    private void drain(Long productId, LongAdder removed) {
+        long late = removed.sumThenReset();
+        if (late > 0) {
+            addPending(productId, late);
+        }
+    }
+
+    // Просмотры, ещё не записанные в БД
+    public long pendingViews(Long productId) {
+        LongAdder adder = pending.get(productId);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public long flushedViews(Long productId) {
+        LongAdder adder = flushedTotals.get(productId);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.views.flush-interval-ms:5000}")
+    public void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                flushedTotals.computeIfAbsent(entry.getKey(), id -> new LongAdder()).add(delta);
+                deltas.put(entry.getKey(), delta);
+            } else if (pending.remove(entry.getKey(), entry.getValue())) {
+                drain(entry.getKey(), entry.getValue());
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(deltas.entrySet());
+        List<Long> flushed = new ArrayList<>(entries.size());
+        for (int from = 0; from < entries.size(); from += BATCH_SIZE) {
+            List<Map.Entry<Long, Long>> batch = entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+            try {
+                update(batch);
+                batch.forEach(entry -> flushed.add(entry.getKey()));
+            } catch (Exception e) {
+                log.error("Не удалось записать просмотры для {} товаров, повторим при следующем сбросе", batch.size(), e);
+                batch.forEach(entry -> {
+                    addPending(entry.getKey(), entry.getValue());
+                    flushedTotals.get(entry.getKey()).add(-entry.getValue());
+                });
+            }
+        }
+
+        if (!flushed.isEmpty()) {
+            // Индексы каталога сортируют по просмотрам
+            eventPublisher.publishEvent(ProductChangedEvent.views(flushed));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void update(List<Map.Entry<Long, Long>> batch) {
+        StringBuilder sql = new StringBuilder("UPDATE products p SET views = COALESCE(p.views, 0) + v.delta FROM (VALUES ");
+        Object[] args = new Object[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?::bigint, ?::int)");
+            args[i * 2] = batch.get(i).getKey();
+            args[i * 2 + 1] = batch.get(i).getValue().intValue();
+        }
+        sql.append(") AS v(id, delta) WHERE p.id = v.id");
+        jdbcTemplate.update(sql.toString(), args);
+    }
+}
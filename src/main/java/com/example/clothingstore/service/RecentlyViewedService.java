@@ -0,0 +1,322 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductCard;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * "Вы недавно смотрели": буфер фиксированного размера на пользователя в памяти, последний
+ * просмотренный товар первым. Просмотр страницы в БД не пишет: изменённые буферы сохраняются
+ * пачкой по таймеру и при завершении сессии. Один буфер - около 250 байт, поэтому 100 тыс.
+ * активных пользователей занимают порядка 25 МБ; сверх max-buffers вытесняются давно не
+ * использованные. У гостя список целиком в cookie: ни сессии, ни буфера на сервере.
+ */
+@Slf4j
+@Service
+public class RecentlyViewedService {
+
+    static final int CAPACITY = 12;
+    private static final int BATCH_SIZE = 500;
+    private static final String USER_KEY = "u:";
+    // Ключ гостя - "c:" и содержимое cookie, поэтому он сам меняется с каждым просмотром
+    private static final String GUEST_KEY = "c:";
+    private static final String COOKIE_NAME = "recently_viewed";
+    private static final Duration COOKIE_MAX_AGE = Duration.ofDays(30);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductService productService;
+    private final long idleTimeoutMs;
+    private final int maxBuffers;
+    private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    public RecentlyViewedService(JdbcTemplate jdbcTemplate, ProductService productService,
+                                 @Value("${app.recently-viewed.idle-timeout-ms:1800000}") long idleTimeoutMs,
+                                 @Value("${app.recently-viewed.max-buffers:200000}") int maxBuffers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productService = productService;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxBuffers = maxBuffers;
+    }
+
+    // Ключ буфера: email вошедшего пользователя или список из cookie гостя
+    public String keyOf(Authentication authentication, HttpServletRequest request) {
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return USER_KEY + authentication.getName();
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    return GUEST_KEY + cookie.getValue();
+                }
+            }
+        }
+        return GUEST_KEY;
+    }
+
+    // Гостю список перезаписывается в cookie ответа
+    public void record(String key, Long productId, HttpServletRequest request, HttpServletResponse response) {
+        if (key == null || productId == null) {
+            return;
+        }
+        if (!key.startsWith(GUEST_KEY)) {
+            // Вытесненный между buffer() и push() буфер не принимает просмотр - берём новый
+            while (true) {
+                if (buffer(key).push(productId)) {
+                    return;
+                }
+            }
+        }
+        List<Long> ids = new ArrayList<>(guestIds(key));
+        ids.remove(productId);
+        ids.add(0, productId);
+        String value = ids.stream().limit(CAPACITY).map(String::valueOf).collect(Collectors.joining("-"));
+        response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE_NAME, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .maxAge(COOKIE_MAX_AGE)
+                .build().toString());
+    }
+
+    public List<Long> recentIds(String key, Long excludeId, int limit) {
+        if (key == null) {
+            return List.of();
+        }
+        if (key.startsWith(GUEST_KEY)) {
+            return guestIds(key).stream().filter(id -> !id.equals(excludeId)).limit(limit).toList();
+        }
+        return buffer(key).ids(excludeId, limit);
+    }
+
+    // Содержимое cookie от клиента: берём только числа, не больше CAPACITY
+    private static List<Long> guestIds(String key) {
+        List<Long> ids = new ArrayList<>(CAPACITY);
+        for (String part : key.substring(GUEST_KEY.length()).split("-")) {
+            if (ids.size() == CAPACITY) {
+                break;
+            }
+            try {
+                Long id = Long.valueOf(part);
+                if (id > 0 && !ids.contains(id)) {
+                    ids.add(id);
+                }
+            } catch (NumberFormatException ignored) {
+                // пустая или испорченная cookie
+            }
+        }
+        return ids;
+    }
+
+    public List<ProductCard> getRecentProducts(String key, Long excludeId, int limit) {
+        List<Long> ids = recentIds(key, excludeId, limit);
+        return ids.isEmpty() ? List.of() : productService.getProductsByIds(ids);
+    }
+
+    // Меняется при каждом просмотре - для ETag страниц с блоком недавних товаров (у гостя меняется сам ключ)
+    public long version(String key) {
+        Buffer buffer = key != null && key.startsWith(USER_KEY) ? buffers.get(key) : null;
+        return buffer != null ? buffer.version : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.recently-viewed.flush-interval-ms:30000}")
+    public void flush() {
+        persist(buffers.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(USER_KEY) && entry.getValue().dirty)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList()));
+        evictIdle();
+    }
+
+    @EventListener
+    public void onSessionDestroyed(HttpSessionDestroyedEvent event) {
+        List<String> userKeys = new ArrayList<>();
+        for (SecurityContext context : event.getSecurityContexts()) {
+            Authentication authentication = context.getAuthentication();
+            if (authentication != null) {
+                userKeys.add(USER_KEY + authentication.getName());
+            }
+        }
+        persist(userKeys);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Buffer buffer(String key) {
+        while (true) {
+            Buffer buffer = buffers.computeIfAbsent(key, k -> new Buffer());
+            buffer.lastAccess = System.currentTimeMillis();
+            if (!buffer.loaded) {
+                synchronized (buffer) {
+                    if (!buffer.evicted && !buffer.loaded) {
+                        buffer.load(loadStored(key.substring(USER_KEY.length())));
+                    }
+                }
+            }
+            if (!buffer.evicted) {
+                return buffer;
+            }
+        }
+    }
+
+    private Long[] loadStored(String email) {
+        try {
+            List<Long[]> rows = jdbcTemplate.query("SELECT recently_viewed FROM users WHERE email = ?",
+                    (rs, rowNum) -> {
+                        Array array = rs.getArray(1);
+                        return array != null ? (Long[]) array.getArray() : null;
+                    }, email);
+            return rows.isEmpty() ? null : rows.get(0);
+        } catch (Exception e) {
+            log.warn("Не удалось загрузить недавно просмотренные товары пользователя {}", email, e);
+            return null;
+        }
+    }
+
+    private void persist(List<String> keys) {
+        List<Object[]> rows = new ArrayList<>();
+        for (String key : keys) {
+            Buffer buffer = buffers.get(key);
+            if (buffer != null && buffer.dirty) {
+                rows.add(new Object[]{buffer.takeSnapshot(), key.substring(USER_KEY.length())});
+            }
+        }
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            List<Object[]> batch = rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()));
+            try {
+                jdbcTemplate.batchUpdate("UPDATE users SET recently_viewed = ?::bigint[] WHERE email = ?", batch);
+            } catch (Exception e) {
+                log.error("Не удалось сохранить недавно просмотренные товары для {} пользователей", batch.size(), e);
+                batch.forEach(row -> {
+                    Buffer buffer = buffers.get(USER_KEY + row[1]);
+                    if (buffer != null) {
+                        buffer.dirty = true;
+                    }
+                });
+            }
+        }
+    }
+
+    // Сохранённые буферы, к которым давно не обращались, и лишние сверх лимита убираем из памяти
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        buffers.forEach((key, buffer) -> evict(key, buffer, idleSince));
+        int excess = buffers.size() - maxBuffers;
+        if (excess <= 0) {
+            return;
+        }
+        buffers.entrySet().stream()
+                .filter(entry -> !entry.getValue().dirty)
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                .limit(excess)
+                .toList()
+                .forEach(entry -> evict(entry.getKey(), entry.getValue(), Long.MAX_VALUE));
+    }
+
+    // Под монитором буфера, чтобы одновременный push() не попал в уже убранный буфер
+    private void evict(String key, Buffer buffer, long idleSince) {
+        synchronized (buffer) {
+            if (!buffer.dirty && buffer.lastAccess < idleSince) {
+                buffer.evicted = true;
+                buffers.remove(key, buffer);
+            }
+        }
+    }
+
+    private static final class Buffer {
+        // ids[0] - последний просмотренный
+        private final long[] ids = new long[CAPACITY];
+        private int size;
+        private volatile boolean loaded;
+        private volatile boolean evicted;
+        private volatile boolean dirty;
+        private volatile long version;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized void load(Long[] stored) {
+            if (stored != null) {
+                for (Long id : stored) {
+                    if (id != null && size < CAPACITY) {
+                        ids[size++] = id;
+                    }
+                }
+            }
+            loaded = true;
+        }
+
+        // Повторный просмотр поднимает товар наверх, самый старый выпадает при переполнении.
+        // false - буфер уже вытеснен
+        synchronized boolean push(long productId) {
+            if (evicted) {
+                return false;
+            }
+            int existing = indexOf(productId);
+            if (existing == 0) {
+                return true;
+            }
+            int shift = existing > 0 ? existing : Math.min(size, CAPACITY - 1);
+            System.arraycopy(ids, 0, ids, 1, shift);
+            ids[0] = productId;
+            if (existing < 0 && size < CAPACITY) {
+                size++;
+            }
+            version++;
+            dirty = true;
+            return true;
+        }
+
+        synchronized List<Long> ids(Long excludeId, int limit) {
+            List<Long> result = new ArrayList<>(Math.min(size, limit));
+            for (int i = 0; i < size && result.size() < limit; i++) {
+                if (excludeId == null || ids[i] != excludeId) {
+                    result.add(ids[i]);
+                }
+            }
+            return result;
+        }
+
+        // Литерал массива PostgreSQL: {3,1,2}
+        synchronized String takeSnapshot() {
+            dirty = false;
+            StringBuilder literal = new StringBuilder("{");
+            for (int i = 0; i < size; i++) {
+                literal.append(i == 0 ? "" : ",").append(ids[i]);
+            }
+            return literal.append('}').toString();
+        }
+
+        private int indexOf(long productId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == productId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
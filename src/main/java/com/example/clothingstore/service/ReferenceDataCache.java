@@ -0,0 +1,31 @@
+package com.example.clothingstore.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Сброс кэша второго уровня для справочников (категории, бренды) после коммита их изменений.
+ * Записи через сессию Hibernate обновляет в регионах сам; явный сброс нужен, чтобы кэшированные
+ * списки активных категорий и брендов не пережили архивирование, восстановление и пакетные правки.
+ */
+@Service
+public class ReferenceDataCache {
+
+    // Регион кэша запросов для findByDeletedFalse() в CategoryRepository и BrandRepository
+    public static final String QUERY_REGION = "reference-data";
+
+    private final Cache cache;
+
+    public ReferenceDataCache(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReferenceDataChanged(ReferenceDataChangedEvent event) {
+        cache.evictEntityData(event.entityType());
+        cache.evictQueryRegion(QUERY_REGION);
+    }
+}
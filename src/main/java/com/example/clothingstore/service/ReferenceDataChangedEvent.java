@@ -0,0 +1,5 @@
+package com.example.clothingstore.service;
+
+// Изменились категории или бренды: entityType - Category.class или Brand.class
+public record ReferenceDataChangedEvent(Class<?> entityType) {
+}
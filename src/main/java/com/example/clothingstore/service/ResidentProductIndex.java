@@ -0,0 +1,154 @@
+package com.example.clothingstore.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Общая часть резидентных индексов каталога (фильтры, подсказки, поиск): полное построение
+ * в фоне после старта, точечные обновления по ProductChangedEvent и чтение под read-lock.
+ * Изменения, пришедшие во время построения, копятся и применяются сразу после него.
+ * Пакеты обновлений применяются по одному, чтобы более старая загрузка не перезаписала
+ * более новую. Если первое построение упало, оно повторяется через минуту.
+ *
+ * @param <I> структура индекса
+ * @param <D> загруженные из БД данные одного товара
+ */
+public abstract class ResidentProductIndex<I, D> {
+
+    private static final long RETRY_DELAY_MS = 60_000;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Long> pendingChanges = ConcurrentHashMap.newKeySet();
+    private final Object applyMonitor = new Object();
+
+    private volatile boolean ready = false;
+    private volatile boolean rebuilding = false;
+    private I index;
+
+    protected ResidentProductIndex(I empty) {
+        this.index = empty;
+    }
+
+    // Название для логов, например "Индекс подсказок"
+    protected abstract String title();
+
+    protected abstract I build();
+
+    // Размер построенного индекса для лога
+    protected abstract String describe(I index);
+
+    // Товары, которых нет в результате, удаляются из индекса
+    protected abstract Map<Long, D> load(List<Long> ids);
+
+    // Вызывается под write-lock; doc == null - товар удалён
+    protected abstract void apply(I index, Long id, D doc);
+
+    // Нужны ли индексу события, в которых поменялись только просмотры
+    protected boolean tracksViews() {
+        return false;
+    }
+
+    // Под write-lock после публикации построенного индекса
+    protected void afterRebuild(I index) {
+    }
+
+    // Под write-lock после применения пакета обновлений
+    protected void afterApply(I index) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        CompletableFuture.runAsync(this::rebuild);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.viewsOnly() && !tracksViews()) {
+            return;
+        }
+        pendingChanges.addAll(event.productIds());
+        if (!rebuilding) {
+            applyPendingChanges();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void rebuild() {
+        rebuilding = true;
+        try {
+            long start = System.currentTimeMillis();
+            I fresh = build();
+
+            lock.writeLock().lock();
+            try {
+                index = fresh;
+                ready = true;
+                afterRebuild(fresh);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("{} построен: {} за {} мс", title(), describe(fresh), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("{}: построение не удалось", title(), e);
+            if (!ready) {
+                CompletableFuture.runAsync(this::rebuild,
+                        CompletableFuture.delayedExecutor(RETRY_DELAY_MS, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            rebuilding = false;
+        }
+        applyPendingChanges();
+    }
+
+    protected <T> T read(Function<I, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyPendingChanges() {
+        synchronized (applyMonitor) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>(pendingChanges);
+            pendingChanges.removeAll(ids);
+
+            try {
+                Map<Long, D> docs = load(ids);
+                lock.writeLock().lock();
+                try {
+                    for (Long id : ids) {
+                        apply(index, id, docs.get(id));
+                    }
+                    afterApply(index);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (Exception e) {
+                log.error("{}: ошибка обновления для товаров {}", title(), ids, e);
+                pendingChanges.addAll(ids);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.util.RussianStemmer;
+import com.example.clothingstore.util.WordTrie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Исправление поискового запроса перед поиском по индексу: набор в неверной раскладке
+ * ("aentjkrf" -> "футболка"), транслит ("futbolka") и опечатки в пределах 1-2 правок
+ * по словарю названий товаров и брендов. Слова, которые уже есть в индексе, не меняются.
+ */
+final class SearchQueryRewriter {
+
+    private static final String LATIN_KEYS = "qwertyuiop[]asdfghjkl;'zxcvbnm,.`";
+    private static final String CYRILLIC_KEYS = "йцукенгшщзхъфывапролджэячсмитьбюё";
+
+    private static final Map<Character, Character> TO_CYRILLIC = new HashMap<>();
+    private static final Map<Character, Character> TO_LATIN = new HashMap<>();
+
+    // Сначала многобуквенные сочетания, затем одиночные буквы
+    private static final String[][] TRANSLIT = {
+            {"shch", "щ"}, {"sch", "щ"}, {"zh", "ж"}, {"kh", "х"}, {"ts", "ц"}, {"ch", "ч"}, {"sh", "ш"},
+            {"yu", "ю"}, {"ya", "я"}, {"yo", "е"}, {"ju", "ю"}, {"ja", "я"}, {"iy", "ий"}, {"yy", "ый"},
+            {"a", "а"}, {"b", "б"}, {"v", "в"}, {"g", "г"}, {"d", "д"}, {"e", "е"}, {"z", "з"}, {"i", "и"},
+            {"y", "ы"}, {"j", "й"}, {"k", "к"}, {"l", "л"}, {"m", "м"}, {"n", "н"}, {"o", "о"}, {"p", "п"},
+            {"r", "р"}, {"s", "с"}, {"t", "т"}, {"u", "у"}, {"f", "ф"}, {"h", "х"}, {"c", "к"}, {"w", "в"},
+            {"x", "кс"}, {"q", "к"}};
+
+    static {
+        for (int i = 0; i < LATIN_KEYS.length(); i++) {
+            TO_CYRILLIC.put(LATIN_KEYS.charAt(i), CYRILLIC_KEYS.charAt(i));
+            TO_LATIN.put(CYRILLIC_KEYS.charAt(i), LATIN_KEYS.charAt(i));
+        }
+    }
+
+    private SearchQueryRewriter() {
+    }
+
+    /**
+     * Основы слов запроса после исправлений. knownStem проверяет наличие основы в индексе,
+     * dictionary - словарь словоформ для поиска опечаток.
+     */
+    static List<String> rewrite(String query, Predicate<String> knownStem, WordTrie dictionary) {
+        List<String> stems = new ArrayList<>();
+        if (query == null) {
+            return stems;
+        }
+        for (String chunk : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            List<String> words = ProductSearchIndex.words(chunk);
+            if (!allKnown(words, knownStem)) {
+                // Раскладку меняем для всего фрагмента: "b,hf" -> "ибра", запятая здесь - буква "б"
+                List<String> swapped = ProductSearchIndex.words(swapLayout(chunk));
+                if (!swapped.isEmpty() && allKnown(swapped, knownStem)) {
+                    words = swapped;
+                } else {
+                    words = correctEach(words, knownStem, dictionary);
+                }
+            }
+            words.forEach(word -> stems.add(RussianStemmer.stem(word)));
+        }
+        return stems;
+    }
+
+    private static List<String> correctEach(List<String> words, Predicate<String> knownStem, WordTrie dictionary) {
+        List<String> corrected = new ArrayList<>(words.size());
+        for (String word : words) {
+            corrected.add(correct(word, knownStem, dictionary));
+        }
+        return corrected;
+    }
+
+    private static String correct(String word, Predicate<String> knownStem, WordTrie dictionary) {
+        if (knownStem.test(RussianStemmer.stem(word))) {
+            return word;
+        }
+        List<String> variants = new ArrayList<>(3);
+        variants.add(word);
+        variants.add(swapLayout(word));
+        if (isLatin(word)) {
+            String transliterated = transliterate(word);
+            if (knownStem.test(RussianStemmer.stem(transliterated))) {
+                return transliterated;
+            }
+            variants.add(transliterated);
+        }
+
+        WordTrie.Match best = null;
+        for (String variant : variants) {
+            if (variant.length() < 3) {
+                continue;
+            }
+            WordTrie.Match match = dictionary.closest(variant, variant.length() <= 5 ? 1 : 2);
+            if (match != null && (best == null || match.distance() < best.distance()
+                    || (match.distance() == best.distance() && match.count() > best.count()))) {
+                best = match;
+            }
+        }
+        return best != null ? best.word() : word;
+    }
+
+    private static boolean allKnown(List<String> words, Predicate<String> knownStem) {
+        for (String word : words) {
+            if (!knownStem.test(RussianStemmer.stem(word))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String swapLayout(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Character swapped = TO_CYRILLIC.get(c);
+            if (swapped == null) {
+                swapped = TO_LATIN.get(c);
+            }
+            result.append(swapped != null ? swapped : c);
+        }
+        return result.toString();
+    }
+
+    static String transliterate(String word) {
+        StringBuilder result = new StringBuilder(word.length());
+        int i = 0;
+        while (i < word.length()) {
+            String replacement = null;
+            int consumed = 1;
+            for (String[] pair : TRANSLIT) {
+                if (word.startsWith(pair[0], i)) {
+                    replacement = pair[1];
+                    consumed = pair[0].length();
+                    break;
+                }
+            }
+            result.append(replacement != null ? replacement : String.valueOf(word.charAt(i)));
+            i += consumed;
+        }
+        return result.toString();
+    }
+
+    private static boolean isLatin(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.clothingstore.service;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Резервирование остатков при оформлении заказа: все строки списываются одним условным
+ * UPDATE products ... FROM (VALUES ...) WHERE stock_quantity >= qty RETURNING id, без чтения
+ * товаров и read-modify-write. Строки одного товара (разные размеры/цвета) суммируются.
+ * Работает только внутри транзакции вызывающего: если часть строк не прошла, он бросает
+ * исключение, и уже списанное откатывается вместе с заказом. Запись мимо Hibernate,
+ * поэтому загруженные в сессию Product хранят прежний остаток, а ревизий Envers нет.
+ * С включённым InventoryLedger резерв берётся в памяти, а в БД списывается после коммита пачкой.
+ */
+@Service
+public class StockReservationService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InventoryLedger inventoryLedger;
+
+    public StockReservationService(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                                   InventoryLedger inventoryLedger) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.inventoryLedger = inventoryLedger;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Reservation reserve(List<Line> lines) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            if (line.productId() == null || line.quantity() <= 0) {
+                failed.add(i);
+            } else {
+                quantities.merge(line.productId(), line.quantity(), Integer::sum);
+            }
+        }
+        if (quantities.isEmpty()) {
+            return new Reservation(failed);
+        }
+
+        Set<Long> reserved = inventoryLedger.isEnabled()
+                ? holdInLedger(quantities)
+                : new HashSet<>(decrement(quantities));
+        for (int i = 0; i < lines.size(); i++) {
+            Long productId = lines.get(i).productId();
+            if (productId != null && quantities.containsKey(productId) && !reserved.contains(productId)) {
+                failed.add(i);
+            }
+        }
+        failed.sort(null);
+        if (!reserved.isEmpty() && !inventoryLedger.isEnabled()) {
+            // Остаток влияет на фильтр "в наличии" и карточки; слушатели сработают после коммита
+            eventPublisher.publishEvent(ProductChangedEvent.stock(List.copyOf(reserved)));
+        }
+        return new Reservation(failed);
+    }
+
+    // Всё или ничего: при нехватке хотя бы одного товара в памяти ничего не держим
+    private Set<Long> holdInLedger(Map<Long, Integer> quantities) {
+        InventoryLedger.HoldResult hold = inventoryLedger.hold(quantities);
+        if (!hold.failedProducts().isEmpty()) {
+            Set<Long> reserved = new HashSet<>(quantities.keySet());
+            reserved.removeAll(hold.failedProducts());
+            return reserved;
+        }
+        Map<Long, Integer> held = Map.copyOf(quantities);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    inventoryLedger.confirm(hold.holdId(), held);
+                } else {
+                    inventoryLedger.release(hold.holdId());
+                }
+            }
+        });
+        return quantities.keySet();
+    }
+
+    private List<Long> decrement(Map<Long, Integer> quantities) {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE products p SET stock_quantity = p.stock_quantity - v.qty FROM (VALUES ");
+        Object[] args = new Object[quantities.size() * 2];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            sql.append(i == 0 ? "" : ", ").append("(?::bigint, ?::int)");
+            args[i * 2] = entry.getKey();
+            args[i * 2 + 1] = entry.getValue();
+            i++;
+        }
+        sql.append(") AS v(id, qty) WHERE p.id = v.id AND p.deleted = false AND p.stock_quantity >= v.qty RETURNING p.id");
+        return jdbcTemplate.queryForList(sql.toString(), Long.class, args);
+    }
+
+    public record Line(Long productId, int quantity) {
+    }
+
+    // failedLines - номера строк запроса, которым не хватило остатка (или товар снят с продажи)
+    public record Reservation(List<Integer> failedLines) {
+        public boolean isComplete() {
+            return failedLines.isEmpty();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.example.clothingstore.model.*;
 import com.example.clothingstore.repository.OrderItemRepository;
 import com.example.clothingstore.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,6 +14,8 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,9 +28,14 @@ public class TransactionalOrderService {
     private final CartService cartService;
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
+    private final StockReservationService stockReservationService;
+    private final CartPricingService cartPricingService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public Order createOrderFromCart(User user, OrderRequest orderRequest, String receiptEmail) {
+        // Корзина пишется в БД с задержкой - перед заказом сохраняем её синхронно
+        cartService.flush(user);
         List<CartItem> cartItems = cartService.getCartItems(user);
 
         if (cartItems.isEmpty()) {
@@ -44,15 +52,24 @@ public class TransactionalOrderService {
             throw new RuntimeException("Адрес доставки обязателен");
         }
 
+        StockReservationService.Reservation reservation = stockReservationService.reserve(cartItems.stream()
+                .map(item -> new StockReservationService.Line(item.getProduct().getId(), item.getQuantity()))
+                .collect(Collectors.toList()));
+        if (!reservation.isComplete()) {
+            throw new BusinessException("Недостаточно товара на складе: " + reservation.failedLines().stream()
+                    .map(line -> cartItems.get(line).getProduct().getName())
+                    .distinct()
+                    .collect(Collectors.joining(", ")));
+        }
+
         List<Product> products = cartItems.stream()
                 .map(CartItem::getProduct)
                 .collect(Collectors.toList());
         order.setProducts(products);
 
-        BigDecimal totalAmount = cartItems.stream()
-                .map(item -> item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        order.setTotalAmount(totalAmount);
+        // Та же сумма, что покупатель видел при оформлении: скидки и доставка по правилам корзины,
+        // цены - из товаров, прочитанных в этой транзакции
+        order.setTotalAmount(cartPricingService.priceItems(cartItems).totalAmount());
 
         order.setOrderNumber("ORD-" + System.currentTimeMillis());
 
@@ -70,7 +87,10 @@ public class TransactionalOrderService {
 
         orderItemRepository.saveAll(orderItems);
 
-        cartService.clearCart(user);
+        cartService.removeCheckedOut(user, cartItems);
+
+        eventPublisher.publishEvent(new OrderPlacedEvent(savedOrder.getId(),
+                products.stream().map(Product::getId).collect(Collectors.toList())));
 
         System.out.println("Отправляем чек на: " + receiptEmail);
 
@@ -88,18 +108,36 @@ public class TransactionalOrderService {
             order.setStatus(OrderStatus.PENDING);
             order.setOrderDate(LocalDateTime.now());
 
-            BigDecimal totalAmount = BigDecimal.ZERO;
-            List<Product> products = new ArrayList<>();
-
-            for (OrderRequest.OrderItemRequest item : request.getItems()) {
-                Product product = productService.getProductById(item.getProductId());
-
-                if (!productService.isProductAvailable(product.getId(), item.getQuantity())) {
-                    throw new BusinessException("Товар '" + product.getName() + "' недоступен в количестве " + item.getQuantity());
+            List<OrderRequest.OrderItemRequest> items = request.getItems();
+            Map<Long, Product> byId = productService.findByIds(items.stream()
+                            .map(OrderRequest.OrderItemRequest::getProductId)
+                            .distinct()
+                            .collect(Collectors.toList())).stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            for (OrderRequest.OrderItemRequest item : items) {
+                if (!byId.containsKey(item.getProductId())) {
+                    throw new BusinessException("Product not found: " + item.getProductId());
                 }
+            }
 
-                productService.updateStockQuantity(product.getId(), item.getQuantity());
+            // Все строки одним условным UPDATE; при нехватке бросаем - списанное откатится
+            StockReservationService.Reservation reservation = stockReservationService.reserve(items.stream()
+                    .map(item -> new StockReservationService.Line(item.getProductId(),
+                            item.getQuantity() != null ? item.getQuantity() : 0))
+                    .collect(Collectors.toList()));
+            if (!reservation.isComplete()) {
+                throw new BusinessException(reservation.failedLines().stream()
+                        .map(items::get)
+                        .map(item -> "Товар '" + byId.get(item.getProductId()).getName()
+                                + "' недоступен в количестве " + item.getQuantity())
+                        .collect(Collectors.joining("; ")));
+            }
 
+            // Заказы через API - сумма строк, без скидки и доставки корзины
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            List<Product> products = new ArrayList<>();
+            for (OrderRequest.OrderItemRequest item : items) {
+                Product product = byId.get(item.getProductId());
                 totalAmount = totalAmount.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
                 products.add(product);
             }
@@ -107,7 +145,10 @@ public class TransactionalOrderService {
             order.setProducts(products);
             order.setTotalAmount(totalAmount);
 
-            return orderService.saveOrder(order);
+            Order savedOrder = orderService.saveOrder(order);
+            eventPublisher.publishEvent(new OrderPlacedEvent(savedOrder.getId(),
+                    products.stream().map(Product::getId).collect(Collectors.toList())));
+            return savedOrder;
 
         } catch (Exception e) {
             throw new BusinessException("Ошибка создания заказа: " + e.getMessage());
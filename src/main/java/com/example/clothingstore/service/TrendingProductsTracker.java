@@ -0,0 +1,159 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.repository.OrderItemRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * "Сейчас в тренде": экспоненциально затухающий счёт просмотров, добавлений в корзину
+ * и покупок. Затухание считается от опорного момента (forward decay): новое событие весит
+ * exp((t - landmark) / tau), поэтому старые счета не нужно пересчитывать при каждом событии.
+ * События копятся в DoubleAdder и применяются раз в несколько секунд; в памяти держится
+ * не больше CAPACITY товаров, а готовый топ отдаётся срезом списка.
+ */
+@Slf4j
+@Service
+public class TrendingProductsTracker {
+
+    private static final double VIEW_WEIGHT = 1;
+    private static final double CART_WEIGHT = 4;
+    private static final double PURCHASE_WEIGHT = 10;
+
+    private static final int CAPACITY = 5_000;
+    private static final int TOP_SIZE = 200;
+    // Через столько периодов затухания счета приводятся к новому опорному моменту
+    private static final double RENORMALIZE_AFTER = 20;
+
+    private final OrderItemRepository orderItemRepository;
+    private final double tauMillis;
+    private final Map<Long, DoubleAdder> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Double> scores = new HashMap<>();
+
+    private long landmark = System.currentTimeMillis();
+    private volatile boolean ready = false;
+    private volatile List<Long> top = List.of();
+
+    public TrendingProductsTracker(OrderItemRepository orderItemRepository,
+                                   @Value("${app.trending.half-life-hours:72}") double halfLifeHours) {
+        this.orderItemRepository = orderItemRepository;
+        this.tauMillis = halfLifeHours * 3_600_000 / Math.log(2);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        CompletableFuture.runAsync(this::seedFromOrders);
+    }
+
+    public void recordView(Long productId) {
+        record(productId, VIEW_WEIGHT);
+    }
+
+    public void recordCartAdd(Long productId, int quantity) {
+        record(productId, CART_WEIGHT * Math.max(1, quantity));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        event.productIds().forEach(productId -> record(productId, PURCHASE_WEIGHT));
+    }
+
+    /**
+     * Id товаров в тренде по убыванию счёта, срез [offset, offset + limit).
+     * Пустой Optional - счёт ещё не накоплен, нужно брать популярные товары из БД.
+     */
+    public Optional<List<Long>> top(int offset, int limit) {
+        List<Long> current = top;
+        if (!ready || current.isEmpty()) {
+            return Optional.empty();
+        }
+        int from = Math.min(offset, current.size());
+        return Optional.of(current.subList(from, Math.min(from + limit, current.size())));
+    }
+
+    public int size() {
+        return top.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.trending.refresh-interval-ms:5000}")
+    public synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        if (now - landmark > RENORMALIZE_AFTER * tauMillis) {
+            double scale = Math.exp((landmark - now) / tauMillis);
+            scores.replaceAll((productId, score) -> score * scale);
+            landmark = now;
+        }
+
+        double boost = Math.exp((now - landmark) / tauMillis);
+        boolean changed = top.isEmpty();
+        for (Map.Entry<Long, DoubleAdder> entry : pending.entrySet()) {
+            double weight = entry.getValue().sumThenReset();
+            if (weight > 0) {
+                scores.merge(entry.getKey(), weight * boost, Double::sum);
+                changed = true;
+            } else if (pending.remove(entry.getKey(), entry.getValue())) {
+                drain(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!changed) {
+            return;
+        }
+
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        if (ranked.size() > CAPACITY + CAPACITY / 4) {
+            // Хвост с наименьшим счётом вытесняем, чтобы память не росла вместе с каталогом
+            ranked.subList(CAPACITY, ranked.size()).forEach(entry -> scores.remove(entry.getKey()));
+        }
+        top = ranked.stream().limit(TOP_SIZE).map(Map.Entry::getKey).toList();
+    }
+
+    // Если refresh() как раз убрал пустой счётчик, записанное в него переносим в новый
+    private void record(Long productId, double weight) {
+        if (productId == null) {
+            return;
+        }
+        DoubleAdder adder = pending.computeIfAbsent(productId, id -> new DoubleAdder());
+        adder.add(weight);
+        if (pending.get(productId) != adder) {
+            drain(productId, adder);
+        }
+    }
+
+    private void drain(Long productId, DoubleAdder removed) {
+        double late = removed.sumThenReset();
+        if (late > 0) {
+            record(productId, late);
+        }
+    }
+
+    // После перезапуска просмотры не восстановить, а покупки за последние недели есть в заказах
+    private synchronized void seedFromOrders() {
+        try {
+            LocalDateTime since = LocalDateTime.now().minusHours((long) (tauMillis * 3 / 3_600_000));
+            for (Object[] row : orderItemRepository.findPurchaseRowsSince(since)) {
+                long productId = ((Number) row[0]).longValue();
+                long orderedAt = ((LocalDateTime) row[1]).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                int quantity = row[2] != null ? ((Number) row[2]).intValue() : 1;
+                scores.merge(productId, PURCHASE_WEIGHT * Math.max(1, quantity)
+                        * Math.exp((orderedAt - landmark) / tauMillis), Double::sum);
+            }
+            log.info("Тренды восстановлены по заказам: {} товаров", scores.size());
+        } catch (Exception e) {
+            log.error("Не удалось восстановить тренды по заказам", e);
+        }
+        ready = true;
+        refresh();
+    }
+}
@@ -1,19 +1,29 @@
 package com.example.clothingstore.service;
 
+import com.example.clothingstore.dto.CursorPage;
 import com.example.clothingstore.model.Role;
 import com.example.clothingstore.model.User;
 import com.example.clothingstore.repository.UserRepository;
+import com.example.clothingstore.util.KeysetCursor;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -256,4 +266,68 @@ public class UserService {
     public Page<User> getDeletedCustomers(Pageable pageable) {
         return userRepository.findByDeletedTrue(pageable);
     }
+
+    // Только NOT NULL колонки: условие курсора (a > ? OR a = ? AND id > ?) пропускает строки с NULL
+    private static final Set<String> USER_SORT_FIELDS = Set.of("id", "username", "email", "createdAt");
+
+    @Transactional(readOnly = true)
+    public CursorPage<User> scrollUsers(String search, Sort sort, int size, String after, boolean exactCount) {
+        Specification<User> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.isFalse(root.get("deleted")));
+            addSearch(predicates, search, root, cb);
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+        return scroll(spec, sort, size, after, exactCount, search != null && !search.isBlank());
+    }
+
+    // status: null - все клиенты, "active" - заходили за 30 дней, "deleted" - удалённые
+    @Transactional(readOnly = true)
+    public CursorPage<User> scrollCustomers(String search, String status, Sort sort, int size,
+                                            String after, boolean exactCount) {
+        Specification<User> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (search != null && !search.isBlank()) {
+                predicates.add(cb.isFalse(root.get("deleted")));
+                predicates.add(cb.isMember(Role.ROLE_CUSTOMER, root.get("roles")));
+                addSearch(predicates, search, root, cb);
+            } else if ("active".equals(status)) {
+                predicates.add(cb.isFalse(root.get("deleted")));
+                predicates.add(cb.greaterThanOrEqualTo(root.get("lastActivity"), LocalDateTime.now().minusDays(30)));
+            } else if ("deleted".equals(status)) {
+                predicates.add(cb.isTrue(root.get("deleted")));
+            } else {
+                predicates.add(cb.isFalse(root.get("deleted")));
+                predicates.add(cb.isNotMember(Role.ROLE_ADMIN, root.get("roles")));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+        return scroll(spec, sort, size, after, exactCount, (search != null && !search.isBlank()) || status != null);
+    }
+
+    // Оценка reltuples - по всей таблице, поэтому для отфильтрованного списка итог не показываем
+    private CursorPage<User> scroll(Specification<User> spec, Sort sort, int size, String after, boolean exactCount,
+                                    boolean filtered) {
+        Sort stable = KeysetCursor.stableSort(sort, USER_SORT_FIELDS, Sort.Order.asc("id"));
+        Window<User> window = userRepository.findBy(spec, query -> query
+                .sortBy(stable)
+                .limit(size)
+                .scroll(KeysetCursor.decode(after, User.class)));
+        Long total = exactCount ? Long.valueOf(userRepository.count(spec))
+                : filtered ? null : Long.valueOf(userRepository.estimateRowCount());
+        return new CursorPage<>(window, size, stable, total, exactCount);
+    }
+
+    private static void addSearch(List<Predicate> predicates, String search,
+                                  Root<User> root, CriteriaBuilder cb) {
+        if (search == null || search.isBlank()) {
+            return;
+        }
+        String pattern = "%" + search.trim().toLowerCase() + "%";
+        predicates.add(cb.or(
+                cb.like(cb.lower(root.get("firstName")), pattern),
+                cb.like(cb.lower(root.get("lastName")), pattern),
+                cb.like(cb.lower(root.get("email")), pattern),
+                cb.like(cb.lower(root.get("username")), pattern)));
+    }
 }
\ No newline at end of file
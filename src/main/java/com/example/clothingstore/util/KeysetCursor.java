@@ -0,0 +1,74 @@
+package com.example.clothingstore.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации (?after=...): значения ключей сортировки
+ * последней строки окна в base64url(JSON). При разборе значения приводятся к типам полей сущности.
+ */
+public class KeysetCursor {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    static {
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    public static String encode(ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset)) {
+            throw new IllegalArgumentException("Поддерживается только keyset-позиция");
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(keyset.getKeys());
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось сформировать курсор", e);
+        }
+    }
+
+    // Пустой курсор означает начало выборки в режиме курсоров
+    public static KeysetScrollPosition decode(String cursor, Class<?> entityType) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor);
+            Map<String, Object> raw = objectMapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() {});
+
+            Map<String, Object> keys = new LinkedHashMap<>();
+            raw.forEach((property, value) -> {
+                Class<?> type = PropertyPath.from(property, entityType).getLeafType();
+                keys.put(property, value != null ? objectMapper.convertValue(value, type) : null);
+            });
+            return ScrollPosition.forward(keys);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Некорректный курсор пагинации", e);
+        }
+    }
+
+    // Оставляет первое разрешённое поле сортировки и добавляет id, чтобы ключ был уникальным
+    public static Sort stableSort(Sort sort, Set<String> allowedFields, Sort.Order fallback) {
+        Sort.Order primary = sort.stream()
+                .filter(order -> allowedFields.contains(order.getProperty()))
+                .findFirst()
+                .orElse(fallback);
+        if (primary.getProperty().equals("id")) {
+            return Sort.by(primary);
+        }
+        return Sort.by(primary, new Sort.Order(primary.getDirection(), "id"));
+    }
+}
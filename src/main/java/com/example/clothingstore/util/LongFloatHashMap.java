@@ -0,0 +1,99 @@
+package com.example.clothingstore.util;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица long -> float с открытой адресацией, без упаковки ключей и значений в объекты.
+ * Ключ Long.MIN_VALUE зарезервирован под пустую ячейку. Не потокобезопасна.
+ */
+public class LongFloatHashMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private float[] values;
+    private int size;
+
+    public LongFloatHashMap() {
+        this(8);
+    }
+
+    public LongFloatHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new float[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float get(long key) {
+        int slot = find(key);
+        return keys[slot] == key ? values[slot] : 0f;
+    }
+
+    public void addTo(long key, float delta) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Недопустимый ключ: " + key);
+        }
+        int slot = find(key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public void addAll(LongFloatHashMap other) {
+        other.forEach(this::addTo);
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new float[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, float value);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.clothingstore.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Облегчённый стеммер для поиска по каталогу: отсекает самое длинное падежное
+ * окончание существительных и прилагательных, оставляя основу не короче трёх букв.
+ * Для латиницы убирается окончание множественного числа.
+ */
+public final class RussianStemmer {
+
+    private static final int MIN_STEM = 3;
+
+    private static final String[] ENDINGS = sortedByLength(
+            // прилагательные и причастия
+            "ыми", "ими", "ого", "его", "ому", "ему", "ая", "яя", "ое", "ее", "ые", "ие",
+            "ый", "ий", "ой", "ую", "юю", "ых", "их", "ым", "им", "ем", "ом",
+            // существительные
+            "ами", "ями", "иям", "иях", "ах", "ях", "ов", "ев", "ей", "ам", "ям", "ью",
+            "ия", "ья", "ье", "а", "я", "о", "е", "ы", "и", "у", "ю", "й", "ь");
+
+    private RussianStemmer() {
+    }
+
+    public static String stem(String word) {
+        String value = word.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        if (value.length() <= MIN_STEM) {
+            return value;
+        }
+        if (isLatin(value)) {
+            return stemLatin(value);
+        }
+        for (String ending : ENDINGS) {
+            if (value.endsWith(ending) && value.length() - ending.length() >= MIN_STEM) {
+                return value.substring(0, value.length() - ending.length());
+            }
+        }
+        return value;
+    }
+
+    private static String stemLatin(String value) {
+        if (value.endsWith("ies")) {
+            return value.substring(0, value.length() - 3) + "y";
+        }
+        if (value.endsWith("ses") || value.endsWith("xes") || value.endsWith("ches") || value.endsWith("shes")) {
+            return value.substring(0, value.length() - 2);
+        }
+        if (value.endsWith("s") && !value.endsWith("ss")) {
+            return value.substring(0, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static boolean isLatin(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.UnicodeBlock.of(value.charAt(i)) == Character.UnicodeBlock.CYRILLIC) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] sortedByLength(String... endings) {
+        String[] sorted = endings.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(String::length).reversed());
+        return sorted;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.clothingstore.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш дорогих вычислений с объединением запросов (single-flight): одновременные промахи по
+ * одному ключу ждут один CompletableFuture, а не считают каждый заново. Первый промах считает
+ * в своём потоке (с его транзакцией и контекстом безопасности), остальные ждут его результат.
+ * <p>
+ * До истечения TTL запись обновляется заранее с вероятностью, растущей к концу срока
+ * (XFetch: now - delta * beta * ln(rand) >= expiry, delta - время последнего вычисления).
+ * Досрочное обновление идёт в фоне, читатели до его конца получают прежнее значение.
+ * Ошибки не кэшируются. Сверх maxEntries истёкшие записи удаляются, а если не помогло - все.
+ */
+public class SingleFlightCache<K, V> {
+
+    private final long ttlNanos;
+    private final double beta;
+    private final int maxEntries;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public SingleFlightCache(Duration ttl, int maxEntries) {
+        this(ttl, 1.0, maxEntries);
+    }
+
+    // beta > 1 - обновлять раньше, beta < 1 - ближе к истечению
+    public SingleFlightCache(Duration ttl, double beta, int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.beta = beta;
+        this.maxEntries = maxEntries;
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        Entry<V> entry = entries.get(key);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expiresAt < 0) {
+            if (entry.refreshEarly(now, beta)) {
+                load(key, loader, true);
+            }
+            return entry.value;
+        }
+        return join(load(key, loader, false));
+    }
+
+    // Пересчитать в фоне, пока читатели получают прежнее значение; повторные вызовы объединяются
+    public CompletableFuture<V> refresh(K key, Supplier<V> loader) {
+        return load(key, loader, true);
+    }
+
+    // Идёт ли сейчас вычисление по ключу: refresh() в это время присоединится к нему, а не начнёт новое
+    public boolean isLoading(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    // Уже начатые вычисления доставят результат своим ожидающим, но в кэш его не положат
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private CompletableFuture<V> load(K key, Supplier<V> loader, boolean async) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        long startedGeneration = generation.get();
+        Runnable task = () -> {
+            long start = System.nanoTime();
+            try {
+                V value = loader.get();
+                long end = System.nanoTime();
+                if (generation.get() == startedGeneration) {
+                    evictIfFull(end);
+                    entries.put(key, new Entry<>(value, end - start, end + ttlNanos));
+                }
+                future.complete(value);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, future);
+            }
+        };
+        if (async) {
+            CompletableFuture.runAsync(task);
+        } else {
+            task.run();
+        }
+        return future;
+    }
+
+    private void evictIfFull(long now) {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        entries.values().removeIf(entry -> now - entry.expiresAt >= 0);
+        if (entries.size() >= maxEntries) {
+            entries.clear();
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry<V>(V value, long computeNanos, long expiresAt) {
+        boolean refreshEarly(long now, double beta) {
+            double gap = -computeNanos * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+            return now + gap - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.clothingstore.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Префиксное дерево слов со счётчиком вхождений. Поиск ближайшего слова идёт
+ * обходом дерева с построчным расчётом расстояния Левенштейна: ветка отсекается,
+ * как только минимум в строке превышает допустимое расстояние.
+ */
+public class WordTrie {
+
+    private final Node root = new Node();
+
+    public void add(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.children.computeIfAbsent(word.charAt(i), c -> new Node());
+        }
+        node.count++;
+    }
+
+    // Опустевшие узлы удаляются снизу вверх, иначе дерево растёт от каждого когда-либо встреченного слова
+    public void remove(String word) {
+        Node[] path = new Node[word.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < word.length(); i++) {
+            path[i + 1] = path[i].children.get(word.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        Node node = path[word.length()];
+        if (node.count == 0) {
+            return;
+        }
+        node.count--;
+        for (int i = word.length(); i > 0 && path[i].count == 0 && path[i].children.isEmpty(); i--) {
+            path[i - 1].children.remove(word.charAt(i - 1));
+        }
+    }
+
+    public boolean contains(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.children.get(word.charAt(i));
+        }
+        return node != null && node.count > 0;
+    }
+
+    /**
+     * Ближайшее слово словаря не дальше maxDistance правок; при равном расстоянии -
+     * самое частое. null, если подходящего слова нет.
+     */
+    public Match closest(String word, int maxDistance) {
+        int[] firstRow = new int[word.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        Match[] best = new Match[1];
+        StringBuilder prefix = new StringBuilder();
+        for (Map.Entry<Character, Node> child : root.children.entrySet()) {
+            prefix.append(child.getKey());
+            search(child.getValue(), child.getKey(), word, firstRow, maxDistance, prefix, best);
+            prefix.setLength(prefix.length() - 1);
+        }
+        return best[0];
+    }
+
+    private void search(Node node, char letter, String word, int[] previousRow, int maxDistance,
+                        StringBuilder prefix, Match[] best) {
+        int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int rowMin = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int cost = word.charAt(i - 1) == letter ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), previousRow[i - 1] + cost);
+            rowMin = Math.min(rowMin, row[i]);
+        }
+
+        int distance = row[row.length - 1];
+        if (node.count > 0 && distance <= maxDistance) {
+            Match current = best[0];
+            if (current == null || distance < current.distance()
+                    || (distance == current.distance() && node.count > current.count())) {
+                best[0] = new Match(prefix.toString(), distance, node.count);
+            }
+        }
+
+        if (rowMin <= maxDistance) {
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                prefix.append(child.getKey());
+                search(child.getValue(), child.getKey(), word, row, maxDistance, prefix, best);
+                prefix.setLength(prefix.length() - 1);
+            }
+        }
+    }
+
+    public record Match(String word, int distance, int count) {
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private int count;
+    }
+}
@@ -109,6 +109,7 @@ document.addEventListener('DOMContentLoaded', function() {
 
     if (searchInput) {
         searchInput.addEventListener('input', function() {
+            loadSearchSuggestions(searchInput.value);
             clearTimeout(searchTimeout);
             searchTimeout = setTimeout(() => {
                 document.getElementById('filterForm').submit();
@@ -136,6 +137,35 @@ document.addEventListener('DOMContentLoaded', function() {
     }
 });
 
+// Подсказки для строки поиска
+let suggestController = null;
+
+function loadSearchSuggestions(query) {
+    const datalist = document.getElementById('searchSuggestions');
+    if (!datalist) return;
+
+    if (suggestController) {
+        suggestController.abort();
+    }
+    if (!query || !query.trim()) {
+        datalist.innerHTML = '';
+        return;
+    }
+
+    suggestController = new AbortController();
+    fetch(`/api/products/suggest?q=${encodeURIComponent(query.trim())}&limit=8`, { signal: suggestController.signal })
+        .then(response => response.ok ? response.json() : [])
+        .then(suggestions => {
+            datalist.innerHTML = '';
+            suggestions.forEach(suggestion => {
+                const option = document.createElement('option');
+                option.value = suggestion.name;
+                datalist.appendChild(option);
+            });
+        })
+        .catch(() => {});
+}
+
 // Загрузка статуса избранного (опционально - для предзагрузки состояния)
 function loadFavoriteStatus() {
     // Здесь можно добавить запрос для получения статуса избранного
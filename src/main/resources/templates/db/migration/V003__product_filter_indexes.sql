@@ -0,0 +1,18 @@
+-- Индексы под динамический фильтр каталога (ProductSpecifications)
+-- Частичные индексы: в выборки каталога попадают только неудалённые товары
+CREATE INDEX IF NOT EXISTS idx_products_active_category_price ON products(category_id, price) WHERE deleted = false;
+CREATE INDEX IF NOT EXISTS idx_products_active_brand_price ON products(brand_id, price) WHERE deleted = false;
+CREATE INDEX IF NOT EXISTS idx_products_active_audience_price ON products(target_audience, price) WHERE deleted = false;
+CREATE INDEX IF NOT EXISTS idx_products_active_created_at ON products(created_at DESC, id DESC) WHERE deleted = false;
+
+-- Поиск по подстроке (LIKE '%...%') по названию и цвету
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_product_colors_name_trgm ON product_colors USING gin (lower(name) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_product_colors_product ON product_colors(product_id);
+CREATE INDEX IF NOT EXISTS idx_product_tags_tag_product ON product_tags(tag, product_id);
+
+ANALYZE products;
+ANALYZE product_colors;
+ANALYZE product_tags;
@@ -0,0 +1,22 @@
+-- Размеры товара массивом вместо разбора CSV-строки в каждом запросе
+ALTER TABLE products ADD COLUMN IF NOT EXISTS size_list text[];
+ALTER TABLE products_aud ADD COLUMN IF NOT EXISTS size_list text[];
+
+-- Заполнение из products.sizes: trim, верхний регистр, без пробелов и повторов, порядок сохраняется
+UPDATE products p
+SET size_list = ARRAY(
+    SELECT s.size
+    FROM (
+        SELECT upper(regexp_replace(part, '\s+', '', 'g')) AS size, min(ord) AS ord
+        FROM unnest(string_to_array(p.sizes, ',')) WITH ORDINALITY AS t(part, ord)
+        WHERE trim(part) <> ''
+        GROUP BY 1
+    ) s
+    ORDER BY s.ord
+)
+WHERE p.sizes IS NOT NULL AND p.size_list IS NULL;
+
+-- Фильтр по размеру: size_list @> ARRAY['M']
+CREATE INDEX IF NOT EXISTS idx_products_size_list ON products USING gin (size_list) WHERE deleted = false;
+
+ANALYZE products;
@@ -0,0 +1,21 @@
+-- Скидка хранится в строке товара, чтобы распродажа и топ скидок читались по индексу
+ALTER TABLE products ADD COLUMN IF NOT EXISTS discount_amount numeric(12, 2) NOT NULL DEFAULT 0;
+ALTER TABLE products ADD COLUMN IF NOT EXISTS discount_percent numeric(5, 2) NOT NULL DEFAULT 0;
+ALTER TABLE products_aud ADD COLUMN IF NOT EXISTS discount_amount numeric(12, 2);
+ALTER TABLE products_aud ADD COLUMN IF NOT EXISTS discount_percent numeric(5, 2);
+
+-- Та же формула, что в Product.syncDiscount
+UPDATE products
+SET discount_amount = original_price - price,
+    discount_percent = round((original_price - price) / original_price, 2) * 100
+WHERE original_price IS NOT NULL AND price IS NOT NULL
+  AND original_price > 0 AND original_price > price;
+
+-- /catalog/sale, блок распродажи на главной и /api/products/sale: ORDER BY discount_percent DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_products_active_discount_percent
+    ON products(discount_percent DESC, id DESC) WHERE deleted = false AND discount_percent > 0;
+-- Топ скидок в рублях: ORDER BY discount_amount DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_products_active_discount_amount
+    ON products(discount_amount DESC, id DESC) WHERE deleted = false AND discount_amount > 0;
+
+ANALYZE products;
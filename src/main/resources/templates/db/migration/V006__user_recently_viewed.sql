@@ -0,0 +1,3 @@
+-- Недавно просмотренные товары: id по порядку, последний просмотренный первым.
+-- Пишется пачками из памяти (RecentlyViewedService), а не на каждый просмотр
+ALTER TABLE users ADD COLUMN IF NOT EXISTS recently_viewed bigint[];
@@ -0,0 +1,47 @@
+-- Теги и цвета в строке товара: фильтры по ним без соединения с product_tags/product_colors
+ALTER TABLE products ADD COLUMN IF NOT EXISTS tag_mask integer NOT NULL DEFAULT 0;
+ALTER TABLE products ADD COLUMN IF NOT EXISTS color_names text[];
+ALTER TABLE products_aud ADD COLUMN IF NOT EXISTS tag_mask integer;
+ALTER TABLE products_aud ADD COLUMN IF NOT EXISTS color_names text[];
+
+-- Бит = ordinal() ProductTag: SALE, NEW_ARRIVAL, BESTSELLER, REGULAR_PRICE, LIMITED_EDITION
+UPDATE products p
+SET tag_mask = t.mask
+FROM (
+    SELECT product_id,
+           bit_or(CASE tag
+                      WHEN 'SALE' THEN 1
+                      WHEN 'NEW_ARRIVAL' THEN 2
+                      WHEN 'BESTSELLER' THEN 4
+                      WHEN 'REGULAR_PRICE' THEN 8
+                      WHEN 'LIMITED_EDITION' THEN 16
+                      ELSE 0
+               END) AS mask
+    FROM product_tags
+    GROUP BY product_id
+) t
+WHERE p.id = t.product_id AND p.tag_mask = 0;
+-- Отметка для ProductColumnsBackfill: перенос уже выполнен, при старте не повторять
+COMMENT ON TABLE product_tags IS 'migrated to products.tag_mask';
+
+-- Та же нормализация, что в Product.normalizeColor: trim, нижний регистр, без повторов
+UPDATE products p
+SET color_names = ARRAY(
+    SELECT c.name
+    FROM (
+        SELECT lower(trim(pc.name)) AS name, min(pc.id) AS ord
+        FROM product_colors pc
+        WHERE pc.product_id = p.id AND trim(pc.name) <> ''
+        GROUP BY 1
+    ) c
+    ORDER BY c.ord
+)
+WHERE p.color_names IS NULL;
+
+-- Фильтр по цвету: color_names @> ARRAY['black']
+CREATE INDEX IF NOT EXISTS idx_products_color_names ON products USING gin (color_names) WHERE deleted = false;
+
+-- product_tags приложение больше не читает; удалить после проверки переноса:
+-- DROP TABLE product_tags; DROP TABLE product_tags_aud;
+
+ANALYZE products;
@@ -0,0 +1,11 @@
+-- Полные индексы, которые ddl-auto создал по @Index в Product, дублируют частичные из V003
+-- (выборки каталога всегда с deleted = false) и только замедляют запись
+-- (частичные при старте создаёт ProductColumnsBackfill)
+DROP INDEX IF EXISTS idx_products_category_price;
+DROP INDEX IF EXISTS idx_products_brand_price;
+DROP INDEX IF EXISTS idx_products_audience_price;
+DROP INDEX IF EXISTS idx_products_price;
+DROP INDEX IF EXISTS idx_products_created_at;
+-- То же для скидок: частичные индексы из V005 (их создаёт и ProductColumnsBackfill при старте)
+DROP INDEX IF EXISTS idx_products_discount_percent;
+DROP INDEX IF EXISTS idx_products_discount_amount;
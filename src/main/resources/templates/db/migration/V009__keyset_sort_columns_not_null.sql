@@ -0,0 +1,16 @@
+-- Колонки сортировки keyset-пагинации (UserService/OrderService/ProductService) должны быть NOT NULL:
+-- строки с NULL не попадают ни в одно окно курсора
+UPDATE users SET created_at = '1970-01-01' WHERE created_at IS NULL;
+ALTER TABLE users ALTER COLUMN created_at SET NOT NULL;
+
+UPDATE orders SET order_date = '1970-01-01' WHERE order_date IS NULL;
+ALTER TABLE orders ALTER COLUMN order_date SET NOT NULL;
+
+UPDATE orders SET order_number = 'ORD-' || id WHERE order_number IS NULL;
+ALTER TABLE orders ALTER COLUMN order_number SET NOT NULL;
+
+UPDATE products SET created_at = '1970-01-01' WHERE created_at IS NULL;
+ALTER TABLE products ALTER COLUMN created_at SET NOT NULL;
+
+UPDATE products SET name = 'Товар ' || id WHERE name IS NULL;
+ALTER TABLE products ALTER COLUMN name SET NOT NULL;
@@ -0,0 +1,63 @@
+package com.example.clothingstore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CartPricingServiceTest {
+
+    // Скидка 500 ₽ от 2000 ₽, доставка 300 ₽, бесплатно от 2000 ₽ после скидки
+    private final CartPricingService pricing = new CartPricingService(
+            new BigDecimal("2000"), new BigDecimal("500"), new BigDecimal("2000"), new BigDecimal("300"));
+
+    @Test
+    void smallCartPaysDelivery() {
+        CartPricingService.Summary summary = pricing.price(List.of(
+                new CartPricingService.Line(49_990, 2), new CartPricingService.Line(10_001, 1)));
+
+        assertEquals(new CartPricingService.Summary(2, 3, 109_981, 0, 30_000, 139_981), summary);
+        assertEquals(new BigDecimal("1399.81"), summary.totalAmount());
+    }
+
+    @Test
+    void discountAppliesFromThresholdAndDeliveryCountsDiscountedSum() {
+        assertEquals(new CartPricingService.Summary(1, 1, 200_000, 50_000, 30_000, 180_000),
+                pricing.price(List.of(new CartPricingService.Line(200_000, 1))));
+        assertEquals(new CartPricingService.Summary(1, 1, 250_000, 50_000, 0, 200_000),
+                pricing.price(List.of(new CartPricingService.Line(250_000, 1))));
+    }
+
+    @Test
+    void discountNeverExceedsSubtotal() {
+        CartPricingService pricing = new CartPricingService(
+                new BigDecimal("0"), new BigDecimal("500"), new BigDecimal("100000"), new BigDecimal("300"));
+
+        assertEquals(new CartPricingService.Summary(1, 1, 10_000, 10_000, 30_000, 30_000),
+                pricing.price(List.of(new CartPricingService.Line(10_000, 1))));
+    }
+
+    @Test
+    void emptyCartIsFree() {
+        assertSame(CartPricingService.Summary.EMPTY, pricing.price(List.of()));
+    }
+
+    @Test
+    void amountsAreRoundedToKopecks() {
+        assertEquals(1000L, CartPricingService.toMinor(new BigDecimal("9.995")));
+        assertEquals(new BigDecimal("9.99"), CartPricingService.toAmount(999));
+    }
+
+    @Test
+    void onlyPriceRelevantChangesResetSummaries() {
+        pricing.onProductChanged(ProductChangedEvent.views(List.of(1L)));
+        pricing.onProductChanged(ProductChangedEvent.stock(List.of(1L)));
+        assertEquals(0, pricing.pricesVersion());
+
+        pricing.onProductChanged(ProductChangedEvent.of(1L));
+        assertEquals(1, pricing.pricesVersion());
+    }
+}
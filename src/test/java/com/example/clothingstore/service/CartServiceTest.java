@@ -0,0 +1,321 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.model.CartItem;
+import com.example.clothingstore.model.Product;
+import com.example.clothingstore.model.User;
+import com.example.clothingstore.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CartServiceTest {
+
+    private static final String EMAIL = "buyer@example.com";
+    private static final String OTHER_EMAIL = "other@example.com";
+
+    private final FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private CartService cartService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        cartService = new CartService(jdbc, productRepository,
+                new CartPricingService(new BigDecimal("2000"), new BigDecimal("5"), new BigDecimal("2000"), new BigDecimal("3")),
+                mock(PlatformTransactionManager.class), 1_800_000, 100);
+        user = new User();
+        user.setEmail(EMAIL);
+        when(productRepository.findAllById(any())).thenReturn(List.of(product(10L), product(20L)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Product product(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setPrice(new BigDecimal("100"));
+        return product;
+    }
+
+    private List<Long> itemIds() {
+        return cartService.getCartItems(user).stream().map(CartItem::getId).toList();
+    }
+
+    @Test
+    void unsavedLinesKeepTemporaryIdsAfterFlush() {
+        cartService.addItem(EMAIL, 10L, 1, "M", "black", 10);
+        cartService.addItem(EMAIL, 20L, 2, "L", null, 10);
+        assertEquals(List.of(-1L, -2L), itemIds());
+
+        cartService.flush();
+        assertEquals(List.of(List.of(10L, 1), List.of(20L, 2)), jdbc.inserted);
+        assertEquals(List.of(-1L, -2L), itemIds());
+
+        // Временный id по-прежнему адресует строку, а в БД уходит id из cart_item
+        assertTrue(cartService.updateQuantity(EMAIL, -1L, 3));
+        assertTrue(cartService.removeItem(EMAIL, -2L));
+        cartService.flush();
+        assertEquals(List.of(List.of(100L, 3)), jdbc.updated);
+        assertEquals(List.of(101L), jdbc.deleted);
+        assertEquals(List.of(-1L), itemIds());
+    }
+
+    @Test
+    void repeatedClicksAreWrittenAsOneInsert() {
+        cartService.addItem(EMAIL, 10L, 1, "M", null, 10);
+        cartService.addItem(EMAIL, 10L, 1, "M", null, 10);
+        assertTrue(cartService.addItem(EMAIL, 10L, 9, "M", null, 10).isEmpty());
+
+        cartService.flush();
+        assertEquals(List.of(List.of(10L, 2)), jdbc.inserted);
+        assertEquals(1, jdbc.insertBatches);
+    }
+
+    @Test
+    void failedFlushIsRetried() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.removeItem(EMAIL, -1L);
+        cartService.addItem(EMAIL, 20L, 1, null, null, 10);
+
+        jdbc.failWrites = true;
+        cartService.flush();
+        assertThrows(IllegalStateException.class, () -> cartService.flush(user));
+        assertTrue(jdbc.inserted.isEmpty());
+
+        jdbc.failWrites = false;
+        cartService.flush();
+        assertEquals(List.of(List.of(20L, 1)), jdbc.inserted);
+        assertEquals(1, jdbc.insertBatches);
+
+        cartService.flush();
+        assertEquals(1, jdbc.insertBatches);
+    }
+
+    @Test
+    void failedDeleteIsRetried() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.flush();
+        cartService.removeItem(EMAIL, -1L);
+
+        jdbc.failWrites = true;
+        cartService.flush();
+        jdbc.failWrites = false;
+        cartService.flush();
+
+        assertEquals(List.of(100L), jdbc.deleted);
+    }
+
+    @Test
+    void checkedOutLinesStayInCartWhenOrderRollsBack() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.flush(user);
+        List<CartItem> items = cartService.getCartItems(user);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cartService.removeCheckedOut(user, items);
+        assertEquals(List.of(100L), jdbc.deleted);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals(List.of(-1L), itemIds());
+    }
+
+    @Test
+    void checkedOutLinesLeaveCartAfterCommit() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.flush(user);
+        List<CartItem> items = cartService.getCartItems(user);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cartService.removeCheckedOut(user, items);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals(List.of(), itemIds());
+        // Строку уже удалил заказ - повторного DELETE при сбросе нет
+        cartService.flush();
+        assertEquals(List.of(100L), jdbc.deleted);
+    }
+
+    @Test
+    void unknownUserIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> cartService.addItem("nobody@example.com", 10L, 1, null, null, 10));
+    }
+
+    @Test
+    void lineOfDeletedProductDoesNotBlockOtherCarts() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.addItem(OTHER_EMAIL, 99L, 1, null, null, 10);
+        cartService.addItem(OTHER_EMAIL, 20L, 2, null, null, 10);
+        jdbc.missingProducts.add(99L);
+
+        cartService.flush();
+        assertEquals(List.of(List.of(10L, 1)), jdbc.inserted);
+
+        // Строка удалённого товара отброшена, остальное записывается со следующим сбросом
+        cartService.flush();
+        assertEquals(List.of(List.of(10L, 1), List.of(20L, 2)), jdbc.inserted);
+        assertEquals(List.of(20L), cartService.getCartItems(OTHER_EMAIL).stream()
+                .map(item -> item.getProduct().getId()).toList());
+
+        int batches = jdbc.insertBatches;
+        cartService.flush();
+        assertEquals(batches, jdbc.insertBatches);
+    }
+
+    @Test
+    void cartOfDeletedUserIsDropped() {
+        cartService.addItem(EMAIL, 10L, 1, null, null, 10);
+        cartService.addItem(OTHER_EMAIL, 20L, 1, null, null, 10);
+        jdbc.deletedUsers.add(8L);
+
+        cartService.flush();
+        assertEquals(List.of(List.of(10L, 1)), jdbc.inserted);
+
+        int batches = jdbc.insertBatches;
+        cartService.flush();
+        assertEquals(batches, jdbc.insertBatches);
+    }
+
+    @Test
+    void mergeCapsAllLinesOfProductAtStock() {
+        cartService.addItem(EMAIL, 10L, 2, "M", null, 5);
+
+        // Размеры делят один остаток: S получает только оставшуюся единицу, XL - ничего
+        assertEquals(2, cartService.mergeItems(EMAIL, List.of(
+                new CartService.MergedItem(10L, 2, "L", null, 5),
+                new CartService.MergedItem(10L, 3, "S", null, 5),
+                new CartService.MergedItem(10L, 1, "XL", null, 5))));
+        assertEquals(List.of(2, 2, 1), cartService.getCartItems(user).stream().map(CartItem::getQuantity).toList());
+    }
+
+    // cart_item в памяти: корзины пользователей загружаются пустыми, id вставок идут с 100.
+    // Вставка строки удалённого товара или пользователя нарушает внешний ключ и валит весь пакет
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        private final Map<String, Long> users = Map.of(EMAIL, 7L, OTHER_EMAIL, 8L);
+        private final Set<Long> deletedUsers = new HashSet<>();
+        private final Set<Long> missingProducts = new HashSet<>();
+        private boolean failWrites;
+        private long nextId = 100;
+        private int insertBatches;
+        private final List<List<Object>> inserted = new ArrayList<>();
+        private final List<List<Object>> updated = new ArrayList<>();
+        private final List<Object> deleted = new ArrayList<>();
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            Long userId = users.get((String) args[0]);
+            if (userId == null) {
+                return;
+            }
+            try {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(userId);
+                when(rs.wasNull()).thenReturn(true);
+                rch.processRow(rs);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            if (sql.contains("FROM users")) {
+                return deletedUsers.contains((Long) args[0]) ? List.of() : List.of((T) args[0]);
+            }
+            return Arrays.stream((Long[]) args[0]).filter(id -> !missingProducts.contains(id)).map(id -> (T) id).toList();
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            fail();
+            deleted.addAll(Arrays.asList((Object[]) args[0]));
+            return ((Object[]) args[0]).length;
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            fail();
+            for (T arg : batchArgs) {
+                Map<Integer, Object> params = capture(ps -> pss.setValues(ps, arg));
+                updated.add(List.of(params.get(2), params.get(1)));
+            }
+            return new int[][]{new int[batchArgs.size()]};
+        }
+
+        @Override
+        public int[] batchUpdate(PreparedStatementCreator psc, BatchPreparedStatementSetter pss, KeyHolder keyHolder) {
+            fail();
+            List<Map<Integer, Object>> rows = new ArrayList<>();
+            for (int i = 0; i < pss.getBatchSize(); i++) {
+                int row = i;
+                rows.add(capture(ps -> pss.setValues(ps, row)));
+            }
+            if (rows.stream().anyMatch(row -> deletedUsers.contains(row.get(1)) || missingProducts.contains(row.get(2)))) {
+                throw new DataIntegrityViolationException("violates foreign key constraint");
+            }
+            insertBatches++;
+            for (Map<Integer, Object> row : rows) {
+                inserted.add(List.of(row.get(2), row.get(3)));
+                keyHolder.getKeyList().add(Map.of("id", nextId++));
+            }
+            return new int[rows.size()];
+        }
+
+        private void fail() {
+            if (failWrites) {
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+        }
+
+        private static Map<Integer, Object> capture(StatementAction action) {
+            Map<Integer, Object> params = new HashMap<>();
+            PreparedStatement ps = mock(PreparedStatement.class, invocation -> {
+                if (invocation.getMethod().getName().startsWith("set")) {
+                    params.put(invocation.getArgument(0), invocation.getArgument(1));
+                }
+                return null;
+            });
+            try {
+                action.apply(ps);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return params;
+        }
+
+        private interface StatementAction {
+            void apply(PreparedStatement ps) throws SQLException;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.repository.ProductRepository;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GuestCartServiceTest {
+
+    private static final String SECRET = "guest-cart-test-secret";
+
+    private static GuestCartService service(String secret, String jwtSecret) {
+        return new GuestCartService(mock(ProductRepository.class), mock(ProductService.class), mock(CartService.class),
+                secret, jwtSecret);
+    }
+
+    private final GuestCartService service = service(SECRET, "jwt-secret");
+
+    // Значение cookie, подписанное тем же ключом, но с произвольным содержимым
+    private static String signed(String payload) throws Exception {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        return base64.encodeToString(bytes) + "." + base64.encodeToString(Arrays.copyOf(mac.doFinal(bytes), 16));
+    }
+
+    @Test
+    void encodedLinesAreReadBack() {
+        List<GuestCartService.Line> lines = List.of(
+                new GuestCartService.Line(10L, 2, "M/L", "чёрный, синий;"),
+                new GuestCartService.Line(20L, 1, null, null));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(GuestCartService.COOKIE_NAME, service.encode(lines)));
+
+        assertEquals(lines, service.read(request));
+    }
+
+    @Test
+    void tamperedCookieReadsAsEmptyCart() {
+        String token = service.encode(List.of(new GuestCartService.Line(10L, 1, null, null)));
+        int dot = token.indexOf('.');
+        String forged = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(new String(Base64.getUrlDecoder().decode(token.substring(0, dot)), StandardCharsets.UTF_8)
+                        .replace("10,1", "10,9").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(List.of(), service.decode(forged + token.substring(dot)));
+        assertEquals(List.of(), service.decode(token.substring(0, dot) + ".AAAA"));
+        assertEquals(List.of(), service.decode(token.substring(0, dot)));
+        assertEquals(List.of(), service.decode("не base64.!!"));
+    }
+
+    @Test
+    void cookieSignedWithAnotherKeyIsRejected() {
+        String token = service.encode(List.of(new GuestCartService.Line(10L, 1, null, null)));
+
+        assertEquals(List.of(), service("other-secret", "jwt-secret").decode(token));
+        // Без своего секрета ключ выводится из секрета JWT и не совпадает с ним самим
+        GuestCartService derived = service("", "jwt-secret");
+        assertEquals(1, derived.decode(derived.encode(List.of(new GuestCartService.Line(10L, 1, null, null)))).size());
+        assertEquals(List.of(), service("", "other-jwt-secret")
+                .decode(derived.encode(List.of(new GuestCartService.Line(10L, 1, null, null)))));
+        assertEquals(List.of(), service("jwt-secret", "jwt-secret")
+                .decode(derived.encode(List.of(new GuestCartService.Line(10L, 1, null, null)))));
+    }
+
+    @Test
+    void expiredOrInvalidLinesAreDropped() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        assertEquals(List.of(), service.decode(signed("1|" + (now - 31L * 24 * 3600) + "|10,1,,")));
+        assertEquals(List.of(), service.decode(signed("2|" + now + "|10,1,,")));
+        assertEquals(List.of(new GuestCartService.Line(20L, 1, null, null)),
+                service.decode(signed("1|" + now + "|10,0,,;10,100,,;20,1,,")));
+    }
+
+    @Test
+    void addRespectsStockAndMergesSameLine() {
+        List<GuestCartService.Line> lines = service.add(List.of(), 10L, 2, "M", null, 3).orElseThrow();
+        assertEquals(Optional.empty(), service.add(lines, 10L, 2, "M", null, 3));
+
+        lines = service.add(lines, 10L, 1, "M", null, 4).orElseThrow();
+        lines = service.add(lines, 10L, 1, "L", null, 4).orElseThrow();
+        assertEquals(List.of(new GuestCartService.Line(10L, 3, "M", null), new GuestCartService.Line(10L, 1, "L", null)),
+                lines);
+        // Размеры делят один остаток
+        assertEquals(Optional.empty(), service.add(lines, 10L, 1, "S", null, 4));
+
+        assertEquals(List.of(new GuestCartService.Line(10L, 1, "L", null)), service.remove(lines, 1));
+        assertEquals(Optional.of(lines), service.update(lines, 3, 5, 4));
+    }
+
+    @Test
+    void updateRespectsStockOfAllLinesOfProduct() {
+        List<GuestCartService.Line> lines = List.of(
+                new GuestCartService.Line(10L, 2, "M", null),
+                new GuestCartService.Line(10L, 1, "L", null),
+                new GuestCartService.Line(20L, 5, null, null));
+
+        assertEquals(Optional.empty(), service.update(lines, 2, 3, 4));
+        assertEquals(List.of(new GuestCartService.Line(10L, 2, "M", null), new GuestCartService.Line(10L, 2, "L", null),
+                        new GuestCartService.Line(20L, 5, null, null)),
+                service.update(lines, 2, 2, 4).orElseThrow());
+        assertEquals(Optional.empty(), service.update(lines, 3, 100, 1000));
+    }
+
+    @Test
+    void cookieIsKeptWhenMergeFails() {
+        ProductService productService = mock(ProductService.class);
+        CartService cartService = mock(CartService.class);
+        GuestCartService service = new GuestCartService(mock(ProductRepository.class), productService, cartService,
+                SECRET, "jwt-secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(GuestCartService.COOKIE_NAME,
+                service.encode(List.of(new GuestCartService.Line(10L, 1, null, null)))));
+        when(productService.getProductsByIds(any())).thenReturn(List.of());
+        when(cartService.mergeItems(any(), any())).thenThrow(new IllegalStateException("db down"));
+
+        MockHttpServletResponse failed = new MockHttpServletResponse();
+        assertEquals(0, service.mergeOnLogin("buyer@example.com", request, failed));
+        assertNull(failed.getHeader(HttpHeaders.SET_COOKIE));
+
+        doReturn(0).when(cartService).mergeItems(any(), any());
+        MockHttpServletResponse merged = new MockHttpServletResponse();
+        service.mergeOnLogin("buyer@example.com", request, merged);
+        assertTrue(merged.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+    }
+}
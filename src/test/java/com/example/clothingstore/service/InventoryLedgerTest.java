@@ -0,0 +1,142 @@
+package com.example.clothingstore.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class InventoryLedgerTest {
+
+    private final StockJdbcTemplate jdbc = new StockJdbcTemplate(Map.of(1L, 5L, 2L, 1L));
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private InventoryLedger ledger(long holdTtlMs) {
+        return new InventoryLedger(jdbc, eventPublisher, true, holdTtlMs);
+    }
+
+    @Test
+    void holdIsAllOrNothing() {
+        InventoryLedger ledger = ledger(600_000);
+
+        InventoryLedger.HoldResult failed = ledger.hold(Map.of(1L, 3, 2L, 2));
+        assertEquals(Set.of(2L), failed.failedProducts());
+
+        // Взятое по первому товару вернулось - весь остаток снова доступен
+        InventoryLedger.HoldResult held = ledger.hold(Map.of(1L, 5));
+        assertTrue(held.failedProducts().isEmpty());
+        assertEquals(Set.of(1L), ledger.hold(Map.of(1L, 1)).failedProducts());
+    }
+
+    @Test
+    void unknownProductFailsHold() {
+        assertEquals(Set.of(3L), ledger(600_000).hold(Map.of(1L, 1, 3L, 1)).failedProducts());
+    }
+
+    @Test
+    void releasedHoldReturnsQuantity() {
+        InventoryLedger ledger = ledger(600_000);
+        InventoryLedger.HoldResult held = ledger.hold(Map.of(2L, 1));
+
+        ledger.release(held.holdId());
+        ledger.release(held.holdId());
+
+        assertTrue(ledger.hold(Map.of(2L, 1)).failedProducts().isEmpty());
+        assertEquals(Set.of(2L), ledger.hold(Map.of(2L, 1)).failedProducts());
+    }
+
+    @Test
+    void confirmedHoldIsFlushedOnce() {
+        InventoryLedger ledger = ledger(600_000);
+        InventoryLedger.HoldResult first = ledger.hold(Map.of(1L, 2));
+        InventoryLedger.HoldResult second = ledger.hold(Map.of(1L, 1));
+        ledger.confirm(first.holdId(), Map.of(1L, 2));
+        ledger.confirm(second.holdId(), Map.of(1L, 1));
+
+        ledger.flush();
+        assertEquals(List.of(List.<Object>of(1L, 3)), jdbc.updates);
+        verify(eventPublisher).publishEvent(any(ProductChangedEvent.class));
+
+        // Подтверждённое не возвращается ни по release, ни по TTL
+        ledger.release(first.holdId());
+        ledger.releaseExpired();
+        assertEquals(Set.of(1L), ledger.hold(Map.of(1L, 3)).failedProducts());
+
+        ledger.flush();
+        assertEquals(1, jdbc.updates.size());
+    }
+
+    @Test
+    void failedFlushIsRetried() {
+        InventoryLedger ledger = ledger(600_000);
+        InventoryLedger.HoldResult held = ledger.hold(Map.of(1L, 2));
+        ledger.confirm(held.holdId(), Map.of(1L, 2));
+
+        jdbc.failUpdates = true;
+        ledger.flush();
+        verify(eventPublisher, never()).publishEvent(any(ProductChangedEvent.class));
+
+        jdbc.failUpdates = false;
+        ledger.flush();
+        assertEquals(List.of(List.<Object>of(1L, 2)), jdbc.updates);
+    }
+
+    @Test
+    void expiredHoldIsReleased() {
+        InventoryLedger ledger = ledger(-1);
+        ledger.hold(Map.of(2L, 1));
+        assertEquals(Set.of(2L), ledger.hold(Map.of(2L, 1)).failedProducts());
+
+        ledger.releaseExpired();
+
+        assertTrue(ledger.hold(Map.of(2L, 1)).failedProducts().isEmpty());
+    }
+
+    @Test
+    void confirmAfterExpiryTakesQuantityAgain() {
+        InventoryLedger ledger = ledger(-1);
+        InventoryLedger.HoldResult held = ledger.hold(Map.of(1L, 4));
+        ledger.releaseExpired();
+
+        ledger.confirm(held.holdId(), Map.of(1L, 4));
+
+        assertEquals(Set.of(1L), ledger.hold(Map.of(1L, 2)).failedProducts());
+        ledger.flush();
+        assertEquals(List.of(List.<Object>of(1L, 4)), jdbc.updates);
+    }
+
+    // Остатки products в памяти: slot() читает остаток, flush() пишет списания
+    static final class StockJdbcTemplate extends JdbcTemplate {
+        private final Map<Long, Long> stock;
+        final List<List<Object>> updates = new ArrayList<>();
+        boolean failUpdates;
+
+        StockJdbcTemplate(Map<Long, Long> stock) {
+            this.stock = stock;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            Long quantity = stock.get((Long) args[0]);
+            return quantity == null ? List.of() : List.of((T) quantity);
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (failUpdates) {
+                throw new IllegalStateException("connection lost");
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                updates.add(List.of(args[i], args[i + 1]));
+            }
+            return args.length / 2;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductFilterEngineIndexTest {
+
+    private static ProductFilterEngine.ProductDoc doc(long id, long priceCents, int views) {
+        return new ProductFilterEngine.ProductDoc(id, 1L, 1L, null, Set.of(), Set.of(), Set.of(),
+                priceCents, "товар " + id, null, id, views, 0.0);
+    }
+
+    private static ProductFilterEngine.Index index(ProductFilterEngine.ProductDoc... docs) {
+        ProductFilterEngine.Index index = new ProductFilterEngine.Index();
+        for (ProductFilterEngine.ProductDoc doc : docs) {
+            index.upsert(doc);
+        }
+        index.sortAll();
+        return index;
+    }
+
+    private static List<Long> page(ProductFilterEngine.Index index, String field, boolean ascending) {
+        BitSet all = index.match(ProductFilter.empty());
+        return index.page(all, field, ascending, 0, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void sortsAllOrdersOnBuild() {
+        ProductFilterEngine.Index index = index(doc(1, 300, 5), doc(2, 100, 50), doc(3, 200, 0));
+
+        assertEquals(List.of(2L, 3L, 1L), page(index, "price", true));
+        assertEquals(List.of(2L, 1L, 3L), page(index, "views", false));
+        assertEquals(List.of(1L, 2L, 3L), page(index, "id", true));
+    }
+
+    @Test
+    void viewsOnlyChangeMovesProductInViewsOrderWithoutBumpingFilters() {
+        ProductFilterEngine.Index index = index(doc(1, 300, 5), doc(2, 100, 50), doc(3, 200, 0));
+
+        index.upsert(doc(3, 200, 100));
+
+        assertFalse(index.refreshOrders());
+        assertEquals(List.of(3L, 2L, 1L), page(index, "views", false));
+        assertEquals(List.of(2L, 3L, 1L), page(index, "price", true));
+    }
+
+    @Test
+    void priceChangeAndRemovalAreMergedIntoOrders() {
+        ProductFilterEngine.Index index = index(doc(1, 300, 5), doc(2, 100, 50), doc(3, 200, 0));
+
+        index.upsert(doc(1, 50, 5));
+        index.remove(2L);
+        index.upsert(doc(4, 250, 1));
+
+        assertTrue(index.refreshOrders());
+        assertEquals(List.of(1L, 3L, 4L), page(index, "price", true));
+        assertEquals(List.of(1L, 4L, 3L), page(index, "views", false));
+    }
+
+    @Test
+    void priceRangeUsesUpdatedOrder() {
+        ProductFilterEngine.Index index = index(doc(1, 30000, 0), doc(2, 10000, 0));
+
+        index.upsert(doc(1, 5000, 0));
+        index.refreshOrders();
+
+        ProductFilter cheap = new ProductFilter(null, null, null, null, new java.math.BigDecimal("60"),
+                null, null, null, null, null);
+        BitSet matched = index.match(cheap.normalized());
+        assertEquals(List.of(1L), index.page(matched, "id", true, 0, 10));
+    }
+
+    @Test
+    void colorAndSizeMatchExactlyAsInSql() {
+        ProductFilterEngine.Index index = index(
+                new ProductFilterEngine.ProductDoc(1L, 1L, 1L, null, Set.of(), Set.of(" Черный "), Set.of("XL"),
+                        100, "товар 1", null, 1, 0, 0.0),
+                new ProductFilterEngine.ProductDoc(2L, 1L, 1L, null, Set.of(), Set.of("темно-черный"), Set.of("XXL"),
+                        100, "товар 2", null, 2, 0, 0.0));
+
+        assertEquals(List.of(1L), ids(index, new ProductFilter(null, null, null, null, null, "черный", null, null, null, null)));
+        assertEquals(List.of(1L), ids(index, new ProductFilter(null, null, null, null, null, null, " x l ", null, null, null)));
+        assertEquals(List.of(), ids(index, new ProductFilter(null, null, null, null, null, "черн", null, null, null, null)));
+    }
+
+    private static List<Long> ids(ProductFilterEngine.Index index, ProductFilter filter) {
+        return index.page(index.match(filter.normalized()), "id", true, 0, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.clothingstore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTest {
+
+    private static ProductSearchIndex.SearchDoc doc(Map<String, Float> terms) {
+        return new ProductSearchIndex.SearchDoc(terms, terms.keySet().toArray(new String[0]));
+    }
+
+    @Test
+    void documentsWithAllTermsComeFirstByScore() {
+        ProductSearchIndex.Index index = new ProductSearchIndex.Index();
+        index.upsert(1L, doc(Map.of("красн", 1f, "куртк", 1f)));
+        index.upsert(2L, doc(Map.of("красн", 3f, "куртк", 3f)));
+        index.upsert(3L, doc(Map.of("куртк", 3f)));
+        index.upsert(4L, doc(Map.of("брюк", 3f)));
+
+        assertEquals(List.of(2L, 1L), index.search(List.of("красн", "куртк")));
+    }
+
+    @Test
+    void fallsBackToAnyTermWhenNoDocumentHasAll() {
+        ProductSearchIndex.Index index = new ProductSearchIndex.Index();
+        index.upsert(1L, doc(Map.of("красн", 1f)));
+        index.upsert(2L, doc(Map.of("куртк", 3f)));
+
+        List<Long> found = index.search(List.of("красн", "куртк"));
+        assertEquals(2, found.size());
+        assertTrue(found.containsAll(List.of(1L, 2L)));
+    }
+
+    @Test
+    void removedDocumentsAreNotFound() {
+        ProductSearchIndex.Index index = new ProductSearchIndex.Index();
+        for (long id = 1; id <= 100; id++) {
+            index.upsert(id, doc(Map.of("куртк", 1f + id % 7)));
+        }
+        index.remove(50L);
+
+        List<Long> found = index.search(List.of("куртк"));
+        assertEquals(99, found.size());
+        assertTrue(!found.contains(50L));
+    }
+
+    @Test
+    void unknownTermFindsNothing() {
+        ProductSearchIndex.Index index = new ProductSearchIndex.Index();
+        index.upsert(1L, doc(Map.of("куртк", 1f)));
+
+        assertEquals(List.of(), index.search(List.of("платк")));
+    }
+}
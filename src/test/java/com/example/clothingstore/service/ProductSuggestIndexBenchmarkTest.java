@@ -0,0 +1,65 @@
+package com.example.clothingstore.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Задержка подсказок на синтетическом каталоге. В обычной сборке не запускается:
+ * mvn test -Dtest=ProductSuggestIndexBenchmarkTest -Dbenchmark=true [-Dbenchmark.products=1000000]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductSuggestIndexBenchmarkTest {
+
+    private static final String[] TYPES = {"куртка", "пальто", "платье", "рубашка", "футболка", "джинсы", "брюки",
+            "свитер", "кардиган", "толстовка", "худи", "кроссовки", "ботинки", "сапоги", "шапка", "шарф", "юбка",
+            "пиджак", "жилет", "шорты", "jacket", "coat", "dress", "shirt", "sneakers", "boots", "hoodie"};
+    private static final String[] ADJECTIVES = {"зимняя", "летний", "утеплённая", "льняная", "шерстяной", "кожаная",
+            "классический", "оверсайз", "укороченная", "спортивные", "вязаный", "хлопковая", "джинсовая", "basic",
+            "slim", "oversize", "vintage", "premium"};
+    private static final String[] COLORS = {"чёрный", "белая", "синий", "красное", "зелёная", "бежевый", "серые",
+            "black", "white", "navy", "olive"};
+    private static final String[] BRANDS = {"Tareno", "Nike", "Adidas", "Puma", "Zara", "Mango", "Levi's", "Gloria",
+            "Спортмастер", "Снежная Королева", "Ostin", "Befree"};
+    private static final String[] QUERIES = {"ку", "кур", "курт", "куртка з", "пал", "плат", "руб", "фут", "джин",
+            "бр", "сви", "кар", "тол", "ху", "кро", "бот", "сап", "шап", "шар", "юб", "пидж", "жил", "шор", "jac",
+            "coa", "dre", "sh", "sne", "boo", "hoo", "зим", "лет", "кож", "шерст", "оверс", "black", "бел", "син",
+            "tar", "nik", "adi", "zar", "сне", "кор", "ост", "bef", "ка", "ки", "ая", "ный", "тка", "ова", "ль",
+            "xyz", "щщщ"};
+
+    @Test
+    void suggestLatency() {
+        int products = Integer.getInteger("benchmark.products", 1_000_000);
+        Random random = new Random(42);
+        ProductSuggestIndex.Index index = new ProductSuggestIndex.Index();
+        long buildStart = System.currentTimeMillis();
+        for (long id = 1; id <= products; id++) {
+            String name = TYPES[random.nextInt(TYPES.length)] + " " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + COLORS[random.nextInt(COLORS.length)] + " " + BRANDS[random.nextInt(BRANDS.length)] + " "
+                    + random.nextInt(10_000);
+            index.upsert(id, name, random.nextInt(100_000));
+        }
+        System.out.printf("Построено %d товаров за %d мс%n", products, System.currentTimeMillis() - buildStart);
+
+        for (int i = 0; i < 20_000; i++) {
+            index.search(ProductSuggestIndex.normalize(QUERIES[i % QUERIES.length]), 10);
+        }
+        int runs = 50_000;
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            String query = ProductSuggestIndex.normalize(QUERIES[random.nextInt(QUERIES.length)]);
+            long start = System.nanoTime();
+            index.search(query, 10);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        long p50 = nanos[runs / 2];
+        long p99 = nanos[runs * 99 / 100];
+        System.out.printf("Подсказки: p50 %d мкс, p99 %d мкс, max %d мкс%n", p50 / 1000, p99 / 1000, nanos[runs - 1] / 1000);
+        assertTrue(p99 < 2_000_000, "p99 " + p99 / 1000 + " мкс, цель - меньше 2 мс");
+    }
+}
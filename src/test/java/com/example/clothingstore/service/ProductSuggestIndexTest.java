@@ -0,0 +1,45 @@
+package com.example.clothingstore.service;
+
+import com.example.clothingstore.dto.ProductSuggestion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductSuggestIndexTest {
+
+    private static List<Long> ids(List<ProductSuggestion> suggestions) {
+        return suggestions.stream().map(ProductSuggestion::id).toList();
+    }
+
+    @Test
+    void namePrefixComesBeforeWordPrefixAndInfix() {
+        ProductSuggestIndex.Index index = new ProductSuggestIndex.Index();
+        index.upsert(1L, "Суперкапюшон", 100);
+        index.upsert(2L, "Капюшон съёмный", 1);
+        index.upsert(3L, "Куртка капюшон", 50);
+
+        assertEquals(List.of(2L, 3L, 1L), ids(index.search("капюшон", 10)));
+    }
+
+    @Test
+    void laterWordStartOccurrenceRanksAsWordPrefix() {
+        assertEquals(1, ProductSuggestIndex.Index.rank("туника ника", "ник"));
+        assertEquals(2, ProductSuggestIndex.Index.rank("туника", "ник"));
+        assertEquals(0, ProductSuggestIndex.Index.rank("ника", "ник"));
+    }
+
+    @Test
+    void renamedAndRemovedProductsAreUpdated() {
+        ProductSuggestIndex.Index index = new ProductSuggestIndex.Index();
+        index.upsert(1L, "Куртка зимняя", 10);
+        index.upsert(2L, "Куртка летняя", 5);
+
+        index.upsert(1L, "Пальто зимнее", 10);
+        index.remove(2L);
+
+        assertEquals(List.of(), ids(index.search("курт", 10)));
+        assertEquals(List.of(1L), ids(index.search("пал", 10)));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.clothingstore.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class StockReservationServiceTest {
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void partialFailureReportsEveryLineOfFailedProduct() {
+        DecrementJdbcTemplate jdbc = new DecrementJdbcTemplate(List.of(1L));
+        StockReservationService service = new StockReservationService(jdbc, eventPublisher,
+                new InventoryLedger(jdbc, eventPublisher, false, 600_000));
+
+        StockReservationService.Reservation reservation = service.reserve(List.of(
+                new StockReservationService.Line(1L, 2),
+                new StockReservationService.Line(2L, 1),
+                new StockReservationService.Line(1L, 1),
+                new StockReservationService.Line(null, 1),
+                new StockReservationService.Line(2L, 3),
+                new StockReservationService.Line(3L, 0)));
+
+        assertFalse(reservation.isComplete());
+        assertEquals(List.of(1, 3, 4, 5), reservation.failedLines());
+        // Строки одного товара списываются одной парой в VALUES
+        assertArrayEquals(new Object[]{1L, 3, 2L, 4}, jdbc.args);
+        verify(eventPublisher).publishEvent(ProductChangedEvent.stock(List.of(1L)));
+    }
+
+    @Test
+    void nothingReservedPublishesNothing() {
+        DecrementJdbcTemplate jdbc = new DecrementJdbcTemplate(List.of());
+        StockReservationService service = new StockReservationService(jdbc, eventPublisher,
+                new InventoryLedger(jdbc, eventPublisher, false, 600_000));
+
+        StockReservationService.Reservation reservation = service.reserve(List.of(new StockReservationService.Line(1L, 1)));
+
+        assertEquals(List.of(0), reservation.failedLines());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void ledgerPartialFailureHoldsNothing() {
+        InventoryLedgerTest.StockJdbcTemplate jdbc = new InventoryLedgerTest.StockJdbcTemplate(Map.of(1L, 5L, 2L, 1L));
+        InventoryLedger ledger = new InventoryLedger(jdbc, eventPublisher, true, 600_000);
+        StockReservationService service = new StockReservationService(jdbc, eventPublisher, ledger);
+        TransactionSynchronizationManager.initSynchronization();
+
+        StockReservationService.Reservation reservation = service.reserve(List.of(
+                new StockReservationService.Line(1L, 5),
+                new StockReservationService.Line(2L, 2)));
+
+        assertEquals(List.of(1), reservation.failedLines());
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+        assertTrue(ledger.hold(Map.of(1L, 5)).failedProducts().isEmpty());
+    }
+
+    @Test
+    void ledgerHoldIsReleasedOnRollbackAndConfirmedOnCommit() {
+        InventoryLedgerTest.StockJdbcTemplate jdbc = new InventoryLedgerTest.StockJdbcTemplate(Map.of(1L, 2L));
+        InventoryLedger ledger = new InventoryLedger(jdbc, eventPublisher, true, 600_000);
+        StockReservationService service = new StockReservationService(jdbc, eventPublisher, ledger);
+        List<StockReservationService.Line> lines = List.of(new StockReservationService.Line(1L, 2));
+
+        assertTrue(reserveAndComplete(service, lines, TransactionSynchronization.STATUS_ROLLED_BACK).isComplete());
+        assertTrue(reserveAndComplete(service, lines, TransactionSynchronization.STATUS_COMMITTED).isComplete());
+        assertFalse(reserveAndComplete(service, lines, TransactionSynchronization.STATUS_COMMITTED).isComplete());
+
+        ledger.flush();
+        assertEquals(List.of(List.<Object>of(1L, 2)), jdbc.updates);
+    }
+
+    private static StockReservationService.Reservation reserveAndComplete(StockReservationService service,
+                                                                          List<StockReservationService.Line> lines,
+                                                                          int status) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            StockReservationService.Reservation reservation = service.reserve(lines);
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+            return reservation;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    // Условный UPDATE ... RETURNING: возвращает заданные id, как если бы остатка хватило только им
+    private static final class DecrementJdbcTemplate extends JdbcTemplate {
+        private final List<Long> reserved;
+        private Object[] args;
+
+        DecrementJdbcTemplate(List<Long> reserved) {
+            this.reserved = reserved;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            this.args = args;
+            return (List<T>) reserved;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+-- Сравнение планов: старый catch-all findByFilters против запросов ProductSpecifications.
+-- Запуск: psql -d testdb -f product_filters_explain.sql
+-- Генерирует 1 000 000 товаров внутри транзакции и откатывает её в конце,
+-- индексы из V003__product_filter_indexes.sql и V004__product_size_list.sql должны быть уже созданы.
+
+BEGIN;
+
+INSERT INTO products (name, description, price, stock_quantity, sizes, size_list, category_id, brand_id, deleted,
+                      target_audience, country_of_origin, original_price, created_at, views, rating, review_count)
+SELECT 'Товар ' || g,
+       'Сгенерированный товар ' || g,
+       (100 + (g % 20000))::numeric(10, 2),
+       g % 50,
+       (ARRAY ['S,M,L', 'M,L,XL', 'XS,S', 'XL,XXL', '40,42,44'])[1 + g % 5],
+       string_to_array((ARRAY ['S,M,L', 'M,L,XL', 'XS,S', 'XL,XXL', '40,42,44'])[1 + g % 5], ','),
+       (SELECT id FROM categories ORDER BY id OFFSET (g % (SELECT count(*) FROM categories)) LIMIT 1),
+       (SELECT id FROM brands ORDER BY id OFFSET (g % (SELECT count(*) FROM brands)) LIMIT 1),
+       g % 20 = 0,
+       (ARRAY ['MEN', 'WOMEN', 'TEENS', 'KIDS', 'UNISEX'])[1 + g % 5],
+       (ARRAY ['Россия', 'Италия', 'Китай', 'Турция', 'Вьетнам'])[1 + g % 5],
+       CASE WHEN g % 4 = 0 THEN (150 + (g % 20000))::numeric(10, 2) END,
+       now() - (g % 1000) * interval '1 hour',
+       g % 5000,
+       (g % 50) / 10.0,
+       g % 100
+FROM generate_series(1, 1000000) g;
+
+INSERT INTO product_tags (product_id, tag)
+SELECT id, (ARRAY ['SALE', 'NEW_ARRIVAL', 'BESTSELLER', 'REGULAR_PRICE'])[1 + id % 4]
+FROM products
+WHERE name LIKE 'Товар %';
+
+ANALYZE products;
+ANALYZE product_tags;
+
+-- 1. Только категория, сортировка по цене
+-- До: форма catch-all запроса со всеми необязательными условиями
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false
+  AND (NULL::text IS NULL OR lower(p.name) LIKE '%' || NULL::text || '%')
+  AND (1 IS NULL OR p.category_id = 1)
+  AND (NULL::bigint IS NULL OR p.brand_id = NULL::bigint)
+  AND (NULL::numeric IS NULL OR p.price >= NULL::numeric)
+  AND (NULL::numeric IS NULL OR p.price <= NULL::numeric)
+  AND (NULL::text IS NULL OR p.sizes LIKE '%' || NULL::text || '%')
+  AND (NULL::text IS NULL OR lower(p.country_of_origin) LIKE '%' || NULL::text || '%')
+  AND (NULL::text IS NULL OR p.target_audience = NULL::text)
+ORDER BY p.price, p.id
+LIMIT 12 OFFSET 0;
+
+-- После: только активное условие
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND p.category_id = 1
+ORDER BY p.price, p.id
+LIMIT 12 OFFSET 0;
+
+-- 2. Бренд + диапазон цены
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND p.brand_id = 1 AND p.price >= 1000 AND p.price <= 5000
+ORDER BY p.price, p.id
+LIMIT 12;
+
+-- 3. Аудитория + тег, новинки сначала
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND p.target_audience = 'WOMEN'
+  AND 'SALE' IN (SELECT t.tag FROM product_tags t WHERE t.product_id = p.id)
+ORDER BY p.created_at DESC, p.id DESC
+LIMIT 12;
+
+-- 4. Поиск по названию (триграммный индекс)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND lower(p.name) LIKE '%товар 4242%'
+ORDER BY p.name, p.id
+LIMIT 12;
+
+-- 5. Точный размер по CSV-строке (до V004)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND ',' || lower(replace(p.sizes, ' ', '')) || ',' LIKE '%,m,%'
+ORDER BY p.id
+LIMIT 12;
+
+-- 6. Точный размер по массиву: Bitmap Index Scan по idx_products_size_list
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM products p
+WHERE p.deleted = false AND p.size_list @> ARRAY ['M']
+ORDER BY p.id
+LIMIT 12;
+
+ROLLBACK;